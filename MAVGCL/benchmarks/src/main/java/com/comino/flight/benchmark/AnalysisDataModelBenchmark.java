@@ -0,0 +1,113 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017,2018 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+package com.comino.flight.benchmark;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.comino.flight.model.AnalysisDataModel;
+import com.comino.flight.model.AnalysisDataModelMetaData;
+import com.comino.flight.model.KeyFigureMetaData;
+
+import me.drton.jmavlib.log.FormatErrorException;
+import me.drton.jmavlib.log.ulog.ULogReader;
+
+/*
+ * Per sample operations of AnalysisDataModel: extraction of all ULog key
+ * figures from a decoded update, virtual key figures and cloning.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AnalysisDataModelBenchmark {
+
+	private final AnalysisDataModelMetaData meta = AnalysisDataModelMetaData.getInstance();
+	private final Map<String,Object> update = new HashMap<String,Object>();
+
+	private AnalysisDataModel model;
+
+	@Setup
+	public void setup() throws IOException, FormatErrorException {
+		final File file = File.createTempFile("bench", ".ulg");
+		SyntheticULog.create(file, 5);
+		final ULogReader reader = new ULogReader(file.getAbsolutePath());
+		try {
+			while(true)
+				reader.readUpdate(update);
+		} catch(EOFException e) { }
+		reader.close();
+		Files.deleteIfExists(file.toPath());
+
+		model = new AnalysisDataModel();
+		model.setValues(KeyFigureMetaData.ULG_SOURCE, update, meta);
+		model.calculateVirtualKeyFigures(meta);
+	}
+
+	@Benchmark
+	public AnalysisDataModel setValues() {
+		model.setValues(KeyFigureMetaData.ULG_SOURCE, update, meta);
+		return model;
+	}
+
+	@Benchmark
+	public AnalysisDataModel calculateVirtualKeyFigures() {
+		model.calculateVirtualKeyFigures(meta);
+		return model;
+	}
+
+	@Benchmark
+	public Object cloneModel() {
+		return model.clone();
+	}
+}
@@ -31,50 +31,32 @@
  *
  ****************************************************************************/
 
-
-package com.comino.flight.ui.widgets.charts.utils;
-
-import java.util.Enumeration;
-import java.util.Hashtable;
-
-import com.comino.flight.observables.StateProperties;
-
-import javafx.scene.chart.XYChart;
-
-public class XYDataPool {
-
-
-	public XYDataPool() {
-
-	    // Preallocate Data objects for JVM
-		for(int i=0;i<50000;i++) {
-			new XYChart.Data<Number,Number>(0,0);
-		}
+package com.comino.flight.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/*
+ * Runs the benchmarks with allocation profiling and writes the results as
+ * JSON, to be kept as baseline. Accepts the usual JMH command line options,
+ * e.g. a benchmark name pattern.
+ */
+
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		final Options options = new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.addProfiler(GCProfiler.class)
+				.resultFormat(ResultFormatType.JSON)
+				.result("jmh-result.json")
+				.build();
+		new Runner(options).run();
 	}
-
-	public  XYChart.Data<Number,Number> checkOut(double x, double y)
-	{
-		XYChart.Data<Number,Number> o;
-		if(!Double.isNaN(y)) {
-			o = new XYChart.Data<Number,Number>(x,y);
-			return o;
-		}
-
-		o = new XYChart.Data<Number,Number>(x,0);
-		return o;
-
-	}
-
-	public void invalidate(XYChart.Data<Number,Number> o) {
-
-	}
-
-	public  void invalidateAll() {
-
-	}
-
-	public int getLockedSize() {
-		return 0;
-	}
-
 }
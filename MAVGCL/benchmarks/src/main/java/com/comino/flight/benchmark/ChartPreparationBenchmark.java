@@ -0,0 +1,133 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017,2018 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+package com.comino.flight.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.comino.flight.model.AnalysisDataModel;
+import com.comino.flight.model.AnalysisDataModelList;
+import com.comino.flight.model.AnalysisDataModelMetaData;
+import com.comino.flight.model.KeyFigureMetaData;
+import com.comino.flight.ui.widgets.charts.utils.TraceFrame;
+import com.comino.flight.ui.widgets.charts.utils.WindowStatistics;
+
+/*
+ * Data preparation of LineChartWidget for three series of a 30 minute flight
+ * sampled at 5ms: the TraceFrame the chart worker builds for the visible
+ * range, with and without dashboard statistics; dashboard statistics of a
+ * sliding window while recording.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ChartPreparationBenchmark {
+
+	private static final int INTERVAL_MS = 5;
+
+	/* Visible range in seconds */
+	@Param({ "30", "1800" })
+	public int timeframe_sec;
+
+	/* Chart width in pixel columns */
+	@Param({ "1000" })
+	public int columns;
+
+	private final AnalysisDataModelList list = new AnalysisDataModelList();
+	private final KeyFigureMetaData[] kfs = new KeyFigureMetaData[3];
+	private final int[] slots = new int[3];
+	private final WindowStatistics stats = new WindowStatistics();
+	private final WindowStatistics[] windows = new WindowStatistics[3];
+
+	private int x0, x1;
+	private double t0, t1;
+
+	@Setup
+	public void setup() {
+		for(int i = 0; i < kfs.length; i++) {
+			kfs[i] = new KeyFigureMetaData("BENCH_"+i, "Benchmark "+i, "", null);
+			slots[i] = AnalysisDataModelMetaData.getSlot(kfs[i]);
+			windows[i] = new WindowStatistics();
+		}
+		final int rows = 1800 * 1000 / INTERVAL_MS;
+		final AnalysisDataModel m = new AnalysisDataModel();
+		for(int row = 0; row < rows; row++) {
+			final double t = row * INTERVAL_MS / 1000.0;
+			for(int i = 0; i < slots.length; i++)
+				m.setValue(slots[i], Math.sin(t * (i + 1) * 0.1) + ((row * 7919 + i) % 101) / 1000.0);
+			list.add(m, row * INTERVAL_MS * 1000L);
+		}
+		x1 = rows - 1;
+		x0 = x1 - timeframe_sec * 1000 / INTERVAL_MS;
+		t0 = x0 * INTERVAL_MS / 1000.0;
+		t1 = x1 * INTERVAL_MS / 1000.0;
+	}
+
+	@Benchmark
+	public TraceFrame traceFrame() {
+		return new TraceFrame(0, list, INTERVAL_MS, kfs, x0, x1, list.size(), t0, t1, columns, null, 0, 0);
+	}
+
+	@Benchmark
+	public TraceFrame traceFrameWithStatistics() {
+		return new TraceFrame(0, list, INTERVAL_MS, kfs, x0, x1, list.size(), t0, t1, columns, windows, x0, x1);
+	}
+
+	/* One dashboard update per 20ms refresh while recording */
+	@Benchmark
+	public double slidingStatistics() {
+		final int window = timeframe_sec * 1000 / INTERVAL_MS;
+		double sum = 0;
+		for(int x = window; x < window + 1000; x += 4) {
+			stats.update(list, kfs[0], x - window, x);
+			sum += stats.getStdDev();
+		}
+		return sum;
+	}
+}
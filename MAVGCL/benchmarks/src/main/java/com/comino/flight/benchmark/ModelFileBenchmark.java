@@ -0,0 +1,126 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017,2018 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+package com.comino.flight.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.comino.flight.file.ModelFile;
+import com.comino.flight.log.ulog.UlogtoModelConverter;
+import com.comino.flight.model.AnalysisDataModelList;
+import com.comino.flight.model.service.AnalysisModelService;
+
+import me.drton.jmavlib.log.FormatErrorException;
+import me.drton.jmavlib.log.ulog.ULogReader;
+
+/*
+ * Save and load of a model file converted from a synthetic ULog file, loaded
+ * completely and paged.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ModelFileBenchmark {
+
+	@Param({ "600" })
+	public int duration_sec;
+
+	private File ulog;
+	private File file;
+	private AnalysisDataModelList list;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException, FormatErrorException {
+		ulog = File.createTempFile("bench", ".ulg");
+		file = File.createTempFile("bench", ".mgc");
+		SyntheticULog.create(ulog, duration_sec);
+
+		final ULogReader reader = new ULogReader(ulog.getAbsolutePath(), true);
+		list = new AnalysisDataModelList();
+		new UlogtoModelConverter(reader, list).doConversion();
+		reader.close();
+
+		write();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(ulog.toPath());
+		Files.deleteIfExists(file.toPath());
+	}
+
+	@Benchmark
+	public long write() throws IOException {
+		final ModelFile data = new ModelFile();
+		data.setData(list, AnalysisModelService.HISPEED_INTERVAL_US / 1000);
+		data.write(file);
+		return file.length();
+	}
+
+	@Benchmark
+	public int read() throws IOException {
+		final ModelFile data = new ModelFile();
+		data.read(file, null);
+		return data.getData().size();
+	}
+
+	@Benchmark
+	public int readPaged() throws IOException {
+		final ModelFile data = new ModelFile();
+		data.read(file, null, 64);
+		final int size = data.getData().size();
+		data.getData().clear();
+		return size;
+	}
+}
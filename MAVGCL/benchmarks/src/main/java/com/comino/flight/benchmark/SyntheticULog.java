@@ -0,0 +1,226 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017,2018 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+package com.comino.flight.benchmark;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.comino.flight.model.AnalysisDataModelMetaData;
+
+/*
+ * Writes synthetic ULog files for benchmarks. Topics and fields are taken from
+ * the ULog sources of AnalysisDataModelMetaData.xml, so that the conversion
+ * finds every key figure it knows. Topics are published at rates between 10Hz
+ * and 250Hz with smooth signals; fields are floats, timestamps uint64.
+ */
+
+public class SyntheticULog {
+
+	private static final Pattern FIELD = Pattern.compile("([a-z][a-z0-9_]*?)_0\\.([a-z][a-z0-9_]*)(?:\\[(\\d+)\\])?");
+	private static final int[]   RATES = { 250, 100, 50, 20, 10 };
+
+	private final List<Topic> topics = new ArrayList<Topic>();
+	private final ByteBuffer  buffer = ByteBuffer.allocate(65536).order(ByteOrder.LITTLE_ENDIAN);
+
+	public SyntheticULog() throws IOException {
+		final Map<String,Map<String,Integer>> fields = new TreeMap<String,Map<String,Integer>>();
+		try(InputStream is = AnalysisDataModelMetaData.class.getResourceAsStream("AnalysisDataModelMetaData.xml")) {
+			if(is == null)
+				throw new IOException("AnalysisDataModelMetaData.xml not found");
+			final Matcher m = FIELD.matcher(new String(is.readAllBytes(), StandardCharsets.UTF_8));
+			while(m.find()) {
+				final int size = m.group(3) != null ? Integer.parseInt(m.group(3)) + 1 : ("q".equals(m.group(2)) ? 4 : 0);
+				fields.computeIfAbsent(m.group(1), k -> new TreeMap<String,Integer>()).merge(m.group(2), size, Math::max);
+			}
+		}
+		int id = 0;
+		for(Map.Entry<String,Map<String,Integer>> e : fields.entrySet())
+			topics.add(new Topic(id++, e.getKey(), e.getValue(), RATES[Math.abs(e.getKey().hashCode()) % RATES.length]));
+	}
+
+	public static File create(File file, int duration_sec) throws IOException {
+		new SyntheticULog().write(file, duration_sec);
+		return file;
+	}
+
+	public int getTopicCount() {
+		return topics.size();
+	}
+
+	public void write(File file, int duration_sec) throws IOException {
+		try(OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 20)) {
+
+			buffer.clear();
+			buffer.put(new byte[] { 'U', 'L', 'o', 'g', 0x01, 0x12, 0x35, 0x01 }).putLong(0);
+			flush(out);
+
+			for(Topic t : topics)
+				message(out, 'F', t.getFormat().getBytes(StandardCharsets.US_ASCII));
+
+			parameter(out, "MPC_XY_P", 0.95f);
+			parameter(out, "MPC_Z_P", 1.0f);
+
+			for(Topic t : topics) {
+				final byte[] name = t.name.getBytes(StandardCharsets.US_ASCII);
+				buffer.clear();
+				buffer.put((byte)0).putShort((short)t.id).put(name);
+				header(out, 'A');
+			}
+
+			/* Messages are interleaved on a 1ms grid */
+			for(long tms_us = 1000; tms_us <= duration_sec * 1_000_000L; tms_us += 1000) {
+				for(Topic t : topics) {
+					if(tms_us % t.period_us == 0) {
+						buffer.clear();
+						buffer.putShort((short)t.id);
+						t.putData(buffer, tms_us);
+						header(out, 'D');
+					}
+				}
+				if(tms_us % 10_000_000L == 0) {
+					final byte[] text = ("Synthetic message at "+tms_us / 1_000_000L+" s").getBytes(StandardCharsets.US_ASCII);
+					buffer.clear();
+					buffer.put((byte)'6').putLong(tms_us).put(text);
+					header(out, 'L');
+				}
+			}
+		}
+	}
+
+	private void parameter(OutputStream out, String name, float value) throws IOException {
+		final byte[] key = ("float "+name).getBytes(StandardCharsets.US_ASCII);
+		buffer.clear();
+		buffer.put((byte)key.length).put(key).putFloat(value);
+		header(out, 'P');
+	}
+
+	private void message(OutputStream out, char type, byte[] body) throws IOException {
+		buffer.clear();
+		buffer.put(body);
+		header(out, type);
+	}
+
+	/* Prefixes the body in buffer with the message header and writes it */
+	private void header(OutputStream out, char type) throws IOException {
+		final int size = buffer.position();
+		out.write(size & 0xFF); out.write(size >> 8); out.write(type);
+		flush(out);
+	}
+
+	private void flush(OutputStream out) throws IOException {
+		out.write(buffer.array(), 0, buffer.position());
+	}
+
+	private static class Topic {
+
+		final int    id;
+		final String name;
+		final long   period_us;
+		final String[] names;
+		final int[]    sizes;
+
+		Topic(int id, String name, Map<String,Integer> fields, int rate) {
+			this.id = id; this.name = name;
+			this.period_us = 1_000_000L / rate;
+			fields.remove("timestamp");
+			this.names = fields.keySet().toArray(new String[0]);
+			this.sizes = new int[names.length];
+			for(int i = 0; i < names.length; i++)
+				sizes[i] = fields.get(names[i]);
+		}
+
+		String getFormat() {
+			final StringBuilder b = new StringBuilder(name).append(":uint64_t timestamp;");
+			for(int i = 0; i < names.length; i++) {
+				b.append(isTime(i) ? "uint64_t" : "float");
+				if(sizes[i] > 0)
+					b.append('[').append(sizes[i]).append(']');
+				b.append(' ').append(names[i]).append(';');
+			}
+			return b.toString();
+		}
+
+		void putData(ByteBuffer b, long tms_us) {
+			final double t = tms_us / 1e6;
+			b.putLong(tms_us);
+			for(int i = 0; i < names.length; i++) {
+				if(isTime(i)) {
+					b.putLong(tms_us - 500);
+					continue;
+				}
+				if("q".equals(names[i])) {
+					putQuaternion(b, 0.2 * Math.sin(t), 0.1 * Math.cos(0.5 * t), 0.01 * t);
+					continue;
+				}
+				final int n = Math.max(sizes[i], 1);
+				for(int k = 0; k < n; k++)
+					b.putFloat((float)((i + k + 1) * Math.sin(t * (0.1 + 0.05 * (i + k)) + id)));
+			}
+		}
+
+		boolean isTime(int i) {
+			return names[i].startsWith("timestamp") && sizes[i] == 0;
+		}
+
+		private static void putQuaternion(ByteBuffer b, double roll, double pitch, double yaw) {
+			final double cr = Math.cos(roll / 2),  sr = Math.sin(roll / 2);
+			final double cp = Math.cos(pitch / 2), sp = Math.sin(pitch / 2);
+			final double cy = Math.cos(yaw / 2),   sy = Math.sin(yaw / 2);
+			b.putFloat((float)(cr * cp * cy + sr * sp * sy));
+			b.putFloat((float)(sr * cp * cy - cr * sp * sy));
+			b.putFloat((float)(cr * sp * cy + sr * cp * sy));
+			b.putFloat((float)(cr * cp * sy - sr * sp * cy));
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		final File file = new File(args.length > 0 ? args[0] : "synthetic.ulg");
+		final int duration = args.length > 1 ? Integer.parseInt(args[1]) : 600;
+		create(file, duration);
+		System.out.println(file.getAbsolutePath()+" written: "+file.length()/1024+" kB, "+duration+" s");
+	}
+}
@@ -0,0 +1,130 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017,2018 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+package com.comino.flight.benchmark;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import me.drton.jmavlib.log.FormatErrorException;
+import me.drton.jmavlib.log.ulog.ULogReader;
+
+/*
+ * Complete passes over a synthetic ULog file: generic decoding into a map
+ * versus typed decoding into bound slots, on a buffered and a mapped reader.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ULogReaderBenchmark {
+
+	@Param({ "60" })
+	public int duration_sec;
+
+	@Param({ "false", "true" })
+	public boolean mapped;
+
+	private File file;
+	private ULogReader reader;
+	private double[] values;
+
+	private final Map<String,Object> update = new HashMap<String,Object>();
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException, FormatErrorException {
+		file = File.createTempFile("bench", ".ulg");
+		SyntheticULog.create(file, duration_sec);
+		reader = new ULogReader(file.getAbsolutePath(), mapped);
+		for(String field : reader.getFieldList().keySet())
+			reader.bind(field);
+		values = new double[reader.getBindingCount()];
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		reader.close();
+		Files.deleteIfExists(file.toPath());
+	}
+
+	@Benchmark
+	public int readUpdateMap(Blackhole bh) throws IOException, FormatErrorException {
+		reader.seek(0);
+		int count = 0;
+		try {
+			while(true) {
+				bh.consume(reader.readUpdate(update));
+				count++;
+			}
+		} catch(EOFException e) { }
+		return count;
+	}
+
+	@Benchmark
+	public int readUpdateTyped(Blackhole bh) throws IOException, FormatErrorException {
+		reader.seek(0);
+		Arrays.fill(values, Double.NaN);
+		int count = 0;
+		try {
+			while(true) {
+				bh.consume(reader.readUpdate(values));
+				count++;
+			}
+		} catch(EOFException e) { }
+		return count;
+	}
+}
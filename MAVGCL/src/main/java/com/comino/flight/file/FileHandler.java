@@ -65,7 +65,9 @@ import org.mavlink.messages.lquac.msg_serial_control;
 import com.comino.flight.log.ProgressInputStream;
 import com.comino.flight.log.ulog.UlogtoModelConverter;
 import com.comino.flight.model.AnalysisDataModel;
+import com.comino.flight.model.AnalysisDataModelList;
 import com.comino.flight.model.AnalysisDataModelMetaData;
+import com.comino.flight.model.KeyFigureMetaData;
 import com.comino.flight.model.service.AnalysisModelService;
 import com.comino.flight.observables.StateProperties;
 import com.comino.flight.param.MAVGCLPX4Parameters;
@@ -78,6 +80,11 @@ import com.comino.mavcom.param.ParameterAttributes;
 import com.comino.mavcom.struct.MapPoint3D_F32;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonDeserializationContext;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 import com.google.gson.reflect.TypeToken;
 
 import javafx.application.Platform;
@@ -97,6 +104,9 @@ public class FileHandler {
 	private static final String TMPFILE  =  "/logtmp.tmp";
 	private static final int MAX_PRESETS = 15;
 
+	/* Model files above this size are loaded on demand */
+	private static final long PAGED_FILE_SIZE = Runtime.getRuntime().maxMemory() / 32;
+
 	private static FileHandler handler = null;
 
 	private Stage stage;
@@ -296,9 +306,11 @@ public class FileHandler {
 
 					if(file.getName().endsWith("ulg")) {
 						try {
-							ULogReader reader = new ULogReader(file.getAbsolutePath());
+							ULogReader reader = new ULogReader(file.getAbsolutePath(), true);
 							MAVGCLPX4Parameters.getInstance().setParametersFromLog(reader.getParameters());	
 							converter = new UlogtoModelConverter(reader,modelService.getModelList());	
+							/* Only charted key figures are converted now, the others when accessed */
+							converter.setDemand(modelService.getDemand());
 							converter.doConversion();
 							ulogFields = reader.getFieldList();
 						}
@@ -311,7 +323,29 @@ public class FileHandler {
 						state.isLogLoading().set(false);
 					}
 
-					if(file.getName().endsWith("mgc")) {
+					if(file.getName().endsWith("mgc") && ModelFile.isModelFile(file)) {
+						try {
+							ModelFile data = new ModelFile();
+							/* Large recordings are paged in chunk by chunk as they are displayed */
+							int max_chunks = file.length() > PAGED_FILE_SIZE ? AnalysisModelService.getMaxResidentChunks() : 0;
+							data.read(file, new ProgressInputStream.Listener() {
+								@Override
+								public void onProgressChanged(float percentage) {
+									state.getProgressProperty().set(percentage);
+								}
+							}, max_chunks);
+							data.update(modelService,paramService);
+						} catch(Exception e) {
+							logger.writeLocalMsg("[mgc] "+e.getMessage(),MAV_SEVERITY.MAV_SEVERITY_ERROR);
+							name = "";
+							state.getProgressProperty().set(StateProperties.NO_PROGRESS);
+							state.getLogLoadedProperty().set(false);
+							state.isLogLoading().set(false);
+							return null;
+						}
+						state.getProgressProperty().set(StateProperties.NO_PROGRESS);
+					}
+					else if(file.getName().endsWith("mgc")) {
 						listType = new TypeToken<FileData>() {}.getType();
 
 						ProgressInputStream raw = new ProgressInputStream(new FileInputStream(file));
@@ -322,7 +356,8 @@ public class FileHandler {
 							}
 						});
 						Reader reader = new BufferedReader(new InputStreamReader(raw));
-						Gson gson = new GsonBuilder().create();
+						Gson gson = new GsonBuilder()
+								.registerTypeAdapter(AnalysisDataModel.class, new AnalysisDataModelDeserializer()).create();
 						try {
 							FileData data = gson.fromJson(reader,listType);
 							data.update(modelService,paramService,currentModel);
@@ -393,12 +428,9 @@ public class FileHandler {
 					if(file.getName().endsWith("mgc")) {
 						try {
 							LogTools.info(file.getName()+" saved..");
-							Writer writer = new FileWriter(file);
-							FileData data = new FileData(); data.prepareData(modelService,paramService, currentModel);
-							Gson gson = new GsonBuilder().serializeSpecialFloatingPointValues().create();
+							ModelFile data = new ModelFile(); data.prepareData(modelService,paramService);
 							stage.getScene().setCursor(Cursor.WAIT);
-							gson.toJson(data, writer);
-							writer.close();
+							data.write(file);
 							stage.getScene().setCursor(Cursor.DEFAULT);
 							StateProperties.getInstance().getLogLoadedProperty().set(true);
 							name = file.getName();
@@ -494,7 +526,8 @@ public class FileHandler {
 			new Thread(new Task<Void>() {
 				@Override protected Void call() throws Exception {
 					String kf = file.getName().replaceFirst("[.][^.]+$", "").toUpperCase();
-					if(meta.getMetaData(kf)==null) {
+					KeyFigureMetaData m = meta.getMetaData(kf);
+					if(m==null) {
 						control.writeLogMessage(new LogMessage("[mgc] No export: "+kf+" not a valid keyfigure.",MAV_SEVERITY.MAV_SEVERITY_WARNING));
 						return null;
 					}
@@ -503,8 +536,9 @@ public class FileHandler {
 						control.writeLogMessage(new LogMessage("[mgc] "+kf+" is exported as csv.",MAV_SEVERITY.MAV_SEVERITY_INFO));
 						try {
 							Writer writer = new FileWriter(file);
-							for(int x=0; x<service.getModelList().size();x++) {
-								value = service.getModelList().get(x).getValue(kf);
+							AnalysisDataModelList list = service.getModelList();
+							for(int x=0; x<list.size();x++) {
+								value = list.hasColumn(m) ? list.getValue(x, m) : 0;
 								writer.append(String.format("%#.3f; %#.7f",(x*service.getCollectorInterval_ms()/1000f),(float)value).trim());
 								writer.append("\n");
 							}
@@ -754,12 +788,8 @@ public class FileHandler {
 			f.delete();
 		f.createNewFile();
 		addToLastFile(f.getAbsolutePath());
-		Writer writer = new FileWriter(f);
-		FileData data = new FileData(); data.prepareData(modelService,paramService, currentModel);
-		Gson gson = new GsonBuilder().serializeSpecialFloatingPointValues().create();
-		gson.toJson(data, writer);
-		writer.flush();
-		writer.close();
+		ModelFile data = new ModelFile(); data.prepareData(modelService,paramService);
+		data.write(f);
 	}
 
 	private FileChooser getFileDialog(String title, String initDir, ExtensionFilter...filter) {
@@ -775,6 +805,38 @@ public class FileHandler {
 		return fileChooser;
 	}
 
+	/*
+	 * Reads rows of legacy JSON files, which store values keyed by key figure
+	 * hash, into the columnar model list. Files are only written as ModelFile.
+	 */
+	private static class AnalysisDataModelDeserializer implements JsonDeserializer<AnalysisDataModel> {
+
+		@Override
+		public AnalysisDataModel deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context)
+				throws JsonParseException {
+			final Map<Integer,KeyFigureMetaData> kfs = AnalysisDataModelMetaData.getInstance().getKeyFigureMap();
+			final JsonObject o = json.getAsJsonObject();
+			final AnalysisDataModel m = new AnalysisDataModel();
+			if(o.has("tms"))
+				m.tms = o.get("tms").getAsLong();
+			if(o.has("msg"))
+				m.msg = context.deserialize(o.get("msg"), LogMessage.class);
+			if(o.has("dt_sec"))
+				m.dt_sec = o.get("dt_sec").getAsFloat();
+			if(o.has("sync_fps"))
+				m.sync_fps = o.get("sync_fps").getAsFloat();
+			if(o.has("data")) {
+				/* Files store values keyed by hash; resolve them to slots of known key figures */
+				for(Map.Entry<String,JsonElement> e : o.getAsJsonObject("data").entrySet()) {
+					KeyFigureMetaData kf = kfs.get(Integer.parseInt(e.getKey()));
+					if(kf != null && !e.getValue().isJsonNull())
+						m.setValue(kf.slot, e.getValue().getAsDouble());
+				}
+			}
+			return m;
+		}
+	}
+
 	private class FileData {
 
 		private Map<String,ParameterAttributes>		params = null;
@@ -782,12 +844,6 @@ public class FileHandler {
 		private Map<Integer,MapPoint3D_F32>         grid   = null;
 		private int conversion_rate  = 0;
 
-		public void prepareData(AnalysisModelService service, MAVGCLPX4Parameters param, DataModel model) {
-			data   = service.getModelList();
-			params = param.get();
-			conversion_rate = service.getCollectorInterval_ms();
-		}
-
 		public void update(AnalysisModelService service, MAVGCLPX4Parameters param, DataModel model ) {
 			if(data!=null)
 				service.setModelList(data);
@@ -0,0 +1,695 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017,2018 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+package com.comino.flight.file;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.comino.flight.log.ProgressInputStream;
+import com.comino.flight.model.AnalysisDataModelList;
+import com.comino.flight.model.AnalysisDataModelMetaData;
+import com.comino.flight.model.service.AnalysisModelService;
+import com.comino.flight.param.MAVGCLPX4Parameters;
+import com.comino.mavcom.model.segment.LogMessage;
+import com.comino.mavcom.param.ParameterAttributes;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
+
+/*
+ * Binary columnar MAVGCL model file (.mgc version 2). After magic and version
+ * the file is a sequence of sections (type, length, payload), written and read
+ * in a streaming fashion through a FileChannel:
+ *
+ *   HEADER    collector interval, row count and key figure dictionary
+ *   ROWS      per chunk: timestamps (delta coded) and sync fps
+ *   COLUMN    per key figure and chunk: values as float or double if needed,
+ *             XOR coded against the previous value and byte shuffled
+ *   PARAMS    parameters as JSON
+ *   MESSAGES  log messages with their row as JSON
+ *   END
+ *
+ * All payloads except the header are deflated, unknown sections are skipped.
+ * JSON files of older versions are still imported by FileHandler.
+ */
+
+public class ModelFile implements AnalysisDataModelList.ChunkSource {
+
+	public static final int MAGIC   = 0x3243474D;   // "MGC2"
+	public static final int VERSION = 2;
+
+	private static final byte HEADER   = 'H';
+	private static final byte ROWS     = 'R';
+	private static final byte COLUMN   = 'C';
+	private static final byte PARAMS   = 'P';
+	private static final byte MESSAGES = 'M';
+	private static final byte END      = 'E';
+
+	private static final byte FLOAT32  = 4;
+	private static final byte FLOAT64  = 8;
+
+	private static final int  CHUNK    = AnalysisDataModelList.CHUNK_SIZE;
+
+	private static final Type PARAMS_TYPE = new TypeToken<Map<String,ParameterAttributes>>() {}.getType();
+
+	private final Gson gson = new GsonBuilder().serializeSpecialFloatingPointValues().create();
+
+	private Map<String,ParameterAttributes> params = null;
+	private AnalysisDataModelList           data   = null;
+	private int conversion_rate  = 0;
+
+	/* Created on first use and ended when the file is closed, so an instance can be reused */
+	private Inflater inflater = null;
+
+	private final Map<Long,ChunkRef> index = new HashMap<Long,ChunkRef>();
+	private FileChannel channel = null;
+
+	private byte[] raw      = new byte[CHUNK * 12];
+	private byte[] pack     = new byte[CHUNK * 12];
+	private byte[] unpacked = new byte[CHUNK * 12];
+
+	public void prepareData(AnalysisModelService service, MAVGCLPX4Parameters param) {
+		data   = service.getModelList();
+		params = param.get();
+		conversion_rate = service.getCollectorInterval_ms();
+	}
+
+	public void setData(AnalysisDataModelList data, int interval_ms) {
+		this.data = data;
+		this.conversion_rate = interval_ms;
+	}
+
+	public AnalysisDataModelList getData() {
+		return data;
+	}
+
+	public void update(AnalysisModelService service, MAVGCLPX4Parameters param) {
+		if(data!=null)
+			service.loadModelList(data);
+		if(params!=null)
+			param.set(params);
+		if(conversion_rate != 0)
+			service.setCollectorInterval(conversion_rate * 1000);
+		else
+			service.setCollectorInterval(AnalysisModelService.DEFAULT_INTERVAL_US);
+	}
+
+	public static boolean isModelFile(File file) {
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			final ByteBuffer b = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+			while(b.hasRemaining())
+				if(channel.read(b) < 0)
+					return false;
+			return b.getInt(0) == MAGIC;
+		} catch(IOException e) {
+			return false;
+		}
+	}
+
+	public void write(File file) throws IOException {
+
+		final AnalysisDataModelList list = data;
+		final int rows = list.size();
+		final int slots = AnalysisDataModelMetaData.getSlotCount();
+
+		/* Written to a temporary file first, as the list might be paged from the target */
+		final File tmp = new File(file.getAbsolutePath()+".tmp");
+		final Map<Long,ChunkRef> refs = new HashMap<Long,ChunkRef>();
+		final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+
+		try(FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+			final SectionWriter out = new SectionWriter(channel);
+
+			// Dictionary of all columns present in the list
+			final int[] columns = new int[slots]; int count = 0;
+			for(int slot = 0; slot < slots; slot++)
+				if(list.hasColumn(slot))
+					columns[count++] = slot;
+
+			ByteBuffer b = out.payload(16 + count * 64);
+			b.putInt(conversion_rate).putInt(rows).putInt(count);
+			for(int i = 0; i < count; i++) {
+				final byte[] key = AnalysisDataModelMetaData.getSlotKey(columns[i]).getBytes(StandardCharsets.UTF_8);
+				b = out.ensure(2 + key.length);
+				b.putShort((short)key.length).put(key);
+			}
+			out.section(HEADER);
+
+			final long[]  tms = new long[CHUNK];
+			final float[] fps = new float[CHUNK];
+
+			for(int chunk = 0; chunk * CHUNK < rows; chunk++) {
+				final int first = chunk * CHUNK;
+				final int n = Math.min(CHUNK, rows - first);
+
+				for(int i = 0; i < n; i++) {
+					tms[i] = list.getTime(first + i);
+					fps[i] = list.getSyncFPS(first + i);
+				}
+				int len = encodeRows(tms, fps, n);
+				b = out.payload(8 + len);
+				b.putInt(chunk).putInt(n);
+				deflate(deflater, out, len);
+				out.section(ROWS);
+
+				for(int i = 0; i < count; i++) {
+					final double[] values = list.getChunk(columns[i], chunk);
+					if(values == null)
+						continue;
+					final boolean single = isSingle(values, n);
+					len = single ? encode32(values, n) : encode64(values, n);
+					b = out.payload(13 + len);
+					b.putInt(i).putInt(chunk).put(single ? FLOAT32 : FLOAT64).putInt(n);
+					deflate(deflater, out, len);
+					final int length = out.payload.position() - 13;
+					refs.put(key(columns[i], chunk), new ChunkRef(i, chunk, single ? FLOAT32 : FLOAT64, n,
+							out.section(COLUMN) + 13, length));
+				}
+			}
+
+			if(params != null) {
+				final byte[] json = gson.toJson(params, PARAMS_TYPE).getBytes(StandardCharsets.UTF_8);
+				raw = json; out.payload(json.length);
+				deflate(deflater, out, json.length);
+				out.section(PARAMS);
+				raw = new byte[CHUNK * 12];
+			}
+
+			final JsonArray messages = new JsonArray();
+			for(int row = 0; row < rows; row++) {
+				final LogMessage msg = list.getMessage(row);
+				if(msg == null)
+					continue;
+				final JsonObject o = new JsonObject();
+				o.addProperty("row", row);
+				o.add("msg", gson.toJsonTree(msg));
+				messages.add(o);
+			}
+			if(messages.size() > 0) {
+				final byte[] json = gson.toJson(messages).getBytes(StandardCharsets.UTF_8);
+				raw = json; out.payload(json.length);
+				deflate(deflater, out, json.length);
+				out.section(MESSAGES);
+				raw = new byte[CHUNK * 12];
+			}
+
+			out.payload(0);
+			out.section(END);
+			out.flush();
+		} catch(IOException | RuntimeException e) {
+			tmp.delete();
+			throw e;
+		} finally {
+			deflater.end();
+		}
+		replace(tmp, file, refs, list);
+	}
+
+	/*
+	 * A paged list is re-pointed to the new file before the move, so no channel
+	 * keeps the target open while it is replaced (which fails on Windows).
+	 */
+	private void replace(File tmp, File file, Map<Long,ChunkRef> refs, AnalysisDataModelList list) throws IOException {
+		synchronized(list) {
+			if(!list.isPaged()) {
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				return;
+			}
+			index.clear();
+			index.putAll(refs);
+			list.setChunkSource(this, list.getMaxChunks());
+			File source = tmp;
+			try {
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				source = file;
+			} finally {
+				channel = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+			}
+		}
+	}
+
+	public void read(File file, ProgressInputStream.Listener listener) throws IOException {
+		read(file, listener, 0);
+	}
+
+	/*
+	 * Reads the model file. If max_chunks is greater than 0, column chunks are
+	 * only indexed and loaded on demand by the model list, which keeps at most
+	 * max_chunks of them in memory. The file then stays open until the list is
+	 * cleared.
+	 */
+	public void read(File file, ProgressInputStream.Listener listener, int max_chunks) throws IOException {
+
+		final AnalysisDataModelList list = new AnalysisDataModelList();
+		final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		final boolean paged = max_chunks > 0;
+		int[] slots = new int[0];
+
+		try {
+
+			final SectionReader in = new SectionReader(channel);
+			final long size = channel.size();
+
+			ByteBuffer b = in.read(8);
+			if(b.getInt() != MAGIC)
+				throw new IOException("Not a MAVGCL model file");
+			if(b.getInt() > VERSION)
+				throw new IOException("Unsupported model file version");
+
+			final long[]  tms = new long[CHUNK];
+			final float[] fps = new float[CHUNK];
+
+			boolean end = false;
+			while(!end) {
+				b = in.read(5);
+				final byte type = b.get();
+				final int  len  = b.getInt();
+
+				if(paged && type == COLUMN) {
+					b = in.read(13);
+					final ChunkRef ref = new ChunkRef(b, in.position(), len - 13);
+					if(slots[ref.column] >= 0) {
+						list.setPagedChunk(slots[ref.column], ref.chunk);
+						index.put(key(slots[ref.column], ref.chunk), ref);
+					}
+					in.skip(ref.length);
+					continue;
+				}
+
+				b = in.read(len);
+
+				switch(type) {
+				case HEADER:
+					conversion_rate = b.getInt();
+					b.getInt();
+					slots = new int[b.getInt()];
+					for(int i = 0; i < slots.length; i++) {
+						final byte[] key = new byte[b.getShort()];
+						b.get(key);
+						slots[i] = AnalysisDataModelMetaData.findSlot(new String(key, StandardCharsets.UTF_8));
+					}
+					break;
+				case ROWS: {
+					final int chunk = b.getInt(); final int n = b.getInt();
+					if(chunk * CHUNK != list.size())
+						throw new IOException("Row sections out of order");
+					decodeRows(inflate(b, n * 12), tms, fps, n);
+					list.addRows(tms, fps, n);
+					if(listener != null)
+						listener.onProgressChanged(in.position() / (float)size);
+					break;
+				}
+				case COLUMN: {
+					final ChunkRef ref = new ChunkRef(b, 0, len - 13);
+					/* columns of key figures not defined by the loaded meta data are skipped */
+					if(slots[ref.column] >= 0)
+						list.setChunk(slots[ref.column], ref.chunk, decode(ref, b));
+					break;
+				}
+				case PARAMS: {
+					final String json = new String(inflate(b, -1), 0, inflated, StandardCharsets.UTF_8);
+					params = gson.fromJson(json, PARAMS_TYPE);
+					break;
+				}
+				case MESSAGES: {
+					final String json = new String(inflate(b, -1), 0, inflated, StandardCharsets.UTF_8);
+					for(JsonElement e : JsonParser.parseString(json).getAsJsonArray()) {
+						final JsonObject o = e.getAsJsonObject();
+						final int row = o.get("row").getAsInt();
+						if(row < list.size())
+							list.setMessage(row, gson.fromJson(o.get("msg"), LogMessage.class));
+					}
+					break;
+				}
+				case END:
+					end = true;
+					break;
+				default:
+					break;
+				}
+			}
+		} catch(DataFormatException e) {
+			close(channel);
+			throw new IOException("Corrupt model file: "+e.getMessage());
+		} catch(IOException e) {
+			close(channel);
+			throw e;
+		}
+
+		if(paged) {
+			this.channel = channel;
+			list.setChunkSource(this, max_chunks);
+		} else
+			close(channel);
+
+		data = list;
+	}
+
+	@Override
+	public synchronized double[] loadChunk(int slot, int chunk) throws IOException {
+		final ChunkRef ref = index.get(key(slot, chunk));
+		if(ref == null || channel == null)
+			return null;
+		final ByteBuffer b = ByteBuffer.allocate(ref.length).order(ByteOrder.LITTLE_ENDIAN);
+		long pos = ref.position;
+		while(b.hasRemaining()) {
+			final int n = channel.read(b, pos);
+			if(n < 0)
+				throw new EOFException();
+			pos += n;
+		}
+		b.flip();
+		try {
+			return decode(ref, b);
+		} catch(DataFormatException e) {
+			throw new IOException("Corrupt model file: "+e.getMessage());
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		close(channel);
+		channel = null;
+	}
+
+	private void close(FileChannel channel) {
+		if(channel == null)
+			return;
+		try {
+			channel.close();
+		} catch(IOException e) { }
+		if(inflater != null)
+			inflater.end();
+		inflater = null;
+	}
+
+	private double[] decode(ChunkRef ref, ByteBuffer b) throws DataFormatException {
+		final double[] values = new double[CHUNK];
+		Arrays.fill(values, Double.NaN);
+		if(ref.encoding == FLOAT32)
+			decode32(inflate(b, ref.count * 4), values, ref.count);
+		else
+			decode64(inflate(b, ref.count * 8), values, ref.count);
+		return values;
+	}
+
+	private static long key(int slot, int chunk) {
+		return ((long)slot << 32) | chunk;
+	}
+
+	/* Location and encoding of a column section */
+	private static class ChunkRef {
+
+		final int  column;
+		final int  chunk;
+		final byte encoding;
+		final int  count;
+		final long position;
+		final int  length;
+
+		ChunkRef(int column, int chunk, byte encoding, int count, long position, int length) {
+			this.column   = column;
+			this.chunk    = chunk;
+			this.encoding = encoding;
+			this.count    = count;
+			this.position = position;
+			this.length   = length;
+		}
+
+		ChunkRef(ByteBuffer b, long position, int length) {
+			this.column   = b.getInt();
+			this.chunk    = b.getInt();
+			this.encoding = b.get();
+			this.count    = b.getInt();
+			this.position = position;
+			this.length   = length;
+		}
+	}
+
+	/* Encoding ---------------------------------------------------------------------------------- */
+
+	private static boolean isSingle(double[] values, int n) {
+		for(int i = 0; i < n; i++) {
+			final double v = values[i];
+			if((double)(float)v != v && !Double.isNaN(v))
+				return false;
+		}
+		return true;
+	}
+
+	private int encode32(double[] values, int n) {
+		int prev = 0;
+		for(int i = 0; i < n; i++) {
+			final int bits = Float.floatToRawIntBits((float)values[i]);
+			final int x = bits ^ prev; prev = bits;
+			raw[i] = (byte)x; raw[n+i] = (byte)(x >>> 8); raw[2*n+i] = (byte)(x >>> 16); raw[3*n+i] = (byte)(x >>> 24);
+		}
+		return n * 4;
+	}
+
+	private int encode64(double[] values, int n) {
+		long prev = 0;
+		for(int i = 0; i < n; i++) {
+			final long bits = Double.doubleToRawLongBits(values[i]);
+			final long x = bits ^ prev; prev = bits;
+			for(int k = 0; k < 8; k++)
+				raw[k*n+i] = (byte)(x >>> (k * 8));
+		}
+		return n * 8;
+	}
+
+	private int encodeRows(long[] tms, float[] fps, int n) {
+		long prev = 0; int prev_fps = 0;
+		for(int i = 0; i < n; i++) {
+			final long d = tms[i] - prev; prev = tms[i];
+			for(int k = 0; k < 8; k++)
+				raw[k*n+i] = (byte)(d >>> (k * 8));
+			final int bits = Float.floatToRawIntBits(fps[i]);
+			final int x = bits ^ prev_fps; prev_fps = bits;
+			for(int k = 0; k < 4; k++)
+				raw[(8+k)*n+i] = (byte)(x >>> (k * 8));
+		}
+		return n * 12;
+	}
+
+	private static void decode32(byte[] raw, double[] values, int n) {
+		int prev = 0;
+		for(int i = 0; i < n; i++) {
+			final int x = (raw[i] & 0xFF) | (raw[n+i] & 0xFF) << 8 | (raw[2*n+i] & 0xFF) << 16 | (raw[3*n+i] & 0xFF) << 24;
+			prev = x ^ prev;
+			values[i] = Float.intBitsToFloat(prev);
+		}
+	}
+
+	private static void decode64(byte[] raw, double[] values, int n) {
+		long prev = 0;
+		for(int i = 0; i < n; i++) {
+			long x = 0;
+			for(int k = 0; k < 8; k++)
+				x |= (raw[k*n+i] & 0xFFL) << (k * 8);
+			prev = x ^ prev;
+			values[i] = Double.longBitsToDouble(prev);
+		}
+	}
+
+	private static void decodeRows(byte[] raw, long[] tms, float[] fps, int n) {
+		long prev = 0; int prev_fps = 0;
+		for(int i = 0; i < n; i++) {
+			long d = 0;
+			for(int k = 0; k < 8; k++)
+				d |= (raw[k*n+i] & 0xFFL) << (k * 8);
+			prev = prev + d;
+			tms[i] = prev;
+			int x = 0;
+			for(int k = 0; k < 4; k++)
+				x |= (raw[(8+k)*n+i] & 0xFF) << (k * 8);
+			prev_fps = x ^ prev_fps;
+			fps[i] = Float.intBitsToFloat(prev_fps);
+		}
+	}
+
+	/* Compression ------------------------------------------------------------------------------- */
+
+	private int inflated = 0;
+
+	private void deflate(Deflater deflater, SectionWriter out, int len) {
+		deflater.reset();
+		deflater.setInput(raw, 0, len);
+		deflater.finish();
+		int n = 0;
+		while(!deflater.finished()) {
+			if(n == pack.length)
+				pack = Arrays.copyOf(pack, pack.length * 2);
+			n += deflater.deflate(pack, n, pack.length - n);
+		}
+		out.ensure(n).put(pack, 0, n);
+	}
+
+	/*
+	 * Inflates the rest of b into unpacked. If expected is negative, the size is not
+	 * known in advance and unpacked grows as needed. The number of bytes is kept in
+	 * inflated. Chunks paged in while the list is written do not touch raw.
+	 */
+	private byte[] inflate(ByteBuffer b, int expected) throws DataFormatException {
+		if(inflater == null)
+			inflater = new Inflater(true);
+		inflater.reset();
+		inflater.setInput(b.array(), b.arrayOffset() + b.position(), b.remaining());
+		if(expected > unpacked.length)
+			unpacked = new byte[expected];
+		int n = 0;
+		while(!inflater.finished()) {
+			if(n == unpacked.length) {
+				if(expected >= 0)
+					throw new DataFormatException("Block exceeds "+expected+" bytes");
+				unpacked = Arrays.copyOf(unpacked, unpacked.length * 2);
+			}
+			final int k = inflater.inflate(unpacked, n, unpacked.length - n);
+			if(k == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+				throw new DataFormatException("Truncated block");
+			n += k;
+		}
+		if(expected >= 0 && n != expected)
+			throw new DataFormatException("Block size "+n+" instead of "+expected);
+		inflated = n;
+		return unpacked;
+	}
+
+	/* Channel access ---------------------------------------------------------------------------- */
+
+	private static class SectionWriter {
+
+		private final FileChannel channel;
+		private final ByteBuffer  out = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+		private ByteBuffer payload = ByteBuffer.allocate(CHUNK * 16).order(ByteOrder.LITTLE_ENDIAN);
+
+		private long written = 0;
+
+		SectionWriter(FileChannel channel) {
+			this.channel = channel;
+			out.putInt(MAGIC).putInt(VERSION);
+		}
+
+		ByteBuffer payload(int expected) {
+			payload.clear();
+			return ensure(expected);
+		}
+
+		ByteBuffer ensure(int required) {
+			if(payload.remaining() < required) {
+				final ByteBuffer b = ByteBuffer.allocate(Math.max(payload.capacity() * 2, payload.position() + required))
+						.order(ByteOrder.LITTLE_ENDIAN);
+				payload.flip();
+				b.put(payload);
+				payload = b;
+			}
+			return payload;
+		}
+
+		/* Returns the file position of the section payload */
+		long section(byte type) throws IOException {
+			payload.flip();
+			if(out.remaining() < 5 + payload.remaining())
+				flush();
+			out.put(type).putInt(payload.remaining());
+			final long position = written + out.position();
+			if(out.remaining() >= payload.remaining()) {
+				out.put(payload);
+			} else {
+				flush();
+				while(payload.hasRemaining())
+					written += channel.write(payload);
+			}
+			return position;
+		}
+
+		void flush() throws IOException {
+			out.flip();
+			while(out.hasRemaining())
+				written += channel.write(out);
+			out.clear();
+		}
+	}
+
+	private static class SectionReader {
+
+		private final FileChannel channel;
+		private ByteBuffer in = ByteBuffer.allocate(CHUNK * 16).order(ByteOrder.LITTLE_ENDIAN);
+
+		SectionReader(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		/* Returns a buffer holding exactly the next len bytes of the file */
+		ByteBuffer read(int len) throws IOException {
+			if(in.capacity() < len)
+				in = ByteBuffer.allocate(len).order(ByteOrder.LITTLE_ENDIAN);
+			in.clear().limit(len);
+			while(in.hasRemaining())
+				if(channel.read(in) < 0)
+					throw new EOFException();
+			in.flip();
+			return in;
+		}
+
+		long position() throws IOException {
+			return channel.position();
+		}
+
+		void skip(int len) throws IOException {
+			channel.position(channel.position() + len);
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017,2018 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+
+package com.comino.flight.file;
+
+import java.io.File;
+import java.util.Iterator;
+
+import com.comino.flight.model.AnalysisDataModel;
+import com.comino.flight.model.AnalysisDataModelList;
+import com.comino.flight.model.AnalysisDataModelMetaData;
+import com.comino.flight.model.KeyFigureMetaData;
+
+/*
+ * Saves a list which is paged from a model file over that same file, writes
+ * it a second time with the same instance and reads it back.
+ */
+public class ModelFileTest {
+
+	private static final int ROWS = 3 * AnalysisDataModelList.CHUNK_SIZE + 100;
+
+	public static void main(String[] args) throws Exception {
+
+		final Iterator<KeyFigureMetaData> it = AnalysisDataModelMetaData.getInstance().getKeyFigureMap().values().iterator();
+		final int[] slots = new int[3];
+		for(int k = 0; k < slots.length; k++)
+			slots[k] = AnalysisDataModelMetaData.getSlot(it.next());
+
+		final AnalysisDataModelList list = new AnalysisDataModelList();
+		for(int i = 0; i < ROWS; i++) {
+			final AnalysisDataModel m = new AnalysisDataModel();
+			for(int k = 0; k < slots.length; k++)
+				m.setValue(slots[k], k == 0 ? i : Math.sin(i * 0.01 * (k + 1)));
+			list.add(m, i * 50_000L);
+		}
+
+		final File file = File.createTempFile("mavgcl", ".mgc");
+		try {
+			final ModelFile writer = new ModelFile();
+			writer.setData(list, 50);
+			writer.write(file);
+
+			final ModelFile reader = new ModelFile();
+			reader.read(file, null, 2);
+			final AnalysisDataModelList paged = reader.getData();
+
+			final ModelFile saver = new ModelFile();
+			saver.setData(paged, 50);
+			saver.write(file);
+			System.out.println("Save over self:    "+compare(list, paged, slots)+" differences");
+			saver.write(file);
+			System.out.println("Second write:      "+compare(list, paged, slots)+" differences");
+
+			reader.read(file, null, 0);
+			System.out.println("Reuse after close: "+compare(list, reader.getData(), slots)+" differences");
+
+			paged.clear();
+		} finally {
+			file.delete();
+		}
+	}
+
+	private static int compare(AnalysisDataModelList a, AnalysisDataModelList b, int[] slots) {
+		int diff = a.size() == b.size() ? 0 : 1;
+		for(int i = 0; i < Math.min(a.size(), b.size()); i++) {
+			if(a.getTime(i) != b.getTime(i))
+				diff++;
+			for(int slot : slots)
+				if(Double.compare(a.getValue(i, slot), b.getValue(i, slot)) != 0)
+					diff++;
+		}
+		return diff;
+	}
+
+}
@@ -0,0 +1,236 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017,2018 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+package com.comino.flight.log.ulog;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.comino.flight.model.AnalysisDataModelList;
+import com.comino.flight.model.AnalysisDataModelMetaData;
+import com.comino.flight.model.KeyFigureMetaData;
+import com.comino.flight.model.ULogExtractionPlan;
+
+import me.drton.jmavlib.log.FormatErrorException;
+import me.drton.jmavlib.log.ulog.ULogReader;
+
+/*
+ * Deferred key figures of a ULog import. During the import the position of
+ * each row in the sequence of DATA records is recorded, and for each chunk
+ * the file positions of the latest record of every subscription. A deferred
+ * column chunk is then decoded on first access by replaying only the records
+ * of the chunk with just the required fields bound.
+ *
+ * All deferred key figures of the same topic are decoded together; the chunks
+ * not requested are kept until another chunk is loaded. Virtual key figures
+ * are derived from their (possibly deferred) inputs. The source takes over the
+ * reader, which is closed with the list.
+ */
+
+public class ULogColumnSource implements AnalysisDataModelList.ChunkSource {
+
+	private static final int CHUNK_BITS = AnalysisDataModelList.CHUNK_BITS;
+	private static final int CHUNK_SIZE = AnalysisDataModelList.CHUNK_SIZE;
+
+	private final ULogReader            reader;
+	private final AnalysisDataModelList list;
+
+	private final Map<Integer,KeyFigureMetaData>       deferred = new HashMap<Integer,KeyFigureMetaData>();
+	private final Map<String,List<KeyFigureMetaData>> topics   = new HashMap<String,List<KeyFigureMetaData>>();
+
+	// number of DATA records read when a row was sampled
+	private long[]   records = new long[CHUNK_SIZE];
+	// per chunk: reader position behind the record of its first row and latest record position per message id
+	private long[]   starts  = new long[16];
+	private long[][] latest  = new long[16][];
+	private int      rows    = 0;
+
+	// import state
+	private long     count   = 0;
+	private long[]   current = new long[0];
+
+	// chunks of the last decoded group, handed out on their first request
+	private final Map<Integer,double[]> pending = new HashMap<Integer,double[]>();
+	private int pending_chunk = -1;
+
+	public ULogColumnSource(ULogReader reader, AnalysisDataModelList list) {
+		this.reader = reader;
+		this.list   = list;
+	}
+
+	/*
+	 * Declares a key figure as deferred, before attach()
+	 */
+	public void defer(KeyFigureMetaData kf) {
+		deferred.put(kf.slot, kf);
+		if(!kf.isVirtual)
+			topics.computeIfAbsent(topic(kf), (t) -> new ArrayList<KeyFigureMetaData>()).add(kf);
+	}
+
+	public boolean isDeferred(KeyFigureMetaData kf) {
+		return deferred.get(kf.slot) == kf;
+	}
+
+	public int getDeferredCount() {
+		return deferred.size();
+	}
+
+	/*
+	 * To be called after each readUpdate() of the import
+	 */
+	public void read() {
+		final int id = reader.getDecodedMessageID();
+		if(id >= current.length) {
+			final int old = current.length;
+			current = Arrays.copyOf(current, id + 16);
+			Arrays.fill(current, old, current.length, -1);
+		}
+		current[id] = reader.getDecodedPosition();
+		count++;
+	}
+
+	/*
+	 * To be called when the record just read is sampled as the next row
+	 */
+	public void sample() throws IOException {
+		if((rows & AnalysisDataModelList.CHUNK_MASK) == 0) {
+			final int chunk = rows >> CHUNK_BITS;
+			if(chunk >= starts.length) {
+				starts = Arrays.copyOf(starts, chunk * 2);
+				latest = Arrays.copyOf(latest, chunk * 2);
+			}
+			starts[chunk] = reader.getPosition();
+			latest[chunk] = current.clone();
+		}
+		if(rows == records.length)
+			records = Arrays.copyOf(records, rows * 2);
+		records[rows++] = count;
+	}
+
+	/*
+	 * Backs the list by this source and marks all chunks of the deferred key
+	 * figures. The list must contain exactly the sampled rows.
+	 */
+	public void attach(int max_chunks) {
+		if(list.size() != rows)
+			throw new IllegalStateException("Sampled "+rows+" rows, list contains "+list.size());
+		list.setChunkSource(this, max_chunks);
+		final int chunks = rows == 0 ? 0 : ((rows - 1) >> CHUNK_BITS) + 1;
+		for(int slot : deferred.keySet())
+			for(int c = 0; c < chunks; c++)
+				list.setPagedChunk(slot, c);
+	}
+
+	@Override
+	public synchronized double[] loadChunk(int slot, int chunk) throws IOException {
+
+		if(chunk == pending_chunk) {
+			final double[] values = pending.remove(slot);
+			if(values != null)
+				return values;
+		}
+
+		final KeyFigureMetaData kf = deferred.get(slot);
+		if(kf == null)
+			throw new IOException("No deferred key figure in slot "+slot);
+
+		if(kf.isVirtual)
+			return AnalysisDataModelMetaData.getInstance().getVirtualKeyFigureGraph().evaluate(kf, list, chunk);
+
+		final ULogExtractionPlan plan;
+		final double[][] chunks;
+		try {
+			reader.clearBindings();
+			plan = new ULogExtractionPlan(topics.get(topic(kf)), reader);
+			chunks = decode(plan, chunk);
+		} catch(FormatErrorException e) {
+			throw new IOException(e);
+		}
+
+		double[] values = null;
+		pending.clear();
+		pending_chunk = chunk;
+		for(int i = 0; i < plan.size(); i++) {
+			if(plan.getKeyFigure(i) == kf)
+				values = chunks[i];
+			else
+				pending.put(plan.getKeyFigure(i).slot, chunks[i]);
+		}
+		return values;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		pending.clear();
+		reader.close();
+	}
+
+	private double[][] decode(ULogExtractionPlan plan, int chunk) throws IOException, FormatErrorException {
+		final double[] values = plan.createValues();
+		final double[][] chunks = new double[plan.size()][CHUNK_SIZE];
+		for(double[] c : chunks)
+			Arrays.fill(c, Double.NaN);
+
+		final int first = chunk << CHUNK_BITS;
+		final int last  = Math.min(rows, first + CHUNK_SIZE);
+
+		// values held at the first row: latest record of each subscription, in file order
+		final long[] held = latest[chunk].clone();
+		Arrays.sort(held);
+		for(long pos : held) {
+			if(pos < 0)
+				continue;
+			reader.seekPosition(pos);
+			reader.readUpdate(values);
+		}
+
+		reader.seekPosition(starts[chunk]);
+		long k = records[first];
+		for(int row = first; row < last; row++) {
+			for(; k < records[row]; k++)
+				reader.readUpdate(values);
+			plan.execute(values, chunks, row - first);
+		}
+		return chunks;
+	}
+
+	private static String topic(KeyFigureMetaData kf) {
+		final String field = kf.sources.get(KeyFigureMetaData.ULG_SOURCE).field;
+		final int i = field.indexOf('.');
+		return i < 0 ? field : field.substring(0, i);
+	}
+}
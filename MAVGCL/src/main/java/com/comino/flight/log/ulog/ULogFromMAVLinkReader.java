@@ -42,6 +42,9 @@ import org.mavlink.messages.lquac.msg_logging_ack;
 import org.mavlink.messages.lquac.msg_logging_data;
 import org.mavlink.messages.lquac.msg_logging_data_acked;
 
+import com.comino.flight.model.AnalysisDataModel;
+import com.comino.flight.model.AnalysisDataModelMetaData;
+import com.comino.flight.model.ULogExtractionPlan;
 import com.comino.flight.model.service.AnalysisModelService;
 import com.comino.flight.prefs.MAVPreferences;
 import com.comino.jmavlib.extensions.UlogMAVLinkParser;
@@ -63,6 +66,7 @@ public class ULogFromMAVLinkReader implements IMAVLinkListener {
 	private IMAVController control   = null;
 	private int state = STATE_HEADER_IDLE;
 	private UlogMAVLinkParser parser = null;
+	private volatile ULogExtractionPlan plan = null;
 
 	private int header_processed = 0;
 	private int data_processed = 0;
@@ -89,14 +93,27 @@ public class ULogFromMAVLinkReader implements IMAVLinkListener {
 		this(control, false);
 	}
 
-	public Map<String, Object> getData() {
-		return parser.getDataBuffer();
+	/*
+	 * Sets the ULog key figures of target from the latest streamed values.
+	 * Must be called on the MAVLink receive thread while logging.
+	 */
+	public void extract(AnalysisDataModel target) {
+		final ULogExtractionPlan p = plan;
+		final double[] values = parser.getValues();
+		// bindings might have been reset meanwhile
+		if(p == null || values.length == 0)
+			return;
+		p.execute(values, target);
 	}
 
 	public Map<String,String> getFieldList() {
 		return parser.getFieldList();
 	}
 
+	public long getTimestamp() {
+		return parser.getLastTimestamp();
+	}
+
 	public boolean enableLogging(boolean enable) {
 		
 		this.service = AnalysisModelService.getInstance();
@@ -120,7 +137,7 @@ public class ULogFromMAVLinkReader implements IMAVLinkListener {
 			if(enable)  {
 				service.setCollectorInterval(AnalysisModelService.MAVHIRES_INTERVAL_US);
 				long tms = System.currentTimeMillis();
-				parser.reset(); header_processed = 0; package_lost = 0;
+				plan = null; parser.reset(); header_processed = 0; package_lost = 0;
 				logger.writeLocalMsg("[mgc] Try to start ULog streaming",MAV_SEVERITY.MAV_SEVERITY_DEBUG);
 				control.sendMAVLinkCmd(MAV_CMD.MAV_CMD_LOGGING_START,0);
 
@@ -213,6 +230,7 @@ public class ULogFromMAVLinkReader implements IMAVLinkListener {
 			msg_logging_data log = (msg_logging_data)o;
 
 			if(state==STATE_HEADER_IDLE) {
+				plan = null;
 				parser.reset();
 				data_processed = 0;
 				package_lost=0;
@@ -222,6 +240,7 @@ public class ULogFromMAVLinkReader implements IMAVLinkListener {
 			if(state==STATE_HEADER_WAIT) {
 				LogTools.info("ULOG build subscriptions");
 				parser.buildSubscriptions();
+				plan = new ULogExtractionPlan(AnalysisDataModelMetaData.getInstance().getKeyFigureMap().values(), parser);
 				data_processed = header_processed;
 				parser.clearBuffer();
 				state = STATE_DATA;
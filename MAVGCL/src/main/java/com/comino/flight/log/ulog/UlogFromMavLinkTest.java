@@ -2,6 +2,7 @@ package com.comino.flight.log.ulog;
 
 import org.mavlink.messages.MAV_CMD;
 
+import com.comino.flight.model.AnalysisDataModel;
 import com.comino.mavcom.control.IMAVController;
 import com.comino.mavcom.control.impl.MAVUdpController;
 import com.comino.mavcom.log.MSPLogger;
@@ -10,6 +11,7 @@ public class UlogFromMavLinkTest implements Runnable {
 
 	private IMAVController control = null;
 	private ULogFromMAVLinkReader logger = null;
+	private AnalysisDataModel model = new AnalysisDataModel();
 
 	public UlogFromMavLinkTest() {
 
@@ -53,7 +55,8 @@ public class UlogFromMavLinkTest implements Runnable {
 			try {
 				Thread.sleep(10);
 				if(control.isConnected()) {
-        val = (float)logger.getData().get("sensor_combined_0.accelerometer_m_s2[2]");
+        logger.extract(model);
+        val = (float)model.getValue("ACCZ");
 			//	  System.out.println((int)(logger.lostPackageRatio()*100f)+"%");
                  if(val > -8 || val < -10)
 					System.out.println(val);
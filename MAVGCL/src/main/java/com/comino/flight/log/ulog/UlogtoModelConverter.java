@@ -34,13 +34,22 @@
 package com.comino.flight.log.ulog;
 
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import com.comino.flight.model.AnalysisDataModel;
+import com.comino.flight.model.AnalysisDataModelList;
 import com.comino.flight.model.AnalysisDataModelMetaData;
 import com.comino.flight.model.KeyFigureMetaData;
+import com.comino.flight.model.ULogExtractionPlan;
+import com.comino.flight.model.converter.SourceConverter;
 import com.comino.flight.model.service.AnalysisModelService;
 import com.comino.flight.observables.StateProperties;
 import com.comino.mavcom.model.segment.LogMessage;
@@ -49,75 +58,233 @@ import me.drton.jmavlib.log.FormatErrorException;
 import me.drton.jmavlib.log.ulog.ULogReader;
 import us.ihmc.log.LogTools;
 
+/*
+ * Converts a ULog file into the model list. The reader thread decodes and
+ * resamples the log into batches of one list chunk, which are converted in
+ * parallel on the common ForkJoinPool and appended in order. Converters
+ * depending on previous samples are applied in a final ordered pass.
+ *
+ * If a demand is set, only the demanded key figures and their dependencies
+ * are converted; all others are deferred to a ULogColumnSource and decoded
+ * chunk by chunk on first access.
+ */
+
 public class UlogtoModelConverter {
 
+	private static final int BATCH_SIZE = AnalysisDataModelList.CHUNK_SIZE;
+
 	private ULogReader reader;
-	private List<AnalysisDataModel> list;
+	private AnalysisDataModelList list;
 
 	private AnalysisDataModelMetaData meta = AnalysisDataModelMetaData.getInstance();
 	private StateProperties state;
-	
+
 	private LogMessage msg_old;
 
+	private final ForkJoinPool pool = ForkJoinPool.commonPool();
+	private final ArrayDeque<ForkJoinTask<AnalysisDataModelList>> pending = new ArrayDeque<ForkJoinTask<AnalysisDataModelList>>();
+	private final ConcurrentLinkedQueue<Batch> free = new ConcurrentLinkedQueue<Batch>();
+
+	private ULogExtractionPlan plan;
+
+	private Collection<KeyFigureMetaData> demand = null;
+	private ULogColumnSource source = null;
 
-	public UlogtoModelConverter(ULogReader reader, List<AnalysisDataModel> list) {
+
+	public UlogtoModelConverter(ULogReader reader, AnalysisDataModelList list) {
 		this.reader = reader;
 		this.list = list;
 		this.state = StateProperties.getInstance();
 	}
 
 
+	/*
+	 * Key figures to convert during the import, null converts all. With
+	 * deferred key figures the reader is owned by the list afterwards.
+	 */
+	public void setDemand(Collection<KeyFigureMetaData> demand) {
+		this.demand = demand;
+	}
+
 	public void doConversion() throws FormatErrorException {
 
 		long tms_slot = 0; long tms = 0;  boolean errorFlag = false;
 
-		Map<String,Object> data = new HashMap<String,Object>();
+		plan = new ULogExtractionPlan(select(), reader);
+		double[] data = plan.createValues();
+		Batch batch = null;
 
 		list.clear();
-		
-		int interval_us = AnalysisModelService.getInstance().setCollectorInterval(AnalysisModelService.HISPEED_INTERVAL_US);
+
+		/* Service and state are not available when converting headless, e.g. in benchmarks */
+		final AnalysisModelService service = AnalysisModelService.getInstance();
+		final int interval_us = service != null ? service.setCollectorInterval(AnalysisModelService.HISPEED_INTERVAL_US)
+				: AnalysisModelService.HISPEED_INTERVAL_US;
 		int interval_us2 = interval_us/2;
-		
+
 		try {
 
 			while(tms_slot < reader.getSizeMicroseconds()) {
 				//reader.seek(tms_slot+reader.getStartMicroseconds());
 				tms = reader.readUpdate(data) - reader.getStartMicroseconds();
+				if(source != null)
+					source.read();
 				if(tms > (tms_slot-interval_us2)) {
-					state.getProgressProperty().set(tms*1.0f/reader.getSizeMicroseconds());
-					AnalysisDataModel model = new AnalysisDataModel();
-					model.tms = tms;
-					model.dt_sec = tms / 1e6f;
+					if(state != null)
+						state.getProgressProperty().set(tms*1.0f/reader.getSizeMicroseconds());
 					tms_slot += interval_us;
-					model.setValues(KeyFigureMetaData.ULG_SOURCE, data, meta);
-					model.calculateVirtualKeyFigures(meta);
-					list.add(model);
+					if(source != null)
+						source.sample();
+					if(batch == null)
+						batch = obtainBatch(data.length);
+					batch.add(tms, data);
+					if(batch.size == BATCH_SIZE) {
+						submit(batch);
+						batch = null;
+					}
 				}
 			}
 
+			finish(batch);
+
 			reader.loggedMessages.forEach(s -> {
 				LogMessage msg = new LogMessage(s.message,s.logLevel & 0x00FF - 56);
 				msg.tms = s.timestamp - reader.getStartMicroseconds();
 				int i = (int)((s.timestamp - reader.getStartMicroseconds())/interval_us);
-				if(i > 0 && (msg_old == null || ( !msg.text.equals(msg_old.text) && (msg.tms - msg_old.tms) > 5 ))) {
-					AnalysisDataModel model = list.get(i);
-					model.msg = msg;
+				if(i > 0 && i < list.size() && (msg_old == null || ( !msg.text.equals(msg_old.text) && (msg.tms - msg_old.tms) > 5 ))) {
+					list.setMessage(i, msg);
 					msg_old = msg;
 				}
 			});
 
-			state.getLogULOGProperty().set(true);
-			state.getProgressProperty().set(StateProperties.NO_PROGRESS);
+			if(state != null) {
+				state.getLogULOGProperty().set(true);
+				state.getProgressProperty().set(StateProperties.NO_PROGRESS);
+			}
 			LogTools.info(list.size()+" entries read. Timespan is "+tms_slot/1e6f+" sec");
 
 		} catch(IOException e) {
+			finish(batch);
 			if(errorFlag)
 				LogTools.info("WARNING: Some of the key-figures were not available.");
 			LogTools.info(list.size()+" entries read. Timespan is "+tms_slot/1e6f+" sec");
 		}
-		
+
 	}
 
+	private void submit(Batch batch) {
+		pending.add(pool.submit(() -> convert(batch)));
+		// bound the number of batches in flight
+		while(pending.size() > 2 * pool.getParallelism())
+			list.append(pending.poll().join());
+	}
+
+	private void finish(Batch batch) {
+		if(batch != null && batch.size > 0)
+			submit(batch);
+		while(!pending.isEmpty())
+			list.append(pending.poll().join());
+
+		// ordered pass for converters depending on previous samples
+		if(plan.hasOrdered()) {
+			for(int row = 0; row < list.size(); row++)
+				plan.executeOrdered(list, row);
+		}
+
+		if(source != null) {
+			source.attach(AnalysisModelService.getMaxResidentChunks());
+			LogTools.info(source.getDeferredCount()+" key figures deferred until accessed");
+		}
+
+		// virtual key figures column-wise on the complete list
+		meta.getVirtualKeyFigureGraph().evaluate(list, (kf) -> !isDeferred(kf));
+	}
 
+	/*
+	 * Key figures converted during the import. Without a demand these are
+	 * all, otherwise the demanded ones with all their dependencies; computed
+	 * and ordered ULog sources are always converted.
+	 */
+	private Collection<KeyFigureMetaData> select() {
+		source = null;
+		if(demand == null)
+			return meta.getKeyFigureMap().values();
+
+		final Set<KeyFigureMetaData> eager = new HashSet<KeyFigureMetaData>();
+		final ArrayDeque<KeyFigureMetaData> open = new ArrayDeque<KeyFigureMetaData>(demand);
+		while(!open.isEmpty()) {
+			final KeyFigureMetaData kf = open.poll();
+			if(!eager.add(kf) || !kf.isVirtual || !kf.hasSource(KeyFigureMetaData.VIR_SOURCE))
+				continue;
+			final SourceConverter conv = kf.sources.get(KeyFigureMetaData.VIR_SOURCE).converter;
+			if(conv == null)
+				continue;
+			for(String key : conv.getDependencies()) {
+				final KeyFigureMetaData d = meta.getMetaData(key);
+				if(d != null)
+					open.add(d);
+			}
+		}
+
+		final ULogColumnSource deferred = new ULogColumnSource(reader, list);
+		final List<KeyFigureMetaData> selected = new ArrayList<KeyFigureMetaData>();
+		meta.getKeyFigureMap().values().forEach((kf) -> {
+			if(eager.contains(kf))
+				selected.add(kf);
+			else if(kf.isVirtual)
+				deferred.defer(kf);
+			else if(kf.hasSource(KeyFigureMetaData.ULG_SOURCE)) {
+				final KeyFigureMetaData.DataSource s = kf.sources.get(KeyFigureMetaData.ULG_SOURCE);
+				if(s.field != null && (s.converter == null || !s.converter.isOrdered()) && reader.getFields().containsKey(s.field))
+					deferred.defer(kf);
+				else
+					selected.add(kf);
+			}
+		});
+
+		if(deferred.getDeferredCount() > 0)
+			source = deferred;
+		return selected;
+	}
+
+	private boolean isDeferred(KeyFigureMetaData kf) {
+		return source != null && source.isDeferred(kf);
+	}
+
+	private AnalysisDataModelList convert(Batch batch) {
+		final AnalysisDataModelList segment = new AnalysisDataModelList();
+		final AnalysisDataModel model = new AnalysisDataModel();
+		for(int i = 0; i < batch.size; i++) {
+			model.tms    = batch.tms[i];
+			model.dt_sec = model.tms / 1e6f;
+			plan.executeUnordered(batch.values[i], model);
+			segment.add(model);
+		}
+		batch.size = 0;
+		free.add(batch);
+		return segment;
+	}
+
+	private Batch obtainBatch(int width) {
+		final Batch batch = free.poll();
+		return batch != null ? batch : new Batch(width);
+	}
+
+	private static class Batch {
+
+		final long[]     tms    = new long[BATCH_SIZE];
+		final double[][] values;
+		int size = 0;
+
+		Batch(int width) {
+			values = new double[BATCH_SIZE][width];
+		}
+
+		void add(long t, double[] data) {
+			tms[size] = t;
+			System.arraycopy(data, 0, values[size], 0, data.length);
+			size++;
+		}
+	}
 
 }
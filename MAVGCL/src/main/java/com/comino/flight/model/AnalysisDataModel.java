@@ -34,9 +34,10 @@
 package com.comino.flight.model;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.function.BiConsumer;
 
 import com.comino.mavcom.model.DataModel;
 import com.comino.mavcom.model.segment.LogMessage;
@@ -51,24 +52,52 @@ public class AnalysisDataModel implements Cloneable {
 	public float          dt_sec = 0;
 	public float        sync_fps = 0;
 
-	private volatile Map<Integer,Double> data = null;
+	// Values by key figure slot, NaN if not set
+	private double[] values  = null;
+	private long[]   present = null;
 	private static List<Long> grid = new ArrayList<Long>();
 
+	private transient AnalysisDataModelList list = null;
+	private transient int                   row  = 0;
+
 	public AnalysisDataModel() {
-		this.data = new HashMap<Integer,Double>();
+		allocate(AnalysisDataModelMetaData.getSlotCount());
 		//		this.grid = new ArrayList<Long>();
 	}
 
-	private AnalysisDataModel(Map<Integer,Double> d, List<Long> grid) {
-		this.data = new HashMap<Integer,Double>();
-		this.data.putAll(d);
-		//		this.grid = new ArrayList<Long>();
-		//		this.grid.addAll(grid);
+	private AnalysisDataModel(AnalysisDataModel d) {
+		this.values  = d.values.clone();
+		this.present = d.present.clone();
+	}
+
+	AnalysisDataModel(AnalysisDataModelList list, int row) {
+		this.list     = list;
+		this.row      = row;
+		this.tms      = list.getTime(row);
+		this.dt_sec   = tms / 1e6f;
+		this.sync_fps = list.getSyncFPS(row);
+		this.msg      = list.getMessage(row);
+	}
+
+	/*
+	 * Moves a view to another row of its list
+	 */
+	void bind(int row) {
+		this.row      = row;
+		this.tms      = list.getTime(row);
+		this.dt_sec   = tms / 1e6f;
+		this.sync_fps = list.getSyncFPS(row);
+		this.msg      = list.getMessage(row);
 	}
 
 
 	public Object clone() {
-		AnalysisDataModel d = new AnalysisDataModel(data, grid);
+		AnalysisDataModel d = null;
+		if(list!=null) {
+			d = new AnalysisDataModel();
+			list.copyRow(row, d);
+		} else
+			d = new AnalysisDataModel(this);
 		d.tms       = tms;
 		d.sync_fps  = sync_fps;
 		if(msg!=null)
@@ -79,8 +108,14 @@ public class AnalysisDataModel implements Cloneable {
 	}
 
 	public void set(AnalysisDataModel model) {
-		this.data.clear();
-		this.data.putAll(model.data);
+		if(model.list!=null)
+			model.list.copyRow(model.row, this);
+		else {
+			if(values.length != model.values.length)
+				allocate(model.values.length);
+			System.arraycopy(model.values, 0, values, 0, values.length);
+			System.arraycopy(model.present, 0, present, 0, present.length);
+		}
 
 		this.dt_sec   = model.dt_sec;
 		this.tms      = model.tms;
@@ -88,7 +123,9 @@ public class AnalysisDataModel implements Cloneable {
 	}
 
 	public void clear()  {
-		data.clear();
+		if(list!=null)
+			return;
+		resetValues();
 		grid.clear();
 		tms = 0;
 		sync_fps = 0;
@@ -96,69 +133,123 @@ public class AnalysisDataModel implements Cloneable {
 		status = null;
 	}
 
+	void resetValues() {
+		Arrays.fill(values, Double.NaN);
+		Arrays.fill(present, 0);
+	}
+
 	public List<Long> getGrid() {
 		return grid;
 	}
 
+	public boolean isView() {
+		return list!=null;
+	}
+
+	public AnalysisDataModelList getList() {
+		return list;
+	}
+
+	public int getRow() {
+		return row;
+	}
+
+	public void forEachValue(BiConsumer<Integer,Double> action) {
+		if(list!=null) {
+			list.forEachValue(row, action);
+			return;
+		}
+		for(int slot = 0; slot < values.length; slot++) {
+			if(isPresent(slot))
+				action.accept(AnalysisDataModelMetaData.getSlotHash(slot), values[slot]);
+		}
+	}
+
+	public double getValue(int slot) {
+		if(list!=null)
+			return list.getValue(row, slot);
+		if(slot < 0 || slot >= values.length)
+			return Double.NaN;
+		return values[slot];
+	}
+
+	public double getValue(int slot, double defaultValue) {
+		if(list!=null)
+			return list.getValue(row, slot, defaultValue);
+		if(!isPresent(slot))
+			return defaultValue;
+		return values[slot];
+	}
+
 	public double getValue(String kf) {
-		int hash = kf.toLowerCase().hashCode();
-		if(data!=null && data.containsKey(hash) && data.get(hash)!=null)
-			return data.get(hash);
-		else
-			return 0;
+		return getValue(AnalysisDataModelMetaData.findSlot(kf), 0);
 	}
 
 	public double getValue(KeyFigureMetaData m) {
-		if(data != null && m!=null && data.containsKey(m.hash) && data.get(m.hash)!=null)
-			return data.get(m.hash);
-		else
-			return Double.NaN;
+		return getValue(AnalysisDataModelMetaData.getSlot(m));
 	}
 
 	public boolean isValid(String kf) {
-		int hash = kf.toLowerCase().hashCode();
-		if(data!=null && data.containsKey(hash) && data.get(hash)!=null)
-			return Double.isFinite(data.get(hash));
-		else
+		final int slot = AnalysisDataModelMetaData.findSlot(kf);
+		if(list==null && !isPresent(slot))
 			return false;
+		return Double.isFinite(getValue(slot));
 	}
 
 	public boolean isValid(KeyFigureMetaData m) {
-		if(data != null && m!=null && data.containsKey(m.hash) && data.get(m.hash)!=null) 
-			return Double.isFinite(data.get(m.hash));
-		else
-			return false;
+		return Double.isFinite(getValue(m));
 	}
 
 	public void setValue(String kf,double value) {
-		if(data!=null)
-			data.put(kf.toLowerCase().hashCode(), value);
+		setValue(AnalysisDataModelMetaData.findSlot(kf), value);
+	}
+
+	public void setValue(int slot, double value) {
+		if(slot < 0)
+			return;
+		if(list!=null) {
+			list.setValue(row, slot, value);
+			return;
+		}
+		if(slot >= values.length)
+			allocate(AnalysisDataModelMetaData.getSlotCount());
+		values[slot] = value;
+		present[slot >> 6] |= 1L << slot;
+	}
+
+	public boolean isPresent(int slot) {
+		if(slot < 0 || slot >= values.length)
+			return false;
+		return (present[slot >> 6] & (1L << slot)) != 0;
 	}
 
 	public void reset(AnalysisDataModelMetaData md) {
-		if(data==null)
+		if(list!=null)
 			return;
 		md.getKeyFigureMap().forEach((i,e) -> {
-			data.put(e.hash,Double.valueOf(0));
+			setValue(e.slot,0);
 		});
 	}
 
+	@SuppressWarnings("unchecked")
 	public  void  setValues(int type, Object source, AnalysisDataModelMetaData md ) {
 
+		if(type == KeyFigureMetaData.MSP_SOURCE) {
+			md.getMSPExtractionPlan().execute((DataModel)source, this);
+			return;
+		}
+
 		md.getKeyFigureMap().forEach((i,e) -> {
-			Double val = Double.NaN;
+			double val = Double.NaN;
 			try {
 				if(!e.isVirtual) {
 					if(!e.hasSource(type))
 						return;
 
-					if( type == KeyFigureMetaData.MSP_SOURCE)
-						val = e.getValueFromMSPModel((DataModel)source);
 					if( type == KeyFigureMetaData.ULG_SOURCE)
 						val = e.getValueFromULogModel((Map<String,Object>)source);
 
-					if(val!=null)
-						data.put(e.hash,val);
+					setValue(e.slot,val);
 				}
 			} catch (Exception e1) {
 				e1.printStackTrace();
@@ -169,15 +260,29 @@ public class AnalysisDataModel implements Cloneable {
 	}
 
 	public void calculateVirtualKeyFigures(AnalysisDataModelMetaData md) {
-		md.getVirtualKeyFigureMap().forEach((i,e) -> {
-			try {
-				if(e.isVirtual) {
-					data.put(e.hash,e.calculateVirtualValue(this));
-				}
-			} catch (Exception e1) {
-				data.put(e.hash, Double.NaN);
-			}
-		});
+		md.getVirtualKeyFigureGraph().evaluate(this);
+	}
+
+	/*
+	 * Evaluates either only the virtual key figures depending on previous
+	 * samples (ordered) or all others.
+	 */
+	public void calculateVirtualKeyFigures(AnalysisDataModelMetaData md, boolean ordered) {
+		md.getVirtualKeyFigureGraph().evaluate(this, ordered);
+	}
+
+	private void allocate(int slots) {
+		final int length = Math.max(slots, 64);
+		if(values == null) {
+			values  = new double[length];
+			present = new long[(length + 63) >> 6];
+			Arrays.fill(values, Double.NaN);
+		} else {
+			final int old = values.length;
+			values  = Arrays.copyOf(values, length);
+			present = Arrays.copyOf(present, (length + 63) >> 6);
+			Arrays.fill(values, old, length, Double.NaN);
+		}
 	}
 
 
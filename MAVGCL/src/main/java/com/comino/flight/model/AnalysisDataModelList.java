@@ -0,0 +1,553 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017,2018 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+package com.comino.flight.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.RandomAccess;
+import java.util.function.BiConsumer;
+
+import com.comino.mavcom.model.segment.LogMessage;
+
+import us.ihmc.log.LogTools;
+
+/*
+ * Columnar storage of recorded samples. Each key figure is held in its own
+ * primitive column, split into chunks of CHUNK_SIZE rows which are allocated
+ * on first write. Elements returned by get() are lightweight row views.
+ *
+ * Column chunks of a list backed by a ChunkSource are loaded on first access
+ * and evicted again when more than max_chunks are resident. Plain reads do not
+ * reorder resident chunks, so the least recently loaded or prefetched chunk is
+ * evicted first. Chunks which fail to load read as NaN.
+ */
+
+public class AnalysisDataModelList extends AbstractList<AnalysisDataModel> implements RandomAccess {
+
+	public static final int CHUNK_BITS = 12;
+	public static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	public static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	/* Length of accumulators passed to summarize() */
+	public static final int SUMMARY_SIZE = ChunkSummary.SIZE;
+
+	private static final int INITIAL_CHUNKS  = 16;
+
+	/* Marks a column chunk which is available from the chunk source but not loaded */
+	private static final double[] PAGED = new double[0];
+
+	public interface ChunkSource extends Closeable {
+		double[] loadChunk(int slot, int chunk) throws IOException;
+	}
+
+	private long[][]        tms      = null;
+	private float[][]       fps      = null;
+	private LogMessage[][]  msg      = null;
+	private double[][][]    columns  = null;
+	private ChunkSummary[][] summaries = null;
+
+	private volatile int size = 0;
+
+	private ChunkSource                chunk_source = null;
+	private LinkedHashMap<Long,Object> resident     = null;
+	private int                        max_chunks   = 0;
+	private boolean                    load_failed  = false;
+
+	public AnalysisDataModelList() {
+		init();
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public AnalysisDataModel get(int row) {
+		if(row < 0 || row >= size)
+			throw new IndexOutOfBoundsException("Index: "+row+", Size: "+size);
+		return new AnalysisDataModel(this,row);
+	}
+
+	@Override
+	public boolean add(AnalysisDataModel m) {
+		return add(m, m.tms);
+	}
+
+	public synchronized boolean add(AnalysisDataModel m, long tms_us) {
+
+		final int row = size;
+		final int c   = row >> CHUNK_BITS;
+		final int o   = row & CHUNK_MASK;
+
+		ensureChunk(c);
+
+		tms[c][o] = tms_us;
+		fps[c][o] = m.sync_fps;
+		if(m.msg!=null)
+			setMessage(row,m.msg.clone());
+
+		if(m.isView()) {
+			final AnalysisDataModelList source = m.getList(); final int source_row = m.getRow();
+			for(int slot = 0; slot < source.columns.length; slot++) {
+				if(source.hasValue(source_row, slot))
+					write(slot, row, source.getValue(source_row, slot));
+			}
+		} else {
+			final int count = AnalysisDataModelMetaData.getSlotCount();
+			for(int slot = 0; slot < count; slot++) {
+				if(m.isPresent(slot))
+					write(slot, row, m.getValue(slot));
+			}
+		}
+
+		size = row + 1;
+		modCount++;
+		return true;
+	}
+
+	/*
+	 * Appends all rows of segment in order. If this list ends on a chunk
+	 * boundary, the chunks of segment are taken over without copying; the
+	 * segment must not be used afterwards.
+	 */
+	public synchronized void append(AnalysisDataModelList segment) {
+		final int rows = segment.size();
+		if(rows == 0)
+			return;
+
+		if(segment.chunk_source != null && size == 0) {
+			init();
+			tms = segment.tms; fps = segment.fps; msg = segment.msg; columns = segment.columns;
+			setChunkSource(segment.chunk_source, segment.max_chunks);
+			resident.putAll(segment.resident);
+			segment.chunk_source = null;
+			size = rows;
+			modCount++;
+			return;
+		}
+
+		if((size & CHUNK_MASK) != 0 || segment.chunk_source != null) {
+			for(int i = 0; i < rows; i++)
+				add(segment.get(i), segment.getTime(i));
+			return;
+		}
+
+		final int first  = size >> CHUNK_BITS;
+		final int chunks = ((rows - 1) >> CHUNK_BITS) + 1;
+		ensureChunk(first + chunks - 1);
+		for(int k = 0; k < chunks; k++) {
+			final int c = first + k;
+			tms[c] = segment.tms[k];
+			fps[c] = segment.fps[k];
+			msg[c] = segment.msg[k];
+			for(int slot = 0; slot < segment.columns.length; slot++) {
+				if(segment.columns[slot] == null || segment.columns[slot][k] == null)
+					continue;
+				if(slot >= columns.length)
+					columns = Arrays.copyOf(columns, Math.max(AnalysisDataModelMetaData.getSlotCount(), slot + 1));
+				if(columns[slot] == null)
+					columns[slot] = new double[tms.length][];
+				columns[slot][c] = segment.columns[slot][k];
+			}
+		}
+		size = size + rows;
+		modCount++;
+	}
+
+	@Override
+	public synchronized void clear() {
+		closeSource();
+		init();
+		modCount++;
+	}
+
+	/*
+	 * Backs the list by a chunk source. Chunks marked by setPagedChunk() are
+	 * loaded on access, at most max_chunks of them are kept in memory.
+	 */
+	public synchronized void setChunkSource(ChunkSource source, int max_chunks) {
+		closeSource();
+		this.chunk_source = source;
+		this.max_chunks = Math.max(max_chunks, 1);
+		this.resident   = new LinkedHashMap<Long,Object>(256, 0.75f, true);
+		this.load_failed = false;
+	}
+
+	public boolean isPaged() {
+		return chunk_source != null;
+	}
+
+	public int getMaxChunks() {
+		return max_chunks;
+	}
+
+	/*
+	 * Declares a column chunk to be available from the chunk source.
+	 */
+	public synchronized void setPagedChunk(int slot, int chunk) {
+		ensureChunk(chunk);
+		if(slot >= columns.length)
+			columns = Arrays.copyOf(columns, Math.max(AnalysisDataModelMetaData.getSlotCount(), slot + 1));
+		if(columns[slot] == null)
+			columns[slot] = new double[tms.length][];
+		columns[slot][chunk] = PAGED;
+	}
+
+	/*
+	 * Loads the chunks of the given columns covering rows x0..x1 and marks
+	 * them as recently used, so that they are not evicted first.
+	 */
+	public synchronized void prefetch(int x0, int x1, int... slots) {
+		if(chunk_source == null || size == 0)
+			return;
+		final int c0 = Math.max(x0, 0) >> CHUNK_BITS;
+		final int c1 = Math.min(x1, size - 1) >> CHUNK_BITS;
+		for(int slot : slots) {
+			if(!hasColumn(slot))
+				continue;
+			for(int c = c0; c <= c1; c++) {
+				final double[] chunk = columns[slot][c];
+				if(chunk == PAGED)
+					page(slot, c);
+				else if(chunk != null)
+					resident.get(key(slot, c));
+			}
+		}
+	}
+
+	/*
+	 * Accumulates min, max, sum, sum of squares and count of the non NaN values of rows
+	 * from..to (exclusive) into acc, using the summary pyramid of the column
+	 * chunks. Returns false if the column does not exist.
+	 *
+	 * The pyramid is built lazily here, up to the rows present at the time of
+	 * the query. write() and setChunk() only reset its coverage, so appending
+	 * rows costs nothing until the next range query.
+	 */
+	public boolean summarize(int slot, int from, int to, double[] acc) {
+		ChunkSummary.reset(acc);
+		if(!hasColumn(slot))
+			return false;
+		final int rows = size;
+		from = Math.max(from, 0); to = Math.min(to, rows);
+		while(from < to) {
+			final int c = from >> CHUNK_BITS;
+			final int end = Math.min(to, (c + 1) << CHUNK_BITS);
+			final double[] values = getChunk(slot, c);
+			if(values != null)
+				getSummary(slot, c).summarize(values, Math.min(CHUNK_SIZE, rows - (c << CHUNK_BITS)),
+						from & CHUNK_MASK, ((end - 1) & CHUNK_MASK) + 1, acc);
+			from = end;
+		}
+		return true;
+	}
+
+	public static double getMin(double[] acc) {
+		return acc[ChunkSummary.COUNT] > 0 ? acc[ChunkSummary.MIN] : Double.NaN;
+	}
+
+	public static double getMax(double[] acc) {
+		return acc[ChunkSummary.COUNT] > 0 ? acc[ChunkSummary.MAX] : Double.NaN;
+	}
+
+	public static double getAverage(double[] acc) {
+		return acc[ChunkSummary.COUNT] > 0 ? acc[ChunkSummary.SUM] / acc[ChunkSummary.COUNT] : Double.NaN;
+	}
+
+	public static int getCount(double[] acc) {
+		return (int)acc[ChunkSummary.COUNT];
+	}
+
+	public static double getSum(double[] acc) {
+		return acc[ChunkSummary.SUM];
+	}
+
+	public static double getSumOfSquares(double[] acc) {
+		return acc[ChunkSummary.SUMSQ];
+	}
+
+	/* Value with the largest magnitude */
+	public static double getPeak(double[] acc) {
+		if(acc[ChunkSummary.COUNT] == 0)
+			return Double.NaN;
+		return acc[ChunkSummary.MAX] >= -acc[ChunkSummary.MIN] ? acc[ChunkSummary.MAX] : acc[ChunkSummary.MIN];
+	}
+
+	public int getResidentChunks() {
+		return resident == null ? 0 : resident.size();
+	}
+
+	@Override
+	public int indexOf(Object o) {
+		if(o instanceof AnalysisDataModel && ((AnalysisDataModel)o).getList() == this)
+			return ((AnalysisDataModel)o).getRow();
+		return -1;
+	}
+
+	@Override
+	public int lastIndexOf(Object o) {
+		return indexOf(o);
+	}
+
+	public long getTime(int row) {
+		return tms[row >> CHUNK_BITS][row & CHUNK_MASK];
+	}
+
+	public float getSyncFPS(int row) {
+		return fps[row >> CHUNK_BITS][row & CHUNK_MASK];
+	}
+
+	public LogMessage getMessage(int row) {
+		final LogMessage[] chunk = msg[row >> CHUNK_BITS];
+		return chunk == null ? null : chunk[row & CHUNK_MASK];
+	}
+
+	public synchronized void setMessage(int row, LogMessage m) {
+		final int c = row >> CHUNK_BITS;
+		if(msg[c]==null) {
+			if(m==null)
+				return;
+			msg[c] = new LogMessage[CHUNK_SIZE];
+		}
+		msg[c][row & CHUNK_MASK] = m;
+	}
+
+	public double getValue(int row, KeyFigureMetaData m) {
+		return getValue(row, AnalysisDataModelMetaData.getSlot(m));
+	}
+
+	public double getValue(int row, int slot) {
+		final double[][][] cols = columns;
+		if(slot < 0 || slot >= cols.length || cols[slot] == null)
+			return Double.NaN;
+		double[] chunk = cols[slot][row >> CHUNK_BITS];
+		if(chunk == PAGED)
+			chunk = page(slot, row >> CHUNK_BITS);
+		return chunk == null ? Double.NaN : chunk[row & CHUNK_MASK];
+	}
+
+	public double getValue(int row, int slot, double defaultValue) {
+		if(!hasColumn(slot))
+			return defaultValue;
+		return getValue(row, slot);
+	}
+
+	public boolean hasColumn(int slot) {
+		final double[][][] cols = columns;
+		return slot >= 0 && slot < cols.length && cols[slot] != null;
+	}
+
+	public boolean hasColumn(KeyFigureMetaData m) {
+		return hasColumn(AnalysisDataModelMetaData.getSlot(m));
+	}
+
+	public synchronized void setValue(int row, int slot, double value) {
+		write(slot, row, value);
+	}
+
+	/*
+	 * Direct access to a column chunk for bulk readers and writers. The
+	 * returned array must not be modified, null if not allocated.
+	 */
+	public double[] getChunk(int slot, int chunk) {
+		final double[][][] cols = columns;
+		if(slot < 0 || slot >= cols.length || cols[slot] == null || chunk >= cols[slot].length)
+			return null;
+		final double[] values = cols[slot][chunk];
+		return values == PAGED ? page(slot, chunk) : values;
+	}
+
+	/*
+	 * Sets a complete column chunk of CHUNK_SIZE values, taken over without copying.
+	 */
+	public synchronized void setChunk(int slot, int chunk, double[] values) {
+		if(values.length != CHUNK_SIZE)
+			throw new IllegalArgumentException("Chunk length "+values.length);
+		ensureChunk(chunk);
+		if(slot >= columns.length)
+			columns = Arrays.copyOf(columns, Math.max(AnalysisDataModelMetaData.getSlotCount(), slot + 1));
+		if(columns[slot] == null)
+			columns[slot] = new double[tms.length][];
+		columns[slot][chunk] = values;
+		if(slot < summaries.length && summaries[slot] != null && chunk < summaries[slot].length
+				&& summaries[slot][chunk] != null)
+			summaries[slot][chunk].invalidate(0);
+		if(resident != null)
+			resident.remove(key(slot, chunk));
+	}
+
+	/*
+	 * Appends count rows with the given timestamps; values are set by setChunk().
+	 */
+	public synchronized void addRows(long[] tms_us, float[] sync_fps, int count) {
+		for(int i = 0; i < count; i++) {
+			final int row = size + i;
+			final int c   = row >> CHUNK_BITS;
+			ensureChunk(c);
+			tms[c][row & CHUNK_MASK] = tms_us[i];
+			fps[c][row & CHUNK_MASK] = sync_fps[i];
+		}
+		size = size + count;
+		modCount++;
+	}
+
+	public void forEachValue(int row, BiConsumer<Integer,Double> action) {
+		final double[][][] cols = columns;
+		for(int slot = 0; slot < cols.length; slot++) {
+			if(hasValue(row, slot))
+				action.accept(AnalysisDataModelMetaData.getSlotHash(slot), getValue(row, slot));
+		}
+	}
+
+	public void copyRow(int row, AnalysisDataModel target) {
+		target.resetValues();
+		final double[][][] cols = columns;
+		for(int slot = 0; slot < cols.length; slot++) {
+			if(hasValue(row, slot))
+				target.setValue(slot, getValue(row, slot));
+		}
+		target.tms      = getTime(row);
+		target.dt_sec   = target.tms / 1e6f;
+		target.sync_fps = getSyncFPS(row);
+	}
+
+	private boolean hasValue(int row, int slot) {
+		final double[][][] cols = columns;
+		return slot < cols.length && cols[slot] != null && cols[slot][row >> CHUNK_BITS] != null;
+	}
+
+	private void write(int slot, int row, double value) {
+		if(slot >= columns.length)
+			columns = Arrays.copyOf(columns, Math.max(AnalysisDataModelMetaData.getSlotCount(), slot + 1));
+		if(columns[slot] == null)
+			columns[slot] = new double[tms.length][];
+		final double[][] column = columns[slot];
+		final int c = row >> CHUNK_BITS;
+		if(column[c]==PAGED) {
+			/* Modified chunks are kept in memory */
+			page(slot, c);
+			resident.remove(key(slot, c));
+		}
+		if(column[c]==null) {
+			column[c] = new double[CHUNK_SIZE];
+			Arrays.fill(column[c], Double.NaN);
+		}
+		column[c][row & CHUNK_MASK] = value;
+		if(slot < summaries.length && summaries[slot] != null && summaries[slot][c] != null)
+			summaries[slot][c].invalidate(row & CHUNK_MASK);
+	}
+
+	private synchronized ChunkSummary getSummary(int slot, int c) {
+		if(slot >= summaries.length)
+			summaries = Arrays.copyOf(summaries, Math.max(AnalysisDataModelMetaData.getSlotCount(), slot + 1));
+		if(summaries[slot] == null || c >= summaries[slot].length)
+			summaries[slot] = summaries[slot] == null ? new ChunkSummary[tms.length] : Arrays.copyOf(summaries[slot], tms.length);
+		if(summaries[slot][c] == null)
+			summaries[slot][c] = new ChunkSummary();
+		return summaries[slot][c];
+	}
+
+	private synchronized double[] page(int slot, int c) {
+		double[] chunk = columns[slot][c];
+		if(chunk != PAGED)
+			return chunk;
+		try {
+			chunk = chunk_source.loadChunk(slot, c);
+		} catch(IOException e) {
+			/* the chunk is dropped and reads as NaN, reported once per source */
+			if(!load_failed)
+				LogTools.error("Loading chunk "+c+" of "+AnalysisDataModelMetaData.getSlotKey(slot)+" failed: "+e.getMessage());
+			load_failed = true;
+			columns[slot][c] = null;
+			return null;
+		}
+		columns[slot][c] = chunk;
+		if(chunk == null)
+			return null;
+		resident.put(key(slot, c), Boolean.TRUE);
+		if(resident.size() > max_chunks) {
+			final Iterator<Long> i = resident.keySet().iterator();
+			while(resident.size() > max_chunks) {
+				final long k = i.next();
+				columns[(int)(k >>> 32)][(int)k] = PAGED;
+				i.remove();
+			}
+		}
+		return chunk;
+	}
+
+	private static long key(int slot, int c) {
+		return ((long)slot << 32) | c;
+	}
+
+	private void closeSource() {
+		if(chunk_source == null)
+			return;
+		try {
+			chunk_source.close();
+		} catch(IOException e) { }
+		chunk_source = null;
+		resident = null;
+	}
+
+	private void ensureChunk(int c) {
+		if(c >= tms.length) {
+			final int chunks = Math.max(tms.length * 2, c + 1);
+			for(int slot = 0; slot < columns.length; slot++)
+				if(columns[slot]!=null)
+					columns[slot] = Arrays.copyOf(columns[slot], chunks);
+			msg = Arrays.copyOf(msg, chunks);
+			fps = Arrays.copyOf(fps, chunks);
+			tms = Arrays.copyOf(tms, chunks);
+		}
+		if(tms[c]==null) {
+			fps[c] = new float[CHUNK_SIZE];
+			tms[c] = new long[CHUNK_SIZE];
+		}
+	}
+
+	private void init() {
+		size    = 0;
+		tms     = new long[INITIAL_CHUNKS][];
+		fps     = new float[INITIAL_CHUNKS][];
+		msg     = new LogMessage[INITIAL_CHUNKS][];
+		columns = new double[AnalysisDataModelMetaData.getSlotCount()][][];
+		summaries = new ChunkSummary[0][];
+	}
+}
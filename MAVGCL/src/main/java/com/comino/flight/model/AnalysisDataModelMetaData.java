@@ -35,12 +35,14 @@ package com.comino.flight.model;
 
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -56,10 +58,19 @@ public class AnalysisDataModelMetaData extends Observable {
 
 	private static AnalysisDataModelMetaData instance = null;
 
+	// Dense slots by lower case key. Slots are only allocated while the definitions
+	// are loaded and are never released, so a key keeps its slot across reloads.
+	private static final Map<String,Integer> slots = new ConcurrentHashMap<String,Integer>(1000);
+	private static volatile int[] slot_hashes = new int[1000];
+	private static volatile String[] slot_keys = new String[1000];
+	private static volatile int   slot_count  = 0;
+
 	private Map<Integer,KeyFigureMetaData>               meta   = null;
 	private Map<Integer,KeyFigureMetaData>               virt   = null;
 	private Map<String,List<KeyFigureMetaData>> groups   = null;
 	private List<KeyFigureMetaData>            sortedMetaList   = null;
+	private volatile MSPExtractionPlan         mspPlan          = null;
+	private volatile VirtualKeyFigureGraph     virtualGraph     = null;
 
 	private int count = 0;
 	private String version = "0.0";
@@ -98,6 +109,8 @@ public class AnalysisDataModelMetaData extends Observable {
 			buildDocument(is);
 		}
 		sortedMetaList = buildSortedList();
+		mspPlan = new MSPExtractionPlan(sortedMetaList);
+		virtualGraph = new VirtualKeyFigureGraph(virt.values());
 		setChanged(); notifyObservers(null);
 
 	}
@@ -119,6 +132,53 @@ public class AnalysisDataModelMetaData extends Observable {
 		return description;
 	}
 
+	/*
+	 * Allocates the slot of a key figure. Only to be called while the definitions
+	 * are loaded, lookups use findSlot.
+	 */
+	public static synchronized int registerSlot(String key) {
+		final String k = key.toLowerCase();
+		Integer slot = slots.get(k);
+		if(slot == null) {
+			if(slot_count == slot_hashes.length) {
+				slot_hashes = Arrays.copyOf(slot_hashes, slot_count * 2);
+				slot_keys   = Arrays.copyOf(slot_keys, slot_count * 2);
+			}
+			slot_hashes[slot_count] = k.hashCode();
+			slot_keys[slot_count]   = k;
+			slot = slot_count++;
+			slots.put(k, slot);
+		}
+		return slot;
+	}
+
+	public static int findSlot(String key) {
+		if(key==null)
+			return -1;
+		final Integer slot = slots.get(key.toLowerCase());
+		return slot == null ? -1 : slot;
+	}
+
+	public static int getSlot(KeyFigureMetaData kf) {
+		if(kf==null)
+			return -1;
+		if(kf.slot < 0 && kf.key!=null)
+			kf.slot = findSlot(kf.key);
+		return kf.slot;
+	}
+
+	public static int getSlotCount() {
+		return slot_count;
+	}
+
+	public static int getSlotHash(int slot) {
+		return slot_hashes[slot];
+	}
+
+	public static String getSlotKey(int slot) {
+		return slot_keys[slot];
+	}
+
 	public Map<Integer,KeyFigureMetaData> getKeyFigureMap() {
 		return meta;
 	}
@@ -131,6 +191,14 @@ public class AnalysisDataModelMetaData extends Observable {
 		return groups;
 	}
 
+	public MSPExtractionPlan getMSPExtractionPlan() {
+		return mspPlan;
+	}
+
+	public VirtualKeyFigureGraph getVirtualKeyFigureGraph() {
+		return virtualGraph;
+	}
+
 
 	public void add(KeyFigureMetaData m) {
 		this.meta.put(m.hash, m);
@@ -55,6 +55,12 @@ public class AnalysisModelTest {
          for(int i=0;i<1000;i++)
 		     model.setValues(KeyFigureMetaData.MSP_SOURCE,m, md);
 
+         long tms = System.nanoTime();
+         for(int i=0;i<100000;i++)
+		     model.setValues(KeyFigureMetaData.MSP_SOURCE,m, md);
+         System.out.println("setValues(MSP): "+(System.nanoTime()-tms)/100000+"ns per sample for "
+        		 +md.getMSPExtractionPlan().size()+" key figures");
+
 
 		 AnalysisDataModel model2 = (AnalysisDataModel)model.clone();
 		 System.out.println(model2.getValue("ALTGL"));
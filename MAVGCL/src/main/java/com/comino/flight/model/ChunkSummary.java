@@ -0,0 +1,164 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017,2018 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+package com.comino.flight.model;
+
+/*
+ * Min/max/sum/sum of squares pyramid of one column chunk. Level 0 summarizes blocks of
+ * BASE_SIZE rows, each further level combines LEVEL_FACTOR blocks of the level
+ * below up to the complete chunk. Blocks are built incrementally up to the
+ * rows available; writes to covered rows reset the coverage to the block
+ * containing the row.
+ */
+
+final class ChunkSummary {
+
+	static final int BASE_BITS    = 4;
+	static final int BASE_SIZE    = 1 << BASE_BITS;
+	static final int LEVEL_BITS   = 2;
+	static final int LEVELS       = (AnalysisDataModelList.CHUNK_BITS - BASE_BITS) / LEVEL_BITS + 1;
+
+	/* Indices into accumulators used by summarize() */
+	static final int MIN   = 0;
+	static final int MAX   = 1;
+	static final int SUM   = 2;
+	static final int COUNT = 3;
+	static final int SUMSQ = 4;
+	static final int SIZE  = 5;
+
+	private final double[][] min = new double[LEVELS][];
+	private final double[][] max = new double[LEVELS][];
+	private final double[][] sum = new double[LEVELS][];
+	private final double[][] sq  = new double[LEVELS][];
+	private final int[][]    cnt = new int[LEVELS][];
+
+	private int covered = 0;
+
+	ChunkSummary() {
+		for(int l = 0; l < LEVELS; l++) {
+			final int n = AnalysisDataModelList.CHUNK_SIZE >> bits(l);
+			min[l] = new double[n]; max[l] = new double[n];
+			sum[l] = new double[n]; sq[l]  = new double[n]; cnt[l] = new int[n];
+		}
+	}
+
+	static void reset(double[] acc) {
+		acc[MIN] = Double.POSITIVE_INFINITY; acc[MAX] = Double.NEGATIVE_INFINITY;
+		acc[SUM] = 0; acc[COUNT] = 0; acc[SUMSQ] = 0;
+	}
+
+	synchronized void invalidate(int offset) {
+		if(offset < covered)
+			covered = offset & ~(BASE_SIZE - 1);
+	}
+
+	/*
+	 * Accumulates the values of rows from..to (exclusive) of the chunk into acc;
+	 * rows is the number of rows currently available in the chunk.
+	 */
+	synchronized void summarize(double[] values, int rows, int from, int to, double[] acc) {
+		update(values, rows);
+		int i = from;
+		while(i < to) {
+			if((i & (BASE_SIZE - 1)) != 0 || i + BASE_SIZE > Math.min(to, covered)) {
+				add(values[i++], acc);
+				continue;
+			}
+			int l = 0;
+			while(l + 1 < LEVELS && (i & ((1 << bits(l + 1)) - 1)) == 0 && i + (1 << bits(l + 1)) <= Math.min(to, covered))
+				l++;
+			final int b = i >> bits(l);
+			if(cnt[l][b] > 0) {
+				if(min[l][b] < acc[MIN]) acc[MIN] = min[l][b];
+				if(max[l][b] > acc[MAX]) acc[MAX] = max[l][b];
+				acc[SUM] += sum[l][b]; acc[SUMSQ] += sq[l][b]; acc[COUNT] += cnt[l][b];
+			}
+			i += 1 << bits(l);
+		}
+	}
+
+	private void update(double[] values, int rows) {
+		final int blocks = rows >> BASE_BITS;
+		int b0 = covered >> BASE_BITS;
+		if(b0 >= blocks)
+			return;
+
+		for(int b = b0; b < blocks; b++) {
+			double mi = Double.POSITIVE_INFINITY, ma = Double.NEGATIVE_INFINITY, s = 0, q = 0; int n = 0;
+			for(int i = b << BASE_BITS, e = i + BASE_SIZE; i < e; i++) {
+				final double v = values[i];
+				if(Double.isNaN(v))
+					continue;
+				if(v < mi) mi = v;
+				if(v > ma) ma = v;
+				s += v; q += v * v; n++;
+			}
+			min[0][b] = mi; max[0][b] = ma; sum[0][b] = s; sq[0][b] = q; cnt[0][b] = n;
+		}
+
+		/* Propagate changed blocks to the upper levels */
+		int b1 = blocks;
+		for(int l = 1; l < LEVELS; l++) {
+			b0 = b0 >> LEVEL_BITS; b1 = ((b1 - 1) >> LEVEL_BITS) + 1;
+			for(int b = b0; b < b1; b++) {
+				double mi = Double.POSITIVE_INFINITY, ma = Double.NEGATIVE_INFINITY, s = 0, q = 0; int n = 0;
+				for(int k = b << LEVEL_BITS, e = Math.min(k + (1 << LEVEL_BITS), blocks_at(l - 1, blocks)); k < e; k++) {
+					if(cnt[l-1][k] == 0)
+						continue;
+					if(min[l-1][k] < mi) mi = min[l-1][k];
+					if(max[l-1][k] > ma) ma = max[l-1][k];
+					s += sum[l-1][k]; q += sq[l-1][k]; n += cnt[l-1][k];
+				}
+				min[l][b] = mi; max[l][b] = ma; sum[l][b] = s; sq[l][b] = q; cnt[l][b] = n;
+			}
+		}
+		covered = blocks << BASE_BITS;
+	}
+
+	private static void add(double v, double[] acc) {
+		if(Double.isNaN(v))
+			return;
+		if(v < acc[MIN]) acc[MIN] = v;
+		if(v > acc[MAX]) acc[MAX] = v;
+		acc[SUM] += v; acc[SUMSQ] += v * v; acc[COUNT]++;
+	}
+
+	/* Number of blocks at level l built from the given count of base blocks */
+	private static int blocks_at(int l, int blocks) {
+		return ((blocks - 1) >> (l * LEVEL_BITS)) + 1;
+	}
+
+	private static int bits(int l) {
+		return BASE_BITS + l * LEVEL_BITS;
+	}
+}
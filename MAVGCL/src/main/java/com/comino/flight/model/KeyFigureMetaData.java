@@ -33,7 +33,7 @@
 
 package com.comino.flight.model;
 
-import java.lang.reflect.Field;
+import java.lang.invoke.MethodHandle;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.util.HashMap;
@@ -69,6 +69,7 @@ public class KeyFigureMetaData {
 	public String uom;
 	//	public String mask;
 	public int    hash;
+	public transient int slot = -1;
 	public float  min=0;
 	public float  max=0;
 	public double range_min = Double.NaN;
@@ -76,10 +77,9 @@ public class KeyFigureMetaData {
 
 	private DecimalFormat formatting = null;
 
-	private static final HashMap<String,Object> msp_class_cache = new HashMap<String,Object>();
-
 	private double value = 0;
 	private DataSource source = null;
+	private transient MethodHandle msp_accessor = null;
 
 	public boolean isVirtual = false;
 	public boolean isMSP     = false;
@@ -100,6 +100,7 @@ public class KeyFigureMetaData {
 		this.uom    = uom;
 		this.key    = key;
 		this.hash   = key.toLowerCase().hashCode();
+		this.slot   = AnalysisDataModelMetaData.registerSlot(key);
 
 		if(mask!=null && !mask.equalsIgnoreCase("auto")) {
 			formatting = new DecimalFormat(mask);
@@ -167,22 +168,25 @@ public class KeyFigureMetaData {
 		return sources.containsKey(type);
 	}
 
-	public Double getValueFromMSPModel(DataModel m) throws Exception {
+	/*
+	 * True if the converter of the given source depends on previous samples
+	 */
+	public boolean isOrdered(int type) {
+		final DataSource source = sources.get(type);
+		return source != null && source.converter != null && source.converter.isOrdered();
+	}
+
+	public double getValueFromMSPModel(DataModel m) {
 		value = Double.NaN;
 		source = sources.get(MSP_SOURCE);
 		if(source.field!=null) {
-			Object mclass = msp_class_cache.get(source.class_n);
-			if(mclass == null) {
-				Field mclass_field = m.getClass().getField(source.class_n);
-				mclass = mclass_field.get(m);
-				msp_class_cache.put(source.class_n, mclass);
-			}
-			try {
-				Field mfield_field = mclass.getClass().getField(source.field);
-				value = mfield_field.getDouble(mclass);
-			} catch(NoSuchFieldException e) {
+			if(msp_accessor == null)
+				msp_accessor = MSPExtractionPlan.compile(source);
+			if(msp_accessor == null)
 				return value;
-			} catch(Exception e) {
+			try {
+				value = (double)msp_accessor.invokeExact(m);
+			} catch(Throwable e) {
 				return value;
 			}
 		}
@@ -209,7 +213,7 @@ public class KeyFigureMetaData {
 	//		return checkClipping(value);
 	//	}
 
-	public Double getValueFromULogModel(Map<String,Object> data) {
+	public double getValueFromULogModel(Map<String,Object> data) {
 		value = Double.NaN;
 		source = sources.get(ULG_SOURCE);
 
@@ -253,21 +257,36 @@ public class KeyFigureMetaData {
 	//	}
 
 	public double calculateVirtualValue(AnalysisDataModel data) {
-		source = sources.get(VIR_SOURCE);
+		final DataSource source = sources.get(VIR_SOURCE);
 		if(source.converter != null)
 			return checkClipping(source.converter.convert(data));
 		return 0;
 	}
 
+	/*
+	 * Column-wise calculation for the first count rows of a list chunk, false
+	 * if the converter supports only row-wise evaluation.
+	 */
+	public boolean calculateVirtualValues(AnalysisDataModelList list, int chunk, int count, double[] out) {
+		final DataSource source = sources.get(VIR_SOURCE);
+		if(source.converter == null || !source.converter.convert(list, chunk, count, out))
+			return false;
+		if(Double.isFinite(range_max) && Double.isFinite(range_min)) {
+			for(int i = 0; i < count; i++)
+				out[i] = checkClipping(out[i]);
+		}
+		return true;
+	}
+
 	public String toString() {
 		return desc1;
 	}
 
 	public String toStringAll() {
-		return desc1+": "+key+"("+hash+")";
+		return desc1+": "+key+"("+hash+"/"+slot+")";
 	}
 
-	private Double checkClipping(double v) {
+	double checkClipping(double v) {
 		if(Double.isFinite(range_max) && Double.isFinite(range_min)) {
 			if(v > range_max) v = Double.NaN;
 			if(v < range_min) v = Double.NaN;
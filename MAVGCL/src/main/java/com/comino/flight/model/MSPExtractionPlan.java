@@ -0,0 +1,165 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017,2018 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+package com.comino.flight.model;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.comino.flight.model.KeyFigureMetaData.DataSource;
+import com.comino.flight.model.converter.SourceConverter;
+import com.comino.mavcom.model.DataModel;
+
+import us.ihmc.log.LogTools;
+
+/*
+ * MSP source mappings compiled once into method handles reading
+ * DataModel.<class>.<field> as double. Executed as a flat loop by
+ * AnalysisDataModel.setValues without any reflection per sample.
+ */
+
+public class MSPExtractionPlan {
+
+	private static final MethodType ACCESSOR_TYPE = MethodType.methodType(double.class, DataModel.class);
+
+	private final KeyFigureMetaData[] keyfigures;
+	private final MethodHandle[]      accessors;
+	private final SourceConverter[]   converters;
+	private final boolean[]           unresolved;
+	private final int size;
+
+	public MSPExtractionPlan(Collection<KeyFigureMetaData> kfs) {
+
+		final List<KeyFigureMetaData> list = new ArrayList<KeyFigureMetaData>();
+		kfs.forEach((kf) -> {
+			if(!kf.isVirtual && kf.hasSource(KeyFigureMetaData.MSP_SOURCE))
+				list.add(kf);
+		});
+
+		this.size       = list.size();
+		this.keyfigures = new KeyFigureMetaData[size];
+		this.accessors  = new MethodHandle[size];
+		this.converters = new SourceConverter[size];
+		this.unresolved = new boolean[size];
+
+		int count = 0;
+		for(int i=0; i < size; i++) {
+			final KeyFigureMetaData kf = list.get(i);
+			final DataSource source = kf.sources.get(KeyFigureMetaData.MSP_SOURCE);
+			keyfigures[i] = kf;
+			converters[i] = source.converter;
+			accessors[i]  = compile(source);
+			unresolved[i] = accessors[i]==null && source.field!=null;
+			if(unresolved[i])
+				count++;
+		}
+		if(count > 0)
+			LogTools.info(count+" MSP key figure sources could not be resolved");
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void execute(DataModel model, AnalysisDataModel target) {
+		for(int i=0; i < size; i++) {
+			try {
+				target.setValue(keyfigures[i].slot, extract(i, model));
+			} catch(Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/*
+	 * Extracts the values into a flat array in plan order, to be applied
+	 * later by apply(), e.g. on another thread.
+	 */
+	public void extract(DataModel model, double[] values) {
+		for(int i=0; i < size; i++) {
+			try {
+				values[i] = extract(i, model);
+			} catch(Exception e) {
+				values[i] = Double.NaN;
+			}
+		}
+	}
+
+	public void apply(double[] values, AnalysisDataModel target) {
+		for(int i=0; i < size; i++)
+			target.setValue(keyfigures[i].slot, values[i]);
+	}
+
+	private double extract(int i, DataModel model) {
+		final MethodHandle accessor = accessors[i];
+		double value = Double.NaN;
+		if(unresolved[i])
+			return Double.NaN;
+		if(accessor != null) {
+			try {
+				value = (double)accessor.invokeExact(model);
+			} catch(Throwable e) {
+				return Double.NaN;
+			}
+		}
+		if(converters[i] != null)
+			return keyfigures[i].checkClipping(converters[i].convert(value));
+		return keyfigures[i].checkClipping(value);
+	}
+
+	/*
+	 * Builds a (DataModel)double accessor for class_n.field, or null if the
+	 * field does not exist or is not numeric.
+	 */
+	public static MethodHandle compile(DataSource source) {
+		if(source==null || source.class_n==null || source.field==null)
+			return null;
+		try {
+			final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+			final Field segment = DataModel.class.getField(source.class_n);
+			final Field field   = segment.getType().getField(source.field);
+			if(!field.getType().isPrimitive() || field.getType()==boolean.class)
+				return null;
+			final MethodHandle h = MethodHandles.filterReturnValue(
+					lookup.unreflectGetter(segment), lookup.unreflectGetter(field));
+			return h.asType(ACCESSOR_TYPE);
+		} catch(Exception e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,193 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017,2018 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+package com.comino.flight.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import com.comino.flight.model.KeyFigureMetaData.DataSource;
+import com.comino.flight.model.converter.SourceConverter;
+
+import me.drton.jmavlib.log.ulog.ULogFieldBinder;
+import us.ihmc.log.LogTools;
+
+/*
+ * ULog source mappings bound once to slots of the typed ULog decoding
+ * path of the file reader or the MAVLink stream parser. Records are
+ * decoded into a primitive value array which is then mapped to key
+ * figures without any field name lookup per sample.
+ */
+
+public class ULogExtractionPlan {
+
+	private final KeyFigureMetaData[] keyfigures;
+	private final int[]               fields;
+	private final SourceConverter[]   converters;
+	private final boolean[]           computed;
+	private final boolean[]           ordered;
+	private final ULogFieldBinder     reader;
+	private final int size;
+
+	public ULogExtractionPlan(Collection<KeyFigureMetaData> kfs, ULogFieldBinder reader) {
+
+		final List<KeyFigureMetaData> list = new ArrayList<KeyFigureMetaData>();
+		kfs.forEach((kf) -> {
+			if(!kf.isVirtual && kf.hasSource(KeyFigureMetaData.ULG_SOURCE))
+				list.add(kf);
+		});
+
+		this.reader     = reader;
+		this.size       = list.size();
+		this.keyfigures = new KeyFigureMetaData[size];
+		this.fields     = new int[size];
+		this.converters = new SourceConverter[size];
+		this.computed   = new boolean[size];
+		this.ordered    = new boolean[size];
+
+		int count = 0;
+		for(int i=0; i < size; i++) {
+			final KeyFigureMetaData kf = list.get(i);
+			final DataSource source = kf.sources.get(KeyFigureMetaData.ULG_SOURCE);
+			keyfigures[i] = kf;
+			converters[i] = source.converter;
+			fields[i]     = source.field!=null ? reader.bind(source.field) : -1;
+			computed[i]   = source.field==null && source.converter!=null;
+			ordered[i]    = source.field!=null && source.converter!=null && source.converter.isOrdered();
+			if(computed[i])
+				source.converter.bindULog(reader);
+			if(source.field!=null && fields[i] < 0)
+				count++;
+		}
+		if(count > 0)
+			LogTools.info(count+" ULog key figure sources not available in this log");
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public KeyFigureMetaData getKeyFigure(int i) {
+		return keyfigures[i];
+	}
+
+	/*
+	 * Returns a value array sized for all bound fields, initialized with NaN
+	 */
+	public double[] createValues() {
+		final double[] values = new double[reader.getBindingCount()];
+		Arrays.fill(values, Double.NaN);
+		return values;
+	}
+
+	public void execute(double[] values, AnalysisDataModel target) {
+		for(int i=0; i < size; i++) {
+			try {
+				target.setValue(keyfigures[i].slot, extract(i, values));
+			} catch(Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/*
+	 * Writes the key figures into row offset of their column chunks, given in
+	 * the order of getKeyFigure(). Ordered converters are not supported.
+	 */
+	public void execute(double[] values, double[][] chunks, int offset) {
+		for(int i=0; i < size; i++) {
+			try {
+				chunks[i][offset] = extract(i, values);
+			} catch(Exception e) {
+				chunks[i][offset] = Double.NaN;
+			}
+		}
+	}
+
+	/*
+	 * Variant for parallel conversion: sources with ordered converters get
+	 * their raw value, the converter is applied later by executeOrdered().
+	 */
+	public void executeUnordered(double[] values, AnalysisDataModel target) {
+		for(int i=0; i < size; i++) {
+			try {
+				if(ordered[i])
+					target.setValue(keyfigures[i].slot, values[fields[i]]);
+				else
+					target.setValue(keyfigures[i].slot, extract(i, values));
+			} catch(Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/*
+	 * Applies the ordered converters to a row written by executeUnordered().
+	 * Must be called in row order.
+	 */
+	public void executeOrdered(AnalysisDataModelList list, int row) {
+		for(int i=0; i < size; i++) {
+			if(!ordered[i])
+				continue;
+			final int slot = keyfigures[i].slot;
+			double value = list.getValue(row, slot);
+			if(!Double.isNaN(value))
+				value = converters[i].convert(value);
+			list.setValue(row, slot, keyfigures[i].checkClipping(value));
+		}
+	}
+
+	public boolean hasOrdered() {
+		for(int i=0; i < size; i++)
+			if(ordered[i])
+				return true;
+		return false;
+	}
+
+	private double extract(int i, double[] values) {
+		final SourceConverter converter = converters[i];
+		final int field = fields[i];
+		double value = Double.NaN;
+
+		if(field >= 0) {
+			value = values[field];
+			if(converter != null && !Double.isNaN(value))
+				return keyfigures[i].checkClipping(converter.convert(value));
+		} else if(computed[i]) {
+			return keyfigures[i].checkClipping(converter.convert(values));
+		}
+		return keyfigures[i].checkClipping(value);
+	}
+}
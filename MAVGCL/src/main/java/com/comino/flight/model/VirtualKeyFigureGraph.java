@@ -0,0 +1,288 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017,2018 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+package com.comino.flight.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Predicate;
+
+import com.comino.flight.model.converter.SourceConverter;
+
+import us.ihmc.log.LogTools;
+
+/*
+ * Dependency graph of the virtual key figures, built once when the meta data
+ * is loaded. Figures are evaluated in topological order, so a virtual figure
+ * referencing another one always sees its current value.
+ *
+ * Figures of the same level do not depend on each other. For a complete list
+ * they are evaluated column-wise in parallel, level by level: unordered ones
+ * split into chunks, ordered ones (depending on previous rows) as a whole
+ * column in row order.
+ */
+
+public class VirtualKeyFigureGraph {
+
+	private final KeyFigureMetaData[] order;
+	private final int[]               level;
+	private final boolean[]           ordered;
+	private final int                 levels;
+
+	private final ForkJoinPool pool = ForkJoinPool.commonPool();
+
+	public VirtualKeyFigureGraph(Collection<KeyFigureMetaData> kfs) {
+
+		final List<KeyFigureMetaData> nodes = new ArrayList<KeyFigureMetaData>();
+		kfs.forEach((kf) -> {
+			if(kf.isVirtual && kf.hasSource(KeyFigureMetaData.VIR_SOURCE))
+				nodes.add(kf);
+		});
+		// Deterministic order within a level
+		nodes.sort(Comparator.comparingInt((KeyFigureMetaData kf) -> kf.slot));
+
+		final int n = nodes.size();
+		final Map<Integer,Integer> bySlot = new HashMap<Integer,Integer>();
+		for(int i = 0; i < n; i++)
+			bySlot.put(nodes.get(i).slot, i);
+
+		// Edges from dependency to dependent, references to non virtual figures are no edges
+		final List<List<Integer>> dependents = new ArrayList<List<Integer>>();
+		final int[] indegree = new int[n];
+		for(int i = 0; i < n; i++)
+			dependents.add(new ArrayList<Integer>());
+		for(int i = 0; i < n; i++) {
+			final SourceConverter conv = nodes.get(i).sources.get(KeyFigureMetaData.VIR_SOURCE).converter;
+			if(conv == null)
+				continue;
+			for(String key : conv.getDependencies()) {
+				final Integer d = bySlot.get(AnalysisDataModelMetaData.findSlot(key));
+				if(d == null || d == i || dependents.get(d).contains(i))
+					continue;
+				dependents.get(d).add(i);
+				indegree[i]++;
+			}
+		}
+
+		// Kahn's algorithm, the level of a figure is the longest path to it
+		this.order   = new KeyFigureMetaData[n];
+		this.level   = new int[n];
+		this.ordered = new boolean[n];
+		final int[] depth = new int[n];
+		final ArrayDeque<Integer> ready = new ArrayDeque<Integer>();
+		for(int i = 0; i < n; i++)
+			if(indegree[i] == 0)
+				ready.add(i);
+
+		int count = 0; int max = 0;
+		final boolean[] done = new boolean[n];
+		while(!ready.isEmpty()) {
+			final int i = ready.poll();
+			done[i] = true;
+			order[count] = nodes.get(i);
+			level[count] = depth[i];
+			count++;
+			max = Math.max(max, depth[i]);
+			for(int j : dependents.get(i)) {
+				depth[j] = Math.max(depth[j], depth[i] + 1);
+				if(--indegree[j] == 0)
+					ready.add(j);
+			}
+		}
+
+		if(count < n) {
+			// Cyclic references: evaluate the remaining figures sequentially after all others
+			final StringBuilder sb = new StringBuilder();
+			for(int i = 0; i < n; i++) {
+				if(done[i])
+					continue;
+				sb.append(nodes.get(i).key).append(' ');
+				order[count] = nodes.get(i);
+				level[count] = ++max;
+				count++;
+			}
+			LogTools.error("Cyclic references between virtual key figures: "+sb.toString().trim());
+		}
+
+		// Stable sort by level, keeping the topological order within
+		final Integer[] idx = new Integer[n];
+		for(int i = 0; i < n; i++)
+			idx[i] = i;
+		Arrays.sort(idx, Comparator.comparingInt((Integer i) -> level[i]));
+		final KeyFigureMetaData[] o = order.clone();
+		final int[] l = level.clone();
+		for(int i = 0; i < n; i++) {
+			order[i]   = o[idx[i]];
+			level[i]   = l[idx[i]];
+			ordered[i] = order[i].isOrdered(KeyFigureMetaData.VIR_SOURCE);
+		}
+		this.levels = n > 0 ? max + 1 : 0;
+	}
+
+	public int size() {
+		return order.length;
+	}
+
+	public int getLevels() {
+		return levels;
+	}
+
+	/*
+	 * Virtual key figures in evaluation order
+	 */
+	public KeyFigureMetaData[] getOrder() {
+		return order;
+	}
+
+	/*
+	 * Evaluates all virtual key figures of a single record
+	 */
+	public void evaluate(AnalysisDataModel model) {
+		for(int i = 0; i < order.length; i++)
+			evaluate(order[i], model);
+	}
+
+	/*
+	 * Evaluates either only the virtual key figures depending on previous
+	 * samples (ordered) or all others.
+	 */
+	public void evaluate(AnalysisDataModel model, boolean ordered) {
+		for(int i = 0; i < order.length; i++) {
+			if(this.ordered[i] == ordered)
+				evaluate(order[i], model);
+		}
+	}
+
+	/*
+	 * Evaluates all virtual key figures for all rows of the list, column-wise
+	 * and in parallel within each level.
+	 */
+	public void evaluate(AnalysisDataModelList list) {
+		evaluate(list, (kf) -> true);
+	}
+
+	/*
+	 * As evaluate(list), restricted to the virtual key figures accepted by the
+	 * filter. Figures they depend on must be accepted as well.
+	 */
+	public void evaluate(AnalysisDataModelList list, Predicate<KeyFigureMetaData> filter) {
+		final int rows = list.size();
+		if(rows == 0 || order.length == 0)
+			return;
+
+		final int chunks = ((rows - 1) >> AnalysisDataModelList.CHUNK_BITS) + 1;
+		final List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+
+		int i = 0;
+		for(int l = 0; l < levels; l++) {
+			for(; i < order.length && level[i] == l; i++) {
+				final KeyFigureMetaData kf = order[i];
+				if(!filter.test(kf))
+					continue;
+				if(ordered[i]) {
+					tasks.add(pool.submit(() -> evaluateOrdered(kf, list, rows)));
+				} else {
+					for(int c = 0; c < chunks; c++) {
+						final int chunk = c;
+						tasks.add(pool.submit(() -> evaluateChunk(kf, list, chunk)));
+					}
+				}
+			}
+			// all figures of a level are complete before the next level reads them
+			for(ForkJoinTask<?> task : tasks)
+				task.join();
+			tasks.clear();
+		}
+	}
+
+	/*
+	 * Computes a single chunk of a virtual key figure without storing it.
+	 * Used to derive deferred columns on their first access.
+	 */
+	public double[] evaluate(KeyFigureMetaData kf, AnalysisDataModelList list, int chunk) {
+		final double[] values = new double[AnalysisDataModelList.CHUNK_SIZE];
+		Arrays.fill(values, Double.NaN);
+		final int first = chunk << AnalysisDataModelList.CHUNK_BITS;
+		final int last  = Math.min(list.size(), first + AnalysisDataModelList.CHUNK_SIZE);
+		if(kf.isOrdered(KeyFigureMetaData.VIR_SOURCE) || !columns(kf, list, chunk, last - first, values)) {
+			final AnalysisDataModel view = new AnalysisDataModel(list, first);
+			for(int row = first; row < last; row++) {
+				view.bind(row);
+				values[row - first] = value(kf, view);
+			}
+		}
+		return values;
+	}
+
+	private void evaluateChunk(KeyFigureMetaData kf, AnalysisDataModelList list, int chunk) {
+		list.setChunk(kf.slot, chunk, evaluate(kf, list, chunk));
+	}
+
+	private void evaluateOrdered(KeyFigureMetaData kf, AnalysisDataModelList list, int rows) {
+		// Written row by row, the converter may read its own previous values
+		final AnalysisDataModel view = new AnalysisDataModel(list, 0);
+		for(int row = 0; row < rows; row++) {
+			view.bind(row);
+			list.setValue(row, kf.slot, value(kf, view));
+		}
+	}
+
+	private static boolean columns(KeyFigureMetaData kf, AnalysisDataModelList list, int chunk, int count, double[] values) {
+		try {
+			return kf.calculateVirtualValues(list, chunk, count, values);
+		} catch (Exception e) {
+			Arrays.fill(values, Double.NaN);
+			return false;
+		}
+	}
+
+	private static void evaluate(KeyFigureMetaData kf, AnalysisDataModel model) {
+		model.setValue(kf.slot, value(kf, model));
+	}
+
+	private static double value(KeyFigureMetaData kf, AnalysisDataModel model) {
+		try {
+			return kf.calculateVirtualValue(model);
+		} catch (Exception e) {
+			return Double.NaN;
+		}
+	}
+}
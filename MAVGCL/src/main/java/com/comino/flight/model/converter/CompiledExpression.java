@@ -0,0 +1,446 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017,2018 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+package com.comino.flight.model.converter;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.DoubleUnaryOperator;
+
+/*
+ * Arithmetic expression of the meta data (exp4j syntax), compiled once into
+ * composed lambdas over a variable array. Each operator and leaf combination
+ * is a separate lambda class, so the JIT inlines the complete expression
+ * instead of walking a tree per sample. Constant sub-expressions are folded.
+ *
+ * Variables are referenced by index in the order given at compilation. The
+ * column variant evaluates the expression over whole arrays per operator.
+ * Division or modulo by zero yields NaN.
+ */
+
+public final class CompiledExpression {
+
+	/* Evaluation of a single sample */
+	public interface Scalar {
+		double eval(double[] v);
+	}
+
+	/* Evaluation of count samples, column i holds the values of variable i */
+	public interface Column {
+		void eval(double[][] c, int count, double[] out);
+	}
+
+	private static final Map<String,DoubleUnaryOperator> functions = new HashMap<String,DoubleUnaryOperator>();
+	private static final Map<String,Double>              constants = new HashMap<String,Double>();
+
+	static {
+		functions.put("abs",    Math::abs);
+		functions.put("acos",   Math::acos);
+		functions.put("asin",   Math::asin);
+		functions.put("atan",   Math::atan);
+		functions.put("cbrt",   Math::cbrt);
+		functions.put("ceil",   Math::ceil);
+		functions.put("cos",    Math::cos);
+		functions.put("cosh",   Math::cosh);
+		functions.put("exp",    Math::exp);
+		functions.put("expm1",  Math::expm1);
+		functions.put("floor",  Math::floor);
+		functions.put("log",    Math::log);
+		functions.put("log10",  Math::log10);
+		functions.put("log1p",  Math::log1p);
+		functions.put("log2",   (x) -> Math.log(x) / Math.log(2));
+		functions.put("sin",    Math::sin);
+		functions.put("sinh",   Math::sinh);
+		functions.put("sqrt",   Math::sqrt);
+		functions.put("tan",    Math::tan);
+		functions.put("tanh",   Math::tanh);
+		functions.put("signum", Math::signum);
+
+		constants.put("pi", Math.PI);
+		constants.put("e",  Math.E);
+	}
+
+	private final String   expression;
+	private final Node     root;
+	private final Scalar   scalar;
+	private final Column   column;
+
+	/*
+	 * Compiles the expression, throws IllegalArgumentException on syntax
+	 * errors or unknown identifiers.
+	 */
+	public CompiledExpression(String expression, String... variables) {
+		this.expression = expression;
+		this.root       = new Parser(expression, variables).parse();
+		this.scalar     = root.scalar();
+		this.column     = root.column();
+	}
+
+	public double evaluate(double[] v) {
+		return scalar.eval(v);
+	}
+
+	public void evaluate(double[][] c, int count, double[] out) {
+		column.eval(c, count, out);
+	}
+
+	public boolean isConstant() {
+		return root instanceof Const;
+	}
+
+	public String toString() {
+		return expression;
+	}
+
+	/* Parse tree, only used during compilation */
+
+	private static abstract class Node {
+		abstract Scalar scalar();
+		abstract Column column();
+	}
+
+	private static final class Const extends Node {
+		final double value;
+
+		Const(double value) {
+			this.value = value;
+		}
+
+		Scalar scalar() {
+			final double k = value;
+			return (v) -> k;
+		}
+
+		Column column() {
+			final double k = value;
+			return (c, n, out) -> Arrays.fill(out, 0, n, k);
+		}
+	}
+
+	private static final class Var extends Node {
+		final int index;
+
+		Var(int index) {
+			this.index = index;
+		}
+
+		Scalar scalar() {
+			final int i = index;
+			return (v) -> v[i];
+		}
+
+		Column column() {
+			final int i = index;
+			return (c, n, out) -> System.arraycopy(c[i], 0, out, 0, n);
+		}
+	}
+
+	private static final class Function extends Node {
+		final DoubleUnaryOperator f;
+		final Node arg;
+
+		Function(DoubleUnaryOperator f, Node arg) {
+			this.f   = f;
+			this.arg = arg;
+		}
+
+		Scalar scalar() {
+			final DoubleUnaryOperator f = this.f;
+			final Scalar a = arg.scalar();
+			return (v) -> f.applyAsDouble(a.eval(v));
+		}
+
+		Column column() {
+			final DoubleUnaryOperator f = this.f;
+			final Column a = arg.column();
+			return (c, n, out) -> {
+				a.eval(c, n, out);
+				for(int i = 0; i < n; i++)
+					out[i] = f.applyAsDouble(out[i]);
+			};
+		}
+	}
+
+	private static final class Negate extends Node {
+		final Node arg;
+
+		Negate(Node arg) {
+			this.arg = arg;
+		}
+
+		Scalar scalar() {
+			final Scalar a = arg.scalar();
+			return (v) -> -a.eval(v);
+		}
+
+		Column column() {
+			final Column a = arg.column();
+			return (c, n, out) -> {
+				a.eval(c, n, out);
+				for(int i = 0; i < n; i++)
+					out[i] = -out[i];
+			};
+		}
+	}
+
+	private static final class Binary extends Node {
+		final char op;
+		final Node l, r;
+
+		Binary(char op, Node l, Node r) {
+			this.op = op;
+			this.l  = l;
+			this.r  = r;
+		}
+
+		static double apply(char op, double a, double b) {
+			switch(op) {
+			case '+': return a + b;
+			case '-': return a - b;
+			case '*': return a * b;
+			case '/': return b == 0 ? Double.NaN : a / b;
+			case '%': return b == 0 ? Double.NaN : a % b;
+			default:  return Math.pow(a, b);
+			}
+		}
+
+		Scalar scalar() {
+			// leaves are read directly for the common shapes "x op k" and "x op y"
+			if(l instanceof Var && r instanceof Const) {
+				final int i = ((Var)l).index; final double k = ((Const)r).value;
+				switch(op) {
+				case '+': return (v) -> v[i] + k;
+				case '-': return (v) -> v[i] - k;
+				case '*': return (v) -> v[i] * k;
+				case '/': if(k != 0) return (v) -> v[i] / k;
+				}
+			}
+			if(l instanceof Var && r instanceof Var) {
+				final int i = ((Var)l).index; final int j = ((Var)r).index;
+				switch(op) {
+				case '+': return (v) -> v[i] + v[j];
+				case '-': return (v) -> v[i] - v[j];
+				case '*': return (v) -> v[i] * v[j];
+				}
+			}
+			final Scalar a = l.scalar(); final Scalar b = r.scalar();
+			switch(op) {
+			case '+': return (v) -> a.eval(v) + b.eval(v);
+			case '-': return (v) -> a.eval(v) - b.eval(v);
+			case '*': return (v) -> a.eval(v) * b.eval(v);
+			case '/': return (v) -> { final double d = b.eval(v); return d == 0 ? Double.NaN : a.eval(v) / d; };
+			case '%': return (v) -> { final double d = b.eval(v); return d == 0 ? Double.NaN : a.eval(v) % d; };
+			default:  return (v) -> Math.pow(a.eval(v), b.eval(v));
+			}
+		}
+
+		Column column() {
+			final char op = this.op;
+			final Column a = l.column();
+			if(r instanceof Const) {
+				final double k = ((Const)r).value;
+				return (c, n, out) -> {
+					a.eval(c, n, out);
+					for(int i = 0; i < n; i++)
+						out[i] = apply(op, out[i], k);
+				};
+			}
+			final Column b = r.column();
+			return (c, n, out) -> {
+				a.eval(c, n, out);
+				final double[] t = new double[n];
+				b.eval(c, n, t);
+				switch(op) {
+				case '+': for(int i = 0; i < n; i++) out[i] += t[i]; break;
+				case '-': for(int i = 0; i < n; i++) out[i] -= t[i]; break;
+				case '*': for(int i = 0; i < n; i++) out[i] *= t[i]; break;
+				default:  for(int i = 0; i < n; i++) out[i] = apply(op, out[i], t[i]);
+				}
+			};
+		}
+	}
+
+	/*
+	 * Recursive descent with exp4j precedences:
+	 * + - < * / % < unary - + < ^ (right associative)
+	 */
+	private static final class Parser {
+
+		private final String   s;
+		private final String[] variables;
+		private int pos = 0;
+
+		Parser(String s, String[] variables) {
+			this.s = s;
+			this.variables = variables;
+		}
+
+		Node parse() {
+			final Node n = sum();
+			skip();
+			if(pos < s.length())
+				throw error("Unexpected '"+s.charAt(pos)+"'");
+			return n;
+		}
+
+		private Node sum() {
+			Node n = product();
+			for(char c = peek(); c == '+' || c == '-'; c = peek()) {
+				pos++;
+				n = binary(c, n, product());
+			}
+			return n;
+		}
+
+		private Node product() {
+			Node n = unary();
+			for(char c = peek(); c == '*' || c == '/' || c == '%'; c = peek()) {
+				pos++;
+				n = binary(c, n, unary());
+			}
+			return n;
+		}
+
+		private Node unary() {
+			final char c = peek();
+			if(c == '-') {
+				pos++;
+				final Node n = unary();
+				return n instanceof Const ? new Const(-((Const)n).value) : new Negate(n);
+			}
+			if(c == '+') {
+				pos++;
+				return unary();
+			}
+			return power();
+		}
+
+		private Node power() {
+			final Node n = atom();
+			if(peek() == '^') {
+				pos++;
+				return binary('^', n, unary());
+			}
+			return n;
+		}
+
+		private Node atom() {
+			final char c = peek();
+			if(c == '(') {
+				pos++;
+				final Node n = sum();
+				expect(')');
+				return n;
+			}
+			if(Character.isDigit(c) || c == '.')
+				return number();
+			if(Character.isLetter(c) || c == '_')
+				return identifier();
+			throw error(pos < s.length() ? "Unexpected '"+c+"'" : "Unexpected end");
+		}
+
+		private Node number() {
+			final int start = pos;
+			while(pos < s.length() && (Character.isDigit(s.charAt(pos)) || s.charAt(pos) == '.'))
+				pos++;
+			if(pos < s.length() && (s.charAt(pos) == 'e' || s.charAt(pos) == 'E')) {
+				int p = pos + 1;
+				if(p < s.length() && (s.charAt(p) == '+' || s.charAt(p) == '-'))
+					p++;
+				if(p < s.length() && Character.isDigit(s.charAt(p))) {
+					pos = p;
+					while(pos < s.length() && Character.isDigit(s.charAt(pos)))
+						pos++;
+				}
+			}
+			try {
+				return new Const(Double.parseDouble(s.substring(start, pos)));
+			} catch(NumberFormatException e) {
+				throw error("Invalid number "+s.substring(start, pos));
+			}
+		}
+
+		private Node identifier() {
+			final int start = pos;
+			while(pos < s.length() && (Character.isLetterOrDigit(s.charAt(pos)) || s.charAt(pos) == '_'))
+				pos++;
+			final String name = s.substring(start, pos);
+
+			for(int i = 0; i < variables.length; i++) {
+				if(name.equals(variables[i]))
+					return new Var(i);
+			}
+
+			final DoubleUnaryOperator f = functions.get(name);
+			if(f != null) {
+				expect('(');
+				final Node arg = sum();
+				expect(')');
+				return arg instanceof Const ? new Const(f.applyAsDouble(((Const)arg).value)) : new Function(f, arg);
+			}
+
+			final Double k = constants.get(name);
+			if(k != null)
+				return new Const(k);
+
+			throw error("Unknown function or variable '"+name+"'");
+		}
+
+		private Node binary(char op, Node l, Node r) {
+			if(l instanceof Const && r instanceof Const)
+				return new Const(Binary.apply(op, ((Const)l).value, ((Const)r).value));
+			return new Binary(op, l, r);
+		}
+
+		private char peek() {
+			skip();
+			return pos < s.length() ? s.charAt(pos) : 0;
+		}
+
+		private void expect(char c) {
+			if(peek() != c)
+				throw error("Expected '"+c+"'");
+			pos++;
+		}
+
+		private void skip() {
+			while(pos < s.length() && Character.isWhitespace(s.charAt(pos)))
+				pos++;
+		}
+
+		private IllegalArgumentException error(String msg) {
+			return new IllegalArgumentException(msg+" at position "+pos+" in '"+s+"'");
+		}
+	}
+}
@@ -33,31 +33,22 @@
 
 package com.comino.flight.model.converter;
 
-import net.objecthunter.exp4j.Expression;
-import net.objecthunter.exp4j.ExpressionBuilder;
-
 public class ExpressionConverter extends SourceConverter {
 
-	private Expression calc = null;
-	private String kfname;
+	private CompiledExpression calc = null;
+
+	private final ThreadLocal<double[]> local = ThreadLocal.withInitial(() -> new double[1]);
 
 	@Override
 	public void setParameter(String kfname, String[] params) {
-		this.kfname = kfname;
-		Runnable r = new Runnable() {
-			public void run() {
-				calc = new ExpressionBuilder(params[0]).variable(kfname).build();
-			}
-		};
-		Thread t = new Thread(r);
-		t.setName("Expression calculation worker");
-		t.start();
+		calc = new CompiledExpression(params[0], kfname);
 	}
 
 	@Override
 	public double convert(double val) {
-		calc.setVariable(kfname, val);
-		return (float)calc.evaluate();
+		final double[] v = local.get();
+		v[0] = val;
+		return (float)calc.evaluate(v);
 	}
 
 	public ExpressionConverter() {
@@ -61,6 +61,11 @@ public class LowPassConverter extends SourceConverter {
 	}
 
 
+	@Override
+	public boolean isOrdered() {
+		return true;
+	}
+
 	@Override
 	public String toString() {
 		return "Avg:";
@@ -37,12 +37,18 @@ import java.util.Map;
 
 import com.comino.mavutils.MSPMathUtils;
 
+import me.drton.jmavlib.log.ulog.ULogFieldBinder;
+
 public class QuaternionConverter extends SourceConverter {
 
 	private String ulogKeyFigure = null;
 	private int    index;
 	private float euler[] = new float[3];
 	private float q[]     = new float[4];
+	private int   slots[] = { -1, -1, -1, -1 };
+
+	/* Scratch buffers for the typed path, which may run on several import workers */
+	private static final ThreadLocal<float[][]> scratch = ThreadLocal.withInitial(() -> new float[][] { new float[3], new float[4] });
 
 	@Override
 	public void setParameter(String kfname, String[] params) {
@@ -68,6 +74,24 @@ public class QuaternionConverter extends SourceConverter {
 		return euler[index];
 	}
 
+	@Override
+	public void bindULog(ULogFieldBinder reader) {
+		for(int i=0;i<slots.length;i++)
+			slots[i] = reader.bind(ulogKeyFigure+"["+i+"]");
+	}
+
+	@Override
+	public double convert(double[] ulogdata) {
+		final float[][] s = scratch.get();
+		for(int i=0;i<slots.length;i++) {
+			if(slots[i] < 0 || Double.isNaN(ulogdata[slots[i]]))
+				return 0;
+			s[1][i] = (float)ulogdata[slots[i]];
+		}
+		MSPMathUtils.eulerAnglesByQuaternion(s[0], s[1]);
+		return s[0][index];
+	}
+
 	@Override
 	public String toString() {
 		return ulogKeyFigure+"("+index+")";
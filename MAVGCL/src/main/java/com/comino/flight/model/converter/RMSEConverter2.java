@@ -33,72 +33,30 @@
 
 package com.comino.flight.model.converter;
 
-import java.util.List;
+/*
+ * Root mean square of the difference of two key figures over a window of
+ * rows: value, setpoint, window length
+ */
 
-import com.comino.flight.model.AnalysisDataModel;
-import com.comino.flight.model.service.AnalysisModelService;
-
-public class RMSEConverter2 extends SourceConverter {
-
-	String kf_val = null;
-	String kf_sp  = null;
-	int    frame  = 0;
-	String kf_name = null;
-	
+public class RMSEConverter2 extends WindowConverter {
 
 	@Override
 	public void setParameter(String kfname, String[] params) {
-		this.kf_name = kfname;
-		this.kf_val = params[0];
-		this.kf_sp  = params[1];
-		this.frame  = Integer.parseInt(params[2]);
+		setWindow(params[0], params[1], true, Integer.parseInt(params[2]), false);
 	}
 
-
 	@Override
-	public double convert(AnalysisDataModel data) {
-
-		double rmse = 0; double kf = 0; double sp = 0;
-		
-		List<AnalysisDataModel> list = AnalysisModelService.getInstance().getModelList();
-
-		if(list.size()<frame) {
-			return 0;
-		}
-
-		if(list.get(list.size()-1).getValue(kf_name)!=0) {
-			kf = data.getValue(kf_val);
-			sp = data.getValue(kf_sp);
-			if(Double.isNaN(kf) || Double.isNaN(sp))
-				return 0;
-			rmse = list.get(list.size()-1).getValue(kf_name);
-			rmse = rmse * rmse * frame;
-			rmse = rmse + ((kf - sp ) * (kf - sp ));
-			kf = list.get(list.size()-frame).getValue(kf_val);
-			sp = list.get(list.size()-frame).getValue(kf_sp);
-			rmse = rmse - ((kf - sp ) * (kf - sp ));
-			return Math.sqrt(rmse/frame);
-		} else {
-
-		for(int i=list.size()-frame;i<list.size();i++) {
-			kf = list.get(i).getValue(kf_val);
-			sp = list.get(i).getValue(kf_sp);
-			if(Double.isNaN(kf) || Double.isNaN(sp))
-				return 0;
-			rmse = rmse + ((kf - sp ) * (kf - sp ));
-		}
-		return Math.sqrt(rmse/frame);
-		}
+	protected double result(SlidingWindow window) {
+		return window.rms();
 	}
 
 	public RMSEConverter2() {
 		super();
 	}
 
-
 	@Override
 	public String toString() {
-		return "RMSE: "+ kf_val +" ("+frame+")";
+		return "RMSE: "+ kf1 +" ("+len+")";
 	}
 
 
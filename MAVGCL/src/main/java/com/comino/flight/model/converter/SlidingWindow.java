@@ -0,0 +1,248 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017,2018 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+package com.comino.flight.model.converter;
+
+/*
+ * Window over the last samples of one or two channels (x, y) with running
+ * sums, so that mean, variance, RMS and covariance cost O(1) per sample
+ * regardless of the window length. Optional monotonic queues provide min
+ * and max in amortized O(1).
+ *
+ * Samples with a NaN value are kept in the window but not counted. Sums are
+ * taken relative to a shift and recomputed once per window length to bound
+ * rounding errors of the add/remove updates.
+ *
+ * Queries include an additional sample set by with(), which is not stored.
+ * This allows evaluating the same record repeatedly without changing the
+ * window.
+ */
+
+public class SlidingWindow {
+
+	private final int      capacity;
+	private final double[] xs;
+	private final double[] ys;
+
+	private int  head    = 0;
+	private int  size    = 0;
+	private long added   = 0;
+	private int  refresh = 0;
+
+	// running sums of the valid samples relative to kx, ky
+	private double kx, ky;
+	private int    n;
+	private double sx, sy, sxx, syy, sxy;
+
+	// sums including the sample set by with()
+	private int    cn;
+	private double cx, cy, cxx, cyy, cxy, current;
+
+	// absolute sample indices with increasing resp. decreasing x
+	private final long[] minq;
+	private final long[] maxq;
+	private int minh, mins, maxh, maxs;
+
+	public SlidingWindow(int capacity, boolean extremes) {
+		this.capacity = capacity;
+		this.xs = new double[Math.max(capacity, 1)];
+		this.ys = new double[Math.max(capacity, 1)];
+		this.minq = extremes ? new long[Math.max(capacity, 1)] : null;
+		this.maxq = extremes ? new long[Math.max(capacity, 1)] : null;
+		clear();
+	}
+
+	public void clear() {
+		head = 0; size = 0; added = 0; refresh = 0;
+		kx = 0; ky = 0; n = 0;
+		sx = 0; sy = 0; sxx = 0; syy = 0; sxy = 0;
+		minh = 0; mins = 0; maxh = 0; maxs = 0;
+		with(Double.NaN, Double.NaN);
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/*
+	 * Adds a sample, the oldest one is removed if the window is full
+	 */
+	public void add(double x, double y) {
+		if(capacity == 0)
+			return;
+
+		if(size == capacity) {
+			remove(xs[head], ys[head]);
+			head = head + 1 == capacity ? 0 : head + 1;
+			size--;
+		}
+
+		final int i = (int)(added % capacity);
+		xs[i] = x; ys[i] = y;
+		size++;
+		insert(x, y);
+
+		if(minq != null) {
+			final long first = added - size + 1;
+			while(mins > 0 && minq[minh] < first) { minh = next(minh); mins--; }
+			while(maxs > 0 && maxq[maxh] < first) { maxh = next(maxh); maxs--; }
+			if(!Double.isNaN(x)) {
+				while(mins > 0 && xs[slot(minq[last(minh, mins)])] >= x) mins--;
+				minq[last(minh, mins + 1)] = added; mins++;
+				while(maxs > 0 && xs[slot(maxq[last(maxh, maxs)])] <= x) maxs--;
+				maxq[last(maxh, maxs + 1)] = added; maxs++;
+			}
+		}
+		added++;
+
+		if(++refresh >= capacity)
+			recompute();
+	}
+
+	/*
+	 * Sets the additional sample included in the following queries
+	 */
+	public SlidingWindow with(double x, double y) {
+		cn = n; cx = sx; cy = sy; cxx = sxx; cyy = syy; cxy = sxy;
+		current = Double.NaN;
+		if(Double.isNaN(x) || Double.isNaN(y))
+			return this;
+		final double dx = x - kx; final double dy = y - ky;
+		cn++; cx += dx; cy += dy; cxx += dx * dx; cyy += dy * dy; cxy += dx * dy;
+		current = x;
+		return this;
+	}
+
+	/*
+	 * Number of valid samples
+	 */
+	public int count() {
+		return cn;
+	}
+
+	public double mean() {
+		return cn == 0 ? Double.NaN : kx + cx / cn;
+	}
+
+	public double variance() {
+		return cn < 2 ? Double.NaN : Math.max(0, (cxx - cx * cx / cn) / (cn - 1));
+	}
+
+	public double std() {
+		return Math.sqrt(variance());
+	}
+
+	/*
+	 * Root mean square of x
+	 */
+	public double rms() {
+		if(cn == 0)
+			return Double.NaN;
+		return Math.sqrt(Math.max(0, (cxx + 2 * kx * cx + cn * kx * kx) / cn));
+	}
+
+	public double covariance() {
+		return cn < 2 ? Double.NaN : (cxy - cx * cy / cn) / (cn - 1);
+	}
+
+	public double min() {
+		double v = mins > 0 ? xs[slot(minq[minh])] : Double.NaN;
+		if(!Double.isNaN(current) && !(v <= current))
+			v = current;
+		return v;
+	}
+
+	public double max() {
+		double v = maxs > 0 ? xs[slot(maxq[maxh])] : Double.NaN;
+		if(!Double.isNaN(current) && !(v >= current))
+			v = current;
+		return v;
+	}
+
+	private void insert(double x, double y) {
+		if(Double.isNaN(x) || Double.isNaN(y))
+			return;
+		if(n == 0) {
+			kx = x; ky = y;
+		}
+		final double dx = x - kx; final double dy = y - ky;
+		n++; sx += dx; sy += dy; sxx += dx * dx; syy += dy * dy; sxy += dx * dy;
+	}
+
+	private void remove(double x, double y) {
+		if(Double.isNaN(x) || Double.isNaN(y))
+			return;
+		if(--n == 0) {
+			sx = 0; sy = 0; sxx = 0; syy = 0; sxy = 0;
+			return;
+		}
+		final double dx = x - kx; final double dy = y - ky;
+		sx -= dx; sy -= dy; sxx -= dx * dx; syy -= dy * dy; sxy -= dx * dy;
+	}
+
+	private void recompute() {
+		refresh = 0;
+		n = 0; double mx = 0, my = 0;
+		for(int j = 0, i = head; j < size; j++, i = i + 1 == capacity ? 0 : i + 1) {
+			if(Double.isNaN(xs[i]) || Double.isNaN(ys[i]))
+				continue;
+			n++; mx += xs[i]; my += ys[i];
+		}
+		sx = 0; sy = 0; sxx = 0; syy = 0; sxy = 0;
+		if(n == 0)
+			return;
+		kx = mx / n; ky = my / n;
+		for(int j = 0, i = head; j < size; j++, i = i + 1 == capacity ? 0 : i + 1) {
+			if(Double.isNaN(xs[i]) || Double.isNaN(ys[i]))
+				continue;
+			final double dx = xs[i] - kx; final double dy = ys[i] - ky;
+			sx += dx; sy += dy; sxx += dx * dx; syy += dy * dy; sxy += dx * dy;
+		}
+	}
+
+	private int slot(long index) {
+		return (int)(index % capacity);
+	}
+
+	private int next(int i) {
+		return i + 1 == minq.length ? 0 : i + 1;
+	}
+
+	private int last(int h, int s) {
+		return (h + s - 1) % minq.length;
+	}
+}
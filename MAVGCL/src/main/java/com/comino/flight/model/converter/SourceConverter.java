@@ -36,6 +36,9 @@ package com.comino.flight.model.converter;
 import java.util.Map;
 
 import com.comino.flight.model.AnalysisDataModel;
+import com.comino.flight.model.AnalysisDataModelList;
+
+import me.drton.jmavlib.log.ulog.ULogFieldBinder;
 
 public abstract class SourceConverter {
 	public SourceConverter() {
@@ -51,6 +54,14 @@ public abstract class SourceConverter {
 		return 0;
 	}
 
+	/*
+	 * Column-wise conversion of the first count rows of a list chunk, false if
+	 * not supported by the converter.
+	 */
+	public boolean convert(AnalysisDataModelList list, int chunk, int count, double[] out) {
+		return false;
+	}
+
 	public double convert(Map<String,Object> ulogdata, double val) {
 		return convert(val);
 	}
@@ -59,6 +70,32 @@ public abstract class SourceConverter {
 		return 0;
 	}
 
+	/*
+	 * Typed ULog path: resolve referenced fields to slots of the value array
+	 */
+	public void bindULog(ULogFieldBinder reader) {
+	}
+
+	public double convert(double[] ulogdata) {
+		return 0;
+	}
+
+	/*
+	 * Converters depending on previous samples return true. They are evaluated
+	 * in row order after a parallel import.
+	 */
+	public boolean isOrdered() {
+		return false;
+	}
+
+	/*
+	 * Keys of the key figures read by convert(AnalysisDataModel), used to
+	 * order the evaluation of virtual key figures.
+	 */
+	public String[] getDependencies() {
+		return new String[0];
+	}
+
 	public abstract String toString();
 
 
@@ -35,6 +35,9 @@ package com.comino.flight.model.converter;
 
 import java.util.Map;
 
+import me.drton.jmavlib.log.ulog.FieldFormat;
+import me.drton.jmavlib.log.ulog.ULogFieldBinder;
+
 public class ULOGDifferenceConverter extends SourceConverter {
 
 	private String ulogKeyFigure1 = null;
@@ -43,6 +46,11 @@ public class ULOGDifferenceConverter extends SourceConverter {
 	private double v1=0;
 	private double v2=0;
 
+	private int    slot1 = -1;
+	private int    slot2 = -1;
+	private double scale1 = 1;
+	private double scale2 = 1;
+
 
 	@Override
 	public void setParameter(String kfname, String[] params) {
@@ -95,6 +103,25 @@ public class ULOGDifferenceConverter extends SourceConverter {
 		}
 	}
 
+	@Override
+	public void bindULog(ULogFieldBinder reader) {
+		slot1  = reader.bind(ulogKeyFigure1);
+		slot2  = reader.bind(ulogKeyFigure2);
+		scale1 = FieldFormat.isLongType(reader.getFieldList().getOrDefault(ulogKeyFigure1,"")) ? 1000.0d : 1;
+		scale2 = FieldFormat.isLongType(reader.getFieldList().getOrDefault(ulogKeyFigure2,"")) ? 1000.0d : 1;
+	}
+
+	@Override
+	public double convert(double[] ulogdata) {
+		// typed values are held by the reader, no state needed here
+		double a = 0, b = 0;
+		if(slot1 >= 0 && !Double.isNaN(ulogdata[slot1]))
+			a = ulogdata[slot1] / scale1;
+		if(slot2 >= 0 && !Double.isNaN(ulogdata[slot2]))
+			b = ulogdata[slot2] / scale2;
+		return a - b;
+	}
+
 	@Override
 	public String toString() {
 		return ulogKeyFigure1+"-"+ulogKeyFigure2;
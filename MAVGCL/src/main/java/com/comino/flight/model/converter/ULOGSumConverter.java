@@ -35,9 +35,14 @@ package com.comino.flight.model.converter;
 
 import java.util.Map;
 
+import me.drton.jmavlib.log.ulog.FieldFormat;
+import me.drton.jmavlib.log.ulog.ULogFieldBinder;
+
 public class ULOGSumConverter extends SourceConverter {
 
 	private String[] ulogKeyFigures = null;
+	private int[]    slots = null;
+	private double[] scale = null;
 
 
 	@Override
@@ -82,6 +87,26 @@ public class ULOGSumConverter extends SourceConverter {
 		}
 	}
 
+	@Override
+	public void bindULog(ULogFieldBinder reader) {
+		slots = new int[ulogKeyFigures.length];
+		scale = new double[ulogKeyFigures.length];
+		for(int i=0; i<ulogKeyFigures.length;i++) {
+			slots[i] = reader.bind(ulogKeyFigures[i]);
+			scale[i] = FieldFormat.isLongType(reader.getFieldList().getOrDefault(ulogKeyFigures[i],"")) ? 1000.0d : 1;
+		}
+	}
+
+	@Override
+	public double convert(double[] ulogdata) {
+		double sum = 0;
+		for(int i=0; i<slots.length;i++) {
+			if(slots[i] >= 0 && !Double.isNaN(ulogdata[slots[i]]))
+				sum += ulogdata[slots[i]] / scale[i];
+		}
+		return sum;
+	}
+
 	@Override
 	public String toString() {
 		return "SUM";
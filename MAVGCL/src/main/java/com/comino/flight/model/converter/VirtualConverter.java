@@ -33,33 +33,34 @@
 
 package com.comino.flight.model.converter;
 
-import com.comino.flight.model.AnalysisDataModel;
+import java.util.Arrays;
 
-import net.objecthunter.exp4j.Expression;
-import net.objecthunter.exp4j.ExpressionBuilder;
+import com.comino.flight.model.AnalysisDataModel;
+import com.comino.flight.model.AnalysisDataModelList;
+import com.comino.flight.model.AnalysisDataModelMetaData;
 
 public class VirtualConverter extends SourceConverter {
 
-	private Expression calc = null;
+	private static final double[] ZEROS = new double[AnalysisDataModelList.CHUNK_SIZE];
+	private static final double[] NANS  = new double[AnalysisDataModelList.CHUNK_SIZE];
+
+	static {
+		Arrays.fill(NANS, Double.NaN);
+	}
+
+	private CompiledExpression calc = null;
+
+	private final ThreadLocal<double[]> local = ThreadLocal.withInitial(() -> new double[this.slots.length]);
 	private String[] params;
+	private int[]    slots;
 
 	@Override
 	public void setParameter(String kfname, String[] params) {
 		this.params = params;
-
-		Runnable r = new Runnable() {
-			public void run() {
-				ExpressionBuilder exp = new ExpressionBuilder(params[0]);
-				if(params.length>0) {
-				for(int i=1;i<params.length;i++)
-				     exp.variable(params[i]);
-				}
-				calc = exp.build();
-			}
-		};
-		Thread t = new Thread(r);
-		t.setName("Virtual expression worker");
-		t.start();
+		this.slots  = new int[params.length - 1];
+		for(int i=1;i<params.length;i++)
+			slots[i-1] = AnalysisDataModelMetaData.registerSlot(params[i]);
+		this.calc = new CompiledExpression(params[0], Arrays.copyOfRange(params, 1, params.length));
 	}
 
 
@@ -69,14 +70,35 @@ public class VirtualConverter extends SourceConverter {
 
 	@Override
 	public double convert(AnalysisDataModel data) {
-		if(params.length>1) {
-			for(int i=1;i<params.length;i++)
-        		calc.setVariable(params[i], data.getValue(params[i]));
+		final double[] v = local.get();
+		for(int i=0;i<slots.length;i++)
+			v[i] = data.getValue(slots[i], 0);
+		return calc.evaluate(v);
+	}
+
+	@Override
+	public boolean convert(AnalysisDataModelList list, int chunk, int count, double[] out) {
+		final double[][] c = new double[slots.length][];
+		for(int i=0;i<slots.length;i++) {
+			// same defaults as getValue(slot, 0) of a list view
+			if(!list.hasColumn(slots[i]))
+				c[i] = ZEROS;
+			else {
+				c[i] = list.getChunk(slots[i], chunk);
+				if(c[i] == null)
+					c[i] = NANS;
+			}
 		}
-		return calc.evaluate();
+		calc.evaluate(c, count, out);
+		return true;
 	}
 
 
+	@Override
+	public String[] getDependencies() {
+		return params.length > 1 ? Arrays.copyOfRange(params, 1, params.length) : new String[0];
+	}
+
 	@Override
 	public String toString() {
 		return calc.toString();
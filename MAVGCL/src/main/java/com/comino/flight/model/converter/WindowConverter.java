@@ -0,0 +1,130 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017,2018 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+package com.comino.flight.model.converter;
+
+import com.comino.flight.model.AnalysisDataModel;
+import com.comino.flight.model.AnalysisDataModelList;
+import com.comino.flight.model.AnalysisDataModelMetaData;
+import com.comino.flight.model.service.AnalysisModelService;
+
+/*
+ * Base for statistics over the last rows of the model list. The window holds
+ * the rows before the evaluated one, the evaluated record itself is included
+ * by SlidingWindow.with(). Consecutive rows, as evaluated by an import or a
+ * recording, advance the window by one sample. After a jump the window is
+ * refilled from the list once.
+ *
+ * A sample is either the value of kf1, the pair (kf1, kf2) or the
+ * difference kf1 - kf2.
+ */
+
+public abstract class WindowConverter extends SourceConverter {
+
+	protected String kf1 = null;
+	protected String kf2 = null;
+	protected int    len = 0;
+
+	private int     slot1 = -1;
+	private int     slot2 = -1;
+	private boolean difference = false;
+
+	private SlidingWindow         window = null;
+	private AnalysisDataModelList list   = null;
+	private int                   next   = 0;
+
+	protected void setWindow(String kf1, String kf2, boolean difference, int len, boolean extremes) {
+		if(len < 1)
+			throw new IllegalArgumentException("Window length "+len);
+		this.kf1 = kf1;
+		this.kf2 = kf2;
+		this.len = len;
+		this.difference = difference;
+		this.slot1  = AnalysisDataModelMetaData.registerSlot(kf1);
+		this.slot2  = kf2 != null ? AnalysisDataModelMetaData.registerSlot(kf2) : -1;
+		this.window = new SlidingWindow(len - 1, extremes);
+		this.list   = null;
+	}
+
+	/*
+	 * Result for a window of len rows ending with the evaluated one
+	 */
+	protected abstract double result(SlidingWindow window);
+
+	@Override
+	public synchronized double convert(AnalysisDataModel data) {
+
+		// rows before the evaluated one, which is either a row of its own list or the next
+		// record of a recording, appended to the model list of the service afterwards
+		final AnalysisDataModelList list = data.getList() != null ? data.getList()
+				: AnalysisModelService.getInstance().getModelList();
+		final int row = data.getList() != null ? data.getRow() : list.size();
+
+		if(list != this.list || row < next || row - next >= len) {
+			window.clear();
+			this.list = list;
+			this.next = Math.max(0, row - len + 1);
+		}
+		for(; next < row; next++)
+			add(list.getValue(next, slot1, 0), slot2 < 0 ? 0 : list.getValue(next, slot2, 0));
+
+		final double v1 = data.getValue(slot1, 0);
+		final double v2 = slot2 < 0 ? 0 : data.getValue(slot2, 0);
+		if(difference)
+			window.with(v1 - v2, 0);
+		else
+			window.with(v1, v2);
+
+		if(row + 1 < len || window.count() == 0)
+			return 0;
+		return result(window);
+	}
+
+	private void add(double v1, double v2) {
+		if(difference)
+			window.add(v1 - v2, 0);
+		else
+			window.add(v1, v2);
+	}
+
+	@Override
+	public boolean isOrdered() {
+		return true;
+	}
+
+	@Override
+	public String[] getDependencies() {
+		return kf2 != null ? new String[] { kf1, kf2 } : new String[] { kf1 };
+	}
+
+}
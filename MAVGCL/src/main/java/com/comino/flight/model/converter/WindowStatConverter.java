@@ -0,0 +1,90 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017,2018 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+package com.comino.flight.model.converter;
+
+/*
+ * Moving statistic of a key figure over a window of rows, declared as
+ *
+ *   <Converter class="WindowStatConverter" var0="std" var1="LPOSZ" var2="200"/>
+ *
+ * Statistics: avg, var, std, rms, min, max
+ */
+
+public class WindowStatConverter extends WindowConverter {
+
+	private static final int AVG = 0;
+	private static final int VAR = 1;
+	private static final int STD = 2;
+	private static final int RMS = 3;
+	private static final int MIN = 4;
+	private static final int MAX = 5;
+
+	private static final String[] names = { "avg", "var", "std", "rms", "min", "max" };
+
+	private int stat = AVG;
+
+	@Override
+	public void setParameter(String kfname, String[] params) {
+		stat = -1;
+		for(int i = 0; i < names.length; i++) {
+			if(names[i].equalsIgnoreCase(params[0]))
+				stat = i;
+		}
+		if(stat < 0)
+			throw new IllegalArgumentException("Unknown window statistic "+params[0]);
+		setWindow(params[1], null, false, Integer.parseInt(params[2]), stat == MIN || stat == MAX);
+	}
+
+	@Override
+	protected double result(SlidingWindow window) {
+		switch(stat) {
+		case VAR: return window.variance();
+		case STD: return window.std();
+		case RMS: return window.rms();
+		case MIN: return window.min();
+		case MAX: return window.max();
+		default:  return window.mean();
+		}
+	}
+
+	public WindowStatConverter() {
+		super();
+	}
+
+	@Override
+	public String toString() {
+		return names[stat]+": "+kf1+" ("+len+")";
+	}
+
+}
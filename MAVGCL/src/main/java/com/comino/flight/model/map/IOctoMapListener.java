@@ -0,0 +1,12 @@
+package com.comino.flight.model.map;
+
+import georegression.struct.point.Point4D_F32;
+
+public interface IOctoMapListener {
+
+	/* called from the ingest worker; voxel centres in map frame, w = occupancy */
+	public void changed(Point4D_F32[] changes);
+
+	public void cleared();
+
+}
@@ -1,5 +1,13 @@
 package com.comino.flight.model.map;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+
 import org.mavlink.messages.lquac.msg_msp_micro_grid;
 
 import com.comino.mavcom.control.IMAVController;
@@ -9,87 +17,180 @@ import com.comino.mavcom.status.StatusManager;
 import com.comino.mavmap.map.map3D.Map3DSpacialInfo;
 import com.comino.mavmap.map.map3D.impl.octomap.MAVOccupancyOcTreeNode;
 import com.comino.mavmap.map.map3D.impl.octomap.MAVOctoMap3D;
+import com.comino.mavmap.map.map3D.impl.octomap.boundingbox.MAVSimpleBoundingBox;
 
 import georegression.struct.point.Point3D_F32;
+import georegression.struct.point.Point4D_F32;
 import us.ihmc.jOctoMap.key.OcTreeKey;
 import us.ihmc.jOctoMap.tools.OcTreeKeyConversionTools;
 
 public class MAVGCLOctoMap extends MAVOctoMap3D {
 
+	private final static long  BATCH_WINDOW_MS = 50;    // grid messages arriving within this window are coalesced
+	private final static int   QUEUE_CAPACITY  = 1000;  // grid blocks arriving while the queue is full are dropped
+
+	private final IMAVController control;
 	private final DataModel model;
 	private final Map3DSpacialInfo info;
 
 	private static MAVGCLOctoMap instance = null;
-	private int count;
-	private Point3D_F32 pos = new Point3D_F32();
+
+	private final BlockingQueue<GridBlock>          queue     = new LinkedBlockingQueue<GridBlock>(QUEUE_CAPACITY);
+	private final Map<OcTreeKey,Point4D_F32>        pending   = new LinkedHashMap<OcTreeKey,Point4D_F32>();
+	private final List<IOctoMapListener>            listeners = new CopyOnWriteArrayList<IOctoMapListener>();
+
+	private final Point3D_F32 pg = new Point3D_F32();
+
+	private Thread worker = null;
 
 	public static MAVGCLOctoMap getInstance(IMAVController control) {
-		if(instance==null)
+		if(instance==null) {
 			instance = new MAVGCLOctoMap(control);
+			instance.start();
+		}
 		return instance;
 	}
 
 
 	public MAVGCLOctoMap(IMAVController control) {
 		super();
-		
+
 		super.enableRemoveOutdated(false);
 		this.info = new Map3DSpacialInfo(0.2,200,200,200);
 
+		this.control = control;
 		this.model = control.getCurrentModel();
+	}
+
+	/* registers the MAVLink listeners and starts the ingest worker, once the map is constructed */
+	public synchronized void start() {
+
+		if(worker!=null)
+			return;
 
 		control.getStatusManager().addListener(StatusManager.TYPE_MSP_STATUS, Status.MSP_ARMED,
 				StatusManager.EDGE_RISING, (a) -> {
-						clear();
+						clearQueue();
 						model.grid.count = -1;
 				});
 
+		/* the listener only copies the message, decoding and tree updates run on the ingest worker */
 		control.addMAVLinkListener((o) -> {
 			if(o instanceof msg_msp_micro_grid) {
 
 				msg_msp_micro_grid grid = (msg_msp_micro_grid) o;
 
 				if(grid.count < 0) {
-					clear(); 
+					clearQueue();
 					model.grid.count = -1;
 					return;
 				}
-				
-				if(grid.resolution != this.getResolution()) {
-					clearAndChangeResolution(grid.resolution);
+
+				queue.offer(new GridBlock(grid));
+			}
+
+	  // removeOutdatedNodes(1000);
+
+		});
+
+		worker = new Thread(this::ingest, "OctoMapIngest");
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	public void addListener(IOctoMapListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(IOctoMapListener listener) {
+		listeners.remove(listener);
+	}
+
+	/* tree reads from other threads must hold the map lock */
+	public List<Long> getLeafsInBoundingBox(MAVSimpleBoundingBox box) {
+		synchronized(this) {
+			return getLeafsInBoundingBoxEncoded(box);
+		}
+	}
+
+	/* blocks queued before a clear are obsolete, so a clear always finds room */
+	private void clearQueue() {
+		do {
+			queue.clear();
+		} while(!queue.offer(GridBlock.CLEAR));
+	}
+
+	private void ingest() {
+
+		final List<GridBlock> batch = new ArrayList<GridBlock>();
+
+		while(true) {
+
+			try {
+				batch.add(queue.take());
+				Thread.sleep(BATCH_WINDOW_MS);
+			} catch (InterruptedException e) {
+				return;
+			}
+
+			queue.drainTo(batch);
+
+			for(GridBlock block : batch) {
+
+				if(block == GridBlock.CLEAR) {
+					pending.clear();
+					synchronized(this) {
+						clear();
+					}
+					listeners.forEach((l) -> l.cleared());
+					continue;
 				}
-				
-				pos.x = grid.cx;
-				pos.y = grid.cy;
-				pos.z = grid.cz;
-				
-				
-
-				for(int i=0;i< grid.data.length;i++) {
-					if(grid.data[i] > 0) {
-						insertBoolean(grid.data[i],grid.resolution,pos);
+
+				if(block.resolution != this.getResolution()) {
+					pending.clear();
+					synchronized(this) {
+						clearAndChangeResolution(block.resolution);
 					}
+					listeners.forEach((l) -> l.cleared());
+				}
+
+				for(int i=0;i< block.data.length;i++) {
+					if(block.data[i] > 0)
+						coalesce(block.data[i], block.resolution, block.cz);
 				}
 			}
-			
-	  // removeOutdatedNodes(1000);
+			batch.clear();
+
+			if(pending.isEmpty())
+				continue;
+
+			final Point4D_F32[] changes = pending.values().toArray(new Point4D_F32[pending.size()]);
+			synchronized(this) {
+				pending.forEach((key,p) -> apply(key,p));
+				resetChangeDetection();
+			}
+			pending.clear();
 
-		});	
+			listeners.forEach((l) -> l.changed(changes));
+		}
 	}
-	
-	private Point3D_F32 pg = new Point3D_F32();
 
-	public void insertBoolean(long encoded, float resolution, Point3D_F32 pos) {
-		
+	/* last value within a batch wins for each key */
+	private void coalesce(long encoded, float resolution, float z) {
+
 		final float value = decode(encoded,pg,10.0f,0.2f);
-		pg.z = pos.z;
+		pg.z = z;
 
 		OcTreeKey key = OcTreeKeyConversionTools.coordinateToKey(pg.x, -pg.y, pg.z, resolution, this.getTree().getTreeDepth());
 		if(key==null)
 			return;
-		
-		
-		if(value >= 0.5) {
+
+		pending.put(key, new Point4D_F32(center(pg.x,resolution), center(-pg.y,resolution), center(pg.z,resolution), value));
+	}
+
+	private void apply(OcTreeKey key, Point4D_F32 p) {
+
+		if(p.w >= 0.5) {
 			this.getTree().updateNode(key, true);
 		}
 		else {
@@ -98,10 +199,14 @@ public class MAVGCLOctoMap extends MAVOctoMap3D {
 				node.clear();
 				this.getTree().getChangedKeys().put(key, (byte)1);
 			}
-		
+
 		}
 	}
-	
+
+	private float center(float c, float resolution) {
+		return ((float)Math.floor(c / resolution) + 0.5f) * resolution;
+	}
+
 	private float decode(long mpi, Point3D_F32 p, float extension, float resolution) {
 		final short f = (short)(extension / resolution);
 		final float value = p.x = (mpi & 0xFFFL) / 4096.0f;
@@ -111,4 +216,25 @@ public class MAVGCLOctoMap extends MAVOctoMap3D {
 		return value;
 	}
 
+	private static class GridBlock {
+
+		static final GridBlock CLEAR = new GridBlock();
+
+		final float  resolution;
+		final float  cz;
+		final long[] data;
+
+		GridBlock() {
+			this.resolution = 0;
+			this.cz         = 0;
+			this.data       = new long[0];
+		}
+
+		GridBlock(msg_msp_micro_grid grid) {
+			this.resolution = grid.resolution;
+			this.cz         = grid.cz;
+			this.data       = grid.data.clone();
+		}
+	}
+
 }
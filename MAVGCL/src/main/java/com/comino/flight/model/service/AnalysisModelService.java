@@ -35,9 +35,11 @@
 package com.comino.flight.model.service;
 
 import java.util.ArrayList;
-import java.util.ConcurrentModificationException;
-import java.util.LinkedList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.LockSupport;
 
 import org.mavlink.messages.MAV_CMD;
@@ -45,8 +47,10 @@ import org.mavlink.messages.MAV_CMD;
 import com.comino.flight.file.FileHandler;
 import com.comino.flight.log.ulog.ULogFromMAVLinkReader;
 import com.comino.flight.model.AnalysisDataModel;
+import com.comino.flight.model.AnalysisDataModelList;
 import com.comino.flight.model.AnalysisDataModelMetaData;
 import com.comino.flight.model.KeyFigureMetaData;
+import com.comino.flight.model.MSPExtractionPlan;
 import com.comino.flight.observables.StateProperties;
 import com.comino.flight.param.MAVGCLPX4Parameters;
 import com.comino.mavcom.control.IMAVController;
@@ -73,7 +77,7 @@ public class AnalysisModelService  {
 	public static  final int POST_COLLECTING    = 3;
 	public static  final int READING_HEADER     = 4;
 
-	private volatile List<AnalysisDataModel>      modelList   = null;
+	private volatile AnalysisDataModelList        modelList   = null;
 
 	private DataModel								  model   = null;
 	private ULogFromMAVLinkReader                   ulogger   = null;
@@ -98,6 +102,17 @@ public class AnalysisModelService  {
 
 	private CombinedConverter converter = null;
 
+	// Snapshots published by the MAVLink listener, consumed by the converter
+	private final SampleRing ring = new SampleRing(64);
+	private long next_sample_ns = 0;
+	private final EventTimeResampler.VehicleClock clock = new EventTimeResampler.VehicleClock();
+	private final EventTimeResampler resampler = new EventTimeResampler();
+	private long dropped_start  = 0;
+	private long overruns_start = 0;
+
+	// Key figures displayed by widgets, by widget
+	private final Map<Object,KeyFigureMetaData[]> demand = new ConcurrentHashMap<Object,KeyFigureMetaData[]>();
+
 	private final WorkQueue wq = WorkQueue.getInstance();
 
 	private AnimationTimer task = null;
@@ -122,7 +137,7 @@ public class AnalysisModelService  {
 		this.meta = AnalysisDataModelMetaData.getInstance();
 		this.listener = new ArrayList<ICollectorRecordingListener>();
 
-		this.modelList     = new ArrayList<AnalysisDataModel>(50000);
+		this.modelList     = new AnalysisDataModelList();
 		this.model         = control.getCurrentModel();
 		this.current       =  new AnalysisDataModel();
 		this.record        =  new AnalysisDataModel();
@@ -130,6 +145,11 @@ public class AnalysisModelService  {
 
 		this.ulogger = new ULogFromMAVLinkReader(control);
 
+		// Snapshot the model on the receive thread, which is the only one modifying it
+		control.addMAVLinkListener((o) -> {
+			publishSample();
+		});
+
 
 		state.getConnectedProperty().addListener((o,ov,nv) -> {
 			
@@ -185,7 +205,7 @@ public class AnalysisModelService  {
 	}
 
 	public AnalysisModelService(DataModel model) {
-		this.modelList     = new LinkedList<AnalysisDataModel>();
+		this.modelList     = new AnalysisDataModelList();
 		this.model         =  model;
 		this.current       =  new AnalysisDataModel();
 		this.state         = StateProperties.getInstance();
@@ -219,7 +239,7 @@ public class AnalysisModelService  {
 		setCollectorInterval(DEFAULT_INTERVAL_US);
 	}
 
-	public List<AnalysisDataModel> getModelList() {
+	public AnalysisDataModelList getModelList() {
 		return modelList;
 	}
 
@@ -282,6 +302,8 @@ public class AnalysisModelService  {
 			setDefaultCollectorInterval();
 			model.reset();
 			clear();
+			dropped_start  = ring.getDropped();
+			overruns_start = ring.getOverruns();
 			mode = COLLECTING;
 			task.start();
 			return true;
@@ -295,6 +317,34 @@ public class AnalysisModelService  {
 		return false;
 	}
 
+	/*
+	 * Samples lost since start of recording, because the converter did not keep up
+	 */
+	public long getDroppedSamples() {
+		return ring.getDropped() - dropped_start;
+	}
+
+	/*
+	 * Converter cycles since start of recording, that found more than one sample pending
+	 */
+	public long getOverruns() {
+		return ring.getOverruns() - overruns_start;
+	}
+
+	/*
+	 * RMS deviation (us) of the sample spacing from the collector interval while recording
+	 */
+	public float getSampleJitter_us() {
+		return resampler.getJitter_us();
+	}
+
+	/*
+	 * Number of sample gaps longer than EventTimeResampler.GAP_FACTOR intervals while recording
+	 */
+	public long getSampleGaps() {
+		return resampler.getGaps();
+	}
+
 	public void stop(int delay_sec) {
 		mode = POST_COLLECTING;
 		if(delay_sec > 0)
@@ -308,12 +358,67 @@ public class AnalysisModelService  {
 		mode = STOPPED;
 		clear();
 		list.forEach((e) -> {
-			e.calculateVirtualKeyFigures(meta);
 			modelList.add(e);
 		});
+		meta.getVirtualKeyFigureGraph().evaluate(modelList);
 		setCurrent(0);
 	}
 
+	/*
+	 * Takes over a completely loaded list, virtual key figures are expected
+	 * to be contained already.
+	 */
+	public void loadModelList(AnalysisDataModelList list) {
+		mode = STOPPED;
+		clear();
+		modelList.append(list);
+		setCurrent(0);
+	}
+
+	/*
+	 * Loads the chunks of the given key figures visible in x0..x1, if the
+	 * model list is paged from a file.
+	 */
+	public void prefetch(int x0, int x1, KeyFigureMetaData... kfs) {
+		if(!modelList.isPaged())
+			return;
+		final int[] slots = new int[kfs.length];
+		for(int i = 0; i < kfs.length; i++)
+			slots[i] = AnalysisDataModelMetaData.getSlot(kfs[i]);
+		modelList.prefetch(x0, x1, slots);
+	}
+
+	/*
+	 * Registers the key figures currently displayed by a widget, replacing its
+	 * previous ones. Log imports convert these eagerly and defer all others.
+	 */
+	public void setDemand(Object owner, KeyFigureMetaData... kfs) {
+		demand.put(owner, kfs.clone());
+	}
+
+	/*
+	 * Key figures displayed by any widget, null if none is registered
+	 */
+	public Set<KeyFigureMetaData> getDemand() {
+		if(demand.isEmpty())
+			return null;
+		final Set<KeyFigureMetaData> kfs = new HashSet<KeyFigureMetaData>();
+		demand.values().forEach((a) -> {
+			for(KeyFigureMetaData kf : a)
+				if(kf != null && kf.hash != 0)
+					kfs.add(kf);
+		});
+		return kfs;
+	}
+
+	/*
+	 * Number of column chunks a paged model list may keep in memory, a quarter
+	 * of the available heap.
+	 */
+	public static int getMaxResidentChunks() {
+		return (int)Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 4 / (AnalysisDataModelList.CHUNK_SIZE * 8));
+	}
+
 	public void reset() {
 		//setDefaultCollectorInterval();
 		mode = STOPPED;
@@ -401,7 +506,7 @@ public class AnalysisModelService  {
 
 	public long getTotalRecordingTimeMS() {
 		if(modelList.size()> 0)
-			return (modelList.get(modelList.size()-1).tms) / 1000;
+			return modelList.getTime(modelList.size()-1) / 1000;
 		else
 			return 0;
 	}
@@ -428,10 +533,52 @@ public class AnalysisModelService  {
 		state.getLogULOGProperty().set(false);
 	}
 
+	/*
+	 * Called on the MAVLink receive thread for each message. Publishes a
+	 * snapshot of the data model once per collector interval.
+	 */
+	private void publishSample() {
+
+		if(isReplaying)
+			return;
+
+		final long now = System.nanoTime();
+		if(now < next_sample_ns)
+			return;
+		final long interval_ns = collector_interval_us * 1000L;
+		next_sample_ns += interval_ns;
+		if(next_sample_ns < now)
+			next_sample_ns = now + interval_ns;
+
+		final SampleRing.Sample sample = ring.claim();
+		if(sample == null)
+			return;
+
+		final MSPExtractionPlan plan = meta.getMSPExtractionPlan();
+		if(sample.msp.length < plan.size())
+			sample.msp = new double[plan.size()];
+		sample.plan = plan;
+		plan.extract(model, sample.msp);
+
+		sample.ulog = ulogger.isLogging();
+		if(sample.ulog)
+			ulogger.extract(sample.ulg);
+
+		sample.msg = model.msg != null && model.msg.text != null ? model.msg : null;
+
+		// Event time: vehicle time of the ULog data if streamed, otherwise estimated from the boot time
+		if(sample.ulog && ulogger.getTimestamp() > 0)
+			sample.tms = ulogger.getTimestamp();
+		else
+			sample.tms = clock.toVehicleTime(now / 1000, model.sys.t_boot_ms);
+
+		ring.publish();
+	}
+
 	private class CombinedConverter implements Runnable {
 
-		long tms_start =0; long tms_last; long wait = 0;
-		float perf = 0; AnalysisDataModel m = null;
+		long tms_last = 0; boolean ulog_last = false;
+		float perf = 0;
 
 		@Override
 		public void run() {
@@ -459,9 +606,31 @@ public class AnalysisModelService  {
 						try { 	this.wait(); } catch (InterruptedException e) { }
 						LogTools.info("Combined Converter continued");
 					}
+					// Samples published before waiting are outdated
+					ring.clear();
+					clock.reset();
+					continue;
+				}
+
+				if(state.getReplayingProperty().get()) {
+					try { 	Thread.sleep(100); 	} catch (InterruptedException e) { 	}
+					continue;
+				}
+
+				// Recording consumes every sample in order, otherwise only the most recent one is of interest
+				final SampleRing.Sample sample = mode != STOPPED ? ring.poll() : ring.latest();
+				if(sample == null || !state.getInitializedProperty().get()) {
+					if(sample != null)
+						ring.release();
+					LockSupport.parkNanos(collector_interval_us * 250L);
 					continue;
 				}
 
+				// Fill the grid up to this sample with the state before it
+				if(mode!=STOPPED && !isFirst && resampler.isStarted()) {
+					if(resampler.advance(sample.tms, ulog_last ? record : current, modelList) > 0)
+						state.getRecordingAvailableProperty().set(false);
+				}
 
 				current.setValue("MAVGCLACC", perf);
 				current.setValue("MAVGCLNET", control.getTransferRate()/1024f);
@@ -472,7 +641,6 @@ public class AnalysisModelService  {
 						state.getLogLoadedProperty().set(false);
 						state.getRecordingProperty().set(COLLECTING);
 					});
-					tms_start = System.currentTimeMillis() * 1000;
 				}
 
 				if((mode==STOPPED || !model.sys.isSensorAvailable(Status.MSP_IMU_AVAILABILITY)) && old_mode != STOPPED) {
@@ -482,87 +650,56 @@ public class AnalysisModelService  {
 
 				old_mode = mode;
 
-				current.msg = null; wait = System.nanoTime();
-
-				if(state.getReplayingProperty().get()) {
-					try { 	Thread.sleep(100); 	} catch (InterruptedException e) { 	}
-					continue;
-				}
-
-				if(!state.getInitializedProperty().get())
-					continue;
-
 				if(state.getCurrentUpToDate().getValue() && !state.getLogLoadedProperty().get()) {
-					try {
-						current.setValues(KeyFigureMetaData.MSP_SOURCE,model,meta);
-						current.calculateVirtualKeyFigures(meta);
-					} catch(ConcurrentModificationException c) { }
+					sample.plan.apply(sample.msp, current);
+					current.calculateVirtualKeyFigures(meta);
 				}
 
-
-				if(ulogger.isLogging()) {
-					//	record.setValues(KeyFigureMetaData.MSP_SOURCE,model,meta);
-					record.setValues(KeyFigureMetaData.ULG_SOURCE,ulogger.getData(), meta);
+				if(sample.ulog) {
+					record.set(sample.ulg);
 					record.calculateVirtualKeyFigures(meta);
 				}
 
-				if(model.msg != null && model.msg.text!=null) {
-					current.msg = model.msg;
-					record.msg  = model.msg;
-				} else {
-					current.msg = null; record.msg = null;
-				}
+				current.msg = sample.msg;
+				record.msg  = sample.msg;
 
 				converter_running = true;
 
 
-				if(mode!=STOPPED) {
-
-					// Skip first
-					if(!isFirst) {
-
-						if(ulogger.isLogging())
-							m = (AnalysisDataModel)record.clone();
-						else
-							m = (AnalysisDataModel)current.clone();
-
-
-						m.tms = System.currentTimeMillis() * 1000 - tms_start;
-						m.dt_sec = m.tms / 1e6f;
-						modelList.add(m);
+				perf = ( sample.tms - tms_last ) / 1e3f;
+				tms_last  = sample.tms;
+				ulog_last = sample.ulog;
 
+				if(mode!=STOPPED) {
 
-						state.getRecordingAvailableProperty().set(false);
-
-						perf = ( m.tms - tms_last ) / 1e3f;
-						tms_last = m.tms;
-
-					} else
-						tms_last = System.nanoTime() / 1000 - tms_start;
+					// Skip first, the grid is anchored at the second sample
+					if(isFirst)
+						resampler.stop();
+					else if(!resampler.isStarted())
+						resampler.start(sample.tms, collector_interval_us);
 					isFirst = false;
+					ring.release();
 				} else {
 
+					ring.release();
+
+					if(resampler.isStarted()) {
+						resampler.stop();
+						LogTools.info(String.format("Collector: %d rows, jitter %.0fus, %d gaps (max %dms), %d dropped, %d overruns",
+								modelList.size(), resampler.getJitter_us(), resampler.getGaps(), resampler.getMaxGap_us()/1000,
+								getDroppedSamples(), getOverruns()));
+					}
+
 					state.getRecordingAvailableProperty().set(modelList.size()>0);
 
 					current.tms = System.currentTimeMillis() * 1000 ;
-					perf = ( current.tms - tms_last ) / 1e3f;
-					tms_last = current.tms;
 
 					// Slow down conversion if not recording or armed
 					if(!state.getArmedProperty().get()) {
-						//						while((200000000  - (System.nanoTime()-wait)) > 0) {
-						//							LockSupport.parkNanos(1000000);
-						//						}
-						LockSupport.parkNanos(100000000 - (System.nanoTime()-wait) - 2500000 );
+						LockSupport.parkNanos(100000000 - 2500000 );
 						continue;
 					}
 				}
-
-				//				while((collector_interval_us*1000 - (System.nanoTime()-wait)) > 0) {
-				//					LockSupport.parkNanos(100000);
-				//				}
-
-				LockSupport.parkNanos(collector_interval_us*1000 - (System.nanoTime()-wait) - 3000000 );
 			}
 		}
 	}
@@ -0,0 +1,213 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017,2018 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+package com.comino.flight.model.service;
+
+import com.comino.flight.model.AnalysisDataModel;
+import com.comino.flight.model.AnalysisDataModelList;
+import com.comino.mavcom.model.segment.LogMessage;
+
+/*
+ * Resamples event timestamped samples onto an exact grid of the collector
+ * interval. Rows are written for every grid point before the timestamp of
+ * the next sample, holding the last state (causal zero order hold), so that
+ * row index and time are strictly related by index * interval.
+ *
+ * Spacing of the incoming samples is tracked as jitter (RMS deviation from
+ * the interval) and gaps (spacing above GAP_FACTOR intervals).
+ */
+
+public class EventTimeResampler {
+
+	public static final int  GAP_FACTOR       = 3;
+
+	// Time jumps beyond are considered as a change of the time base, the grid is re-anchored
+	private static final long MAX_GAP_US      = 10_000_000;
+
+	private long interval_us = AnalysisModelService.DEFAULT_INTERVAL_US;
+	private long t_start     = 0;
+	private long t_next      = 0;
+	private long t_last      = -1;
+
+	private long   samples    = 0;
+	private long   gaps       = 0;
+	private long   resyncs    = 0;
+	private long   max_gap_us = 0;
+	private double jitter_sq  = 0;
+
+	/*
+	 * Anchors the grid at the given event time
+	 */
+	public void start(long t_us, int interval_us) {
+		this.interval_us = interval_us;
+		this.t_start = t_us;
+		this.t_next  = t_us;
+		this.t_last  = t_us;
+		samples = 0; gaps = 0; resyncs = 0; max_gap_us = 0; jitter_sq = 0;
+	}
+
+	public boolean isStarted() {
+		return t_last >= 0;
+	}
+
+	public void stop() {
+		t_last = -1;
+	}
+
+	/*
+	 * Adds rows for all grid points before t_us to the list, taking the values
+	 * of the model. Must be called before the model is updated with the sample
+	 * of time t_us.
+	 *
+	 * Returns the number of rows added.
+	 */
+	public int advance(long t_us, AnalysisDataModel model, AnalysisDataModelList list) {
+
+		final long dt = t_us - t_last;
+		if(dt <= 0 && dt > -MAX_GAP_US)
+			return 0;
+
+		if(dt < 0 || dt > MAX_GAP_US) {
+			// Time base changed (e.g. vehicle clock synchronized or reboot): continue the grid at t_us
+			t_start += t_us - t_next;
+			t_next   = t_us;
+			t_last   = t_us;
+			resyncs++;
+			return 0;
+		}
+
+		samples++;
+		jitter_sq += (double)(dt - interval_us) * (dt - interval_us);
+		if(dt > GAP_FACTOR * interval_us) {
+			gaps++;
+			if(dt > max_gap_us)
+				max_gap_us = dt;
+		}
+		t_last = t_us;
+
+		// A log message is an event, written to the first row only
+		final LogMessage msg = model.msg;
+		int n = 0;
+		while(t_next < t_us) {
+			list.add(model, t_next - t_start);
+			model.msg = null;
+			t_next += interval_us;
+			n++;
+		}
+		if(n == 0)
+			model.msg = msg;
+		return n;
+	}
+
+	/*
+	 * Time of the next grid row relative to the anchor
+	 */
+	public long getGridTime() {
+		return t_next - t_start;
+	}
+
+	public float getJitter_us() {
+		return samples > 0 ? (float)Math.sqrt(jitter_sq / samples) : 0;
+	}
+
+	public long getGaps() {
+		return gaps;
+	}
+
+	public long getMaxGap_us() {
+		return max_gap_us;
+	}
+
+	public long getResyncs() {
+		return resyncs;
+	}
+
+	/*
+	 * Estimates the vehicle time of host timestamps from the vehicle boot time
+	 * reported in the data model. The offset is the maximum of the observed
+	 * (vehicle - host) differences, as transport latency only decreases it,
+	 * and decays slowly to follow clock drift.
+	 *
+	 * The state is owned by the thread calling toVehicleTime(), other threads
+	 * only request a reset, which is applied with the next conversion.
+	 */
+	public static class VehicleClock {
+
+		// Allowed drift of the offset in us per us host time (100 ppm)
+		private static final double DRIFT = 1e-4;
+
+		private long offset_us  = 0;
+		private long boot_last  = -1;
+		private long host_last  = 0;
+		private volatile boolean synced  = false;
+		private volatile boolean reset_requested = false;
+
+		/*
+		 * Returns the vehicle time (us) for the host time, the host time itself
+		 * as long as no boot time was reported.
+		 */
+		public long toVehicleTime(long host_us, long t_boot_ms) {
+
+			if(reset_requested) {
+				reset_requested = false;
+				synced = false;
+				boot_last = -1;
+			}
+
+			if(t_boot_ms > 0 && t_boot_ms != boot_last) {
+				if(t_boot_ms < boot_last)
+					synced = false;           // vehicle rebooted
+				boot_last = t_boot_ms;
+
+				final long candidate = t_boot_ms * 1000L - host_us;
+				if(!synced) {
+					offset_us = candidate;
+					synced = true;
+				} else {
+					final long decayed = offset_us - (long)((host_us - host_last) * DRIFT);
+					offset_us = Math.max(candidate, decayed);
+				}
+				host_last = host_us;
+			}
+			return synced ? host_us + offset_us : host_us;
+		}
+
+		public boolean isSynced() {
+			return synced;
+		}
+
+		public void reset() {
+			reset_requested = true;
+		}
+	}
+}
@@ -0,0 +1,155 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017,2018 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+package com.comino.flight.model.service;
+
+import com.comino.flight.model.AnalysisDataModel;
+import com.comino.flight.model.MSPExtractionPlan;
+import com.comino.mavcom.model.segment.LogMessage;
+
+/*
+ * Lock-free single producer / single consumer ring of pre-allocated samples.
+ * The MAVLink listener thread claims a sample, fills it with a consistent
+ * snapshot of the data model and publishes it; the converter thread polls
+ * and releases it. Publication and release are ordered by the volatile
+ * head and tail sequences, no locks are taken on either side.
+ */
+
+public class SampleRing {
+
+	public static class Sample {
+
+		public MSPExtractionPlan plan = null;
+		public double[]          msp  = new double[0];
+		public AnalysisDataModel ulg  = new AnalysisDataModel();
+		public boolean           ulog = false;
+		public LogMessage        msg  = null;
+		public long              tms  = 0;
+
+	}
+
+	private final Sample[] samples;
+	private final int      mask;
+
+	// written by the producer only
+	private volatile long head     = 0;
+	private volatile long dropped  = 0;
+
+	// written by the consumer only
+	private volatile long tail     = 0;
+	private volatile long overruns = 0;
+
+	public SampleRing(int capacity) {
+		int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+		this.samples = new Sample[size];
+		this.mask    = size - 1;
+		for(int i = 0; i < size; i++)
+			samples[i] = new Sample();
+	}
+
+	/*
+	 * Producer: returns the next free sample or null if the consumer did not
+	 * keep up. The sample is dropped and counted then.
+	 */
+	public Sample claim() {
+		final long h = head;
+		if(h - tail >= samples.length) {
+			dropped = dropped + 1;
+			return null;
+		}
+		return samples[(int)(h & mask)];
+	}
+
+	/*
+	 * Producer: makes the claimed sample visible to the consumer
+	 */
+	public void publish() {
+		head = head + 1;
+	}
+
+	/*
+	 * Consumer: returns the oldest published sample or null. Counts an overrun
+	 * if more than one sample is pending, i.e. the consumer lags behind.
+	 */
+	public Sample poll() {
+		final long t = tail;
+		final long h = head;
+		if(t == h)
+			return null;
+		if(h - t > 1)
+			overruns = overruns + 1;
+		return samples[(int)(t & mask)];
+	}
+
+	/*
+	 * Consumer: skips all but the most recent published sample and returns it
+	 * or null.
+	 */
+	public Sample latest() {
+		final long h = head;
+		if(tail == h)
+			return null;
+		tail = h - 1;
+		return samples[(int)((h - 1) & mask)];
+	}
+
+	/*
+	 * Consumer: returns the polled sample to the producer
+	 */
+	public void release() {
+		tail = tail + 1;
+	}
+
+	/*
+	 * Consumer: discards all pending samples
+	 */
+	public void clear() {
+		tail = head;
+	}
+
+	public int pending() {
+		return (int)(head - tail);
+	}
+
+	public int capacity() {
+		return samples.length;
+	}
+
+	public long getDropped() {
+		return dropped;
+	}
+
+	public long getOverruns() {
+		return overruns;
+	}
+}
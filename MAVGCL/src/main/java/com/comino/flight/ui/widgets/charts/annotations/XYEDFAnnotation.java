@@ -107,8 +107,10 @@ public class XYEDFAnnotation  implements XYAnnotation {
 		float zp = (float)model.getValue("LPOSZ");  zp = ((int)(zp / resolution)) * resolution;
 	
 		mapo.setTo(xp,yp,zp,0);
-		map.updateESDF(mapo);
-		edf_map  = map.getLocalEDF2D().getESDF2DMap();
+		synchronized(map) {
+			map.updateESDF(mapo);
+			edf_map  = map.getLocalEDF2D().getESDF2DMap();
+		}
 
 
 	}
@@ -39,6 +39,7 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 import com.comino.flight.model.AnalysisDataModel;
+import com.comino.flight.model.map.IOctoMapListener;
 import com.comino.flight.model.map.MAVGCLOctoMap;
 import com.comino.flight.model.service.AnalysisModelService;
 import com.comino.mavcom.control.IMAVController;
@@ -69,6 +70,7 @@ public class XYGridAnnotation  implements XYAnnotation {
 	private AnalysisDataModel           model;
 
 	private float                        scale = 10.0f;
+	private volatile boolean             changed = true;
 
 
 	public XYGridAnnotation() {
@@ -88,13 +90,27 @@ public class XYGridAnnotation  implements XYAnnotation {
 
 	public void setScale(float scale) {
 		this.scale = scale;
+		this.changed = true;
 	}
 
 	public void setController(IMAVController control) {
 		this.map   = MAVGCLOctoMap.getInstance(control);
 		this.boundingBox = new MAVSimpleBoundingBox(map.getResolution(),16);
 		this.model = AnalysisModelService.getInstance().getCurrent();
-		
+
+		/* the slice is queried again only after the ingest worker published a change-set */
+		this.map.addListener(new IOctoMapListener() {
+
+			@Override
+			public void changed(Point4D_F32[] changes) {
+				changed = true;
+			}
+
+			@Override
+			public void cleared() {
+				changed = true;
+			}
+		});
 	}
 
 	public  void invalidate(boolean enable) {
@@ -103,6 +119,7 @@ public class XYGridAnnotation  implements XYAnnotation {
 
 	public void clear() {
 		blocks.clear();
+		changed = true;
 		gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
 	}
 
@@ -119,9 +136,13 @@ public class XYGridAnnotation  implements XYAnnotation {
 		float yp = (float)model.getValue("LPOSY");  yp = ((int)(yp / resolution)) * resolution;
 		float zp = (float)model.getValue("LPOSZ");  zp = ((int)(zp / resolution)) * resolution;
 	
+		if(!changed && mapo.x == xp && mapo.y == yp && mapo.z == zp)
+			return;
+		changed = false;
+
 		mapo.setTo(xp,yp,zp,0f);
 		boundingBox.set(mapo,scale*5.0f,0.1f);
-		List<Long> set = map.getLeafsInBoundingBoxEncoded(boundingBox);
+		List<Long> set = map.getLeafsInBoundingBox(boundingBox);
 		
 		blocks.keySet().retainAll(set);
 
@@ -36,6 +36,7 @@ package com.comino.flight.ui.widgets.charts.line;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.locks.LockSupport;
 import java.util.prefs.Preferences;
@@ -46,6 +47,7 @@ import com.comino.flight.FXMLLoadHelper;
 import com.comino.flight.MainApp;
 import com.comino.flight.file.KeyFigurePreset;
 import com.comino.flight.model.AnalysisDataModel;
+import com.comino.flight.model.AnalysisDataModelList;
 import com.comino.flight.model.AnalysisDataModelMetaData;
 import com.comino.flight.model.KeyFigureMetaData;
 import com.comino.flight.model.service.AnalysisModelService;
@@ -57,13 +59,15 @@ import com.comino.flight.ui.widgets.charts.IChartSyncControl;
 import com.comino.flight.ui.widgets.charts.annotations.DashBoardAnnotation;
 import com.comino.flight.ui.widgets.charts.annotations.LineMessageAnnotation;
 import com.comino.flight.ui.widgets.charts.annotations.ModeAnnotation;
-import com.comino.flight.ui.widgets.charts.utils.XYCollections;
-import com.comino.flight.ui.widgets.charts.utils.XYDataPool;
-import com.comino.flight.ui.widgets.charts.utils.XYObservableListWrapper;
+import com.comino.flight.ui.widgets.charts.utils.FrameWorker;
+import com.comino.flight.ui.widgets.charts.utils.TraceFrame;
+import com.comino.flight.ui.widgets.charts.utils.WindowStatistics;
 import com.comino.jfx.extensions.MovingAxis;
 import com.comino.jfx.extensions.SectionLineChart;
+import com.comino.jfx.extensions.TraceCanvas;
 import com.comino.jfx.extensions.XYAnnotations.Layer;
 import com.comino.mavcom.control.IMAVController;
+import com.comino.mavcom.model.segment.LogMessage;
 import com.comino.mavutils.workqueue.WorkQueue;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -86,7 +90,6 @@ import javafx.scene.Cursor;
 import javafx.scene.Group;
 import javafx.scene.SnapshotParameters;
 import javafx.scene.chart.LineChart.SortingPolicy;
-import javafx.scene.chart.XYChart.Data;
 import javafx.scene.chart.NumberAxis;
 import javafx.scene.chart.XYChart;
 import javafx.scene.control.Button;
@@ -183,6 +186,17 @@ public class LineChartWidget extends BorderPane implements IChartControl, IColle
 
 
 	private final AnalysisDataModelMetaData meta = AnalysisDataModelMetaData.getInstance();
+
+	// Displayed value range of the traces
+	private double y_min = Double.NaN;
+	private double y_max = Double.NaN;
+
+	// Used by the frame worker only
+	private final WindowStatistics[] stats = { new WindowStatistics(), new WindowStatistics(), new WindowStatistics() };
+
+	private final FrameWorker<TraceFrame> worker = new FrameWorker<TraceFrame>(this::swapFrame);
+	private TraceFrame frame = null;
+	private int generation = 0;
 	private final AnalysisModelService      dataService = AnalysisModelService.getInstance();
 	private final Preferences               prefs = MAVPreferences.getInstance();
 
@@ -206,7 +220,6 @@ public class LineChartWidget extends BorderPane implements IChartControl, IColle
 
 	private final List<IChartSyncControl> syncCharts;
 
-	private XYDataPool pool = null;
 	private Group chartArea = null;
 
 	private boolean refreshRequest = false;
@@ -224,8 +237,6 @@ public class LineChartWidget extends BorderPane implements IChartControl, IColle
 
 		FXMLLoadHelper.load(this, "LineChartWidget.fxml");
 
-		this.pool  = new XYDataPool();
-
 		dataService.registerListener(this);
 		syncCharts.add(this);
 	}
@@ -251,13 +262,25 @@ public class LineChartWidget extends BorderPane implements IChartControl, IColle
 		linechart.setBackground(null);
 		linechart.setCreateSymbols(false);
 
-		series1 = new XYChart.Series<Number,Number>(XYCollections.<Data<Number,Number>>observableArrayList());
+		/* Series provide name, legend and line style only, the traces are drawn from the model list */
+		series1 = new XYChart.Series<Number,Number>(FXCollections.observableArrayList());
 		linechart.getData().add(series1);
-		series2 = new XYChart.Series<Number,Number>(XYCollections.<Data<Number,Number>>observableArrayList());
+		series2 = new XYChart.Series<Number,Number>(FXCollections.observableArrayList());
 		linechart.getData().add(series2);
-		series3 = new XYChart.Series<Number,Number>(XYCollections.<Data<Number,Number>>observableArrayList());
+		series3 = new XYChart.Series<Number,Number>(FXCollections.observableArrayList());
 		linechart.getData().add(series3);
 
+		final TraceCanvas traces = linechart.getTraces();
+		traces.add((x0, x1, m4) -> frame != null && frame.reduce(0, x0, x1, m4), series1);
+		traces.add((x0, x1, m4) -> frame != null && frame.reduce(1, x0, x1, m4), series2);
+		traces.add((x0, x1, m4) -> frame != null && frame.reduce(2, x0, x1, m4), series3);
+
+		/* frames are reduced to the plot width */
+		xAxis.widthProperty().addListener((o, ov, nv) -> {
+			if(frame != null && dataService.getModelList().size() > 0)
+				requestFrame(false, current_x0_pt, current_x1_pt);
+		});
+
 		annotations.setSelected(true);
 		annotations.selectedProperty().addListener((observable, oldvalue, newvalue) -> {
 			updateRequest();
@@ -501,9 +524,7 @@ public class LineChartWidget extends BorderPane implements IChartControl, IColle
 
 					if((System.currentTimeMillis()-dashboard_update_tms)>100) {
 
-						setDashboardData(dashboard1,type1,x0,x1);
-						setDashboardData(dashboard2,type2,x0,x1);
-						setDashboardData(dashboard3,type3,x0,x1);
+						requestFrame(true, x0, x1);
 
 						dashboard_update_tms = System.currentTimeMillis();
 					}
@@ -572,6 +593,7 @@ public class LineChartWidget extends BorderPane implements IChartControl, IColle
 				}
 				type1 = nv;
 				prefs.putInt(MAVPreferences.LINECHART_FIG_1+id,nv.hash);
+				dataService.setDemand(this, type1, type2, type3);
 				updateRequest();
 				//	updateRequest();
 			}
@@ -591,6 +613,7 @@ public class LineChartWidget extends BorderPane implements IChartControl, IColle
 				}
 				type2 = nv;
 				prefs.putInt(MAVPreferences.LINECHART_FIG_2+id,nv.hash);
+				dataService.setDemand(this, type1, type2, type3);
 				updateRequest();
 			}
 		});
@@ -609,6 +632,7 @@ public class LineChartWidget extends BorderPane implements IChartControl, IColle
 				}
 				type3 = nv;
 				prefs.putInt(MAVPreferences.LINECHART_FIG_3+id,nv.hash);
+				dataService.setDemand(this, type1, type2, type3);
 				updateRequest();
 				//updateGraph(true,0);
 			}
@@ -701,6 +725,7 @@ public class LineChartWidget extends BorderPane implements IChartControl, IColle
 			type1 = setKeyFigure(cseries1,preset.getKeyFigure(0));
 			type2 = setKeyFigure(cseries2,preset.getKeyFigure(1));
 			type3 = setKeyFigure(cseries3,preset.getKeyFigure(2));
+			dataService.setDemand(this, type1, type2, type3);
 			group.getSelectionModel().select(preset.getGroup());
 			bckgmode.getSelectionModel().select(preset.getAnnotation());
 			replay.set(0); updateRequest();
@@ -855,6 +880,7 @@ public class LineChartWidget extends BorderPane implements IChartControl, IColle
 		if(k2!=null) type2 = k2;
 		KeyFigureMetaData k3 = meta.getKeyFigureMap().get(prefs.getInt(MAVPreferences.LINECHART_FIG_3+id,0));
 		if(k3!=null) type3 = k3;
+		dataService.setDemand(this, type1, type2, type3);
 
 		meta.addObserver((o,e) -> {
 
@@ -1024,12 +1050,11 @@ public class LineChartWidget extends BorderPane implements IChartControl, IColle
 	}
 
 	private void updateGraph(boolean refresh, int max_x0) {
-		float dt_sec = 0; AnalysisDataModel m =null; boolean set_bounds = false; double v1 ; double v2; double v3;
+		float dt_sec = 0; AnalysisDataModel m =null; LogMessage msg = null; boolean set_bounds = false;
 		int max_x = 0; long slot_tms = 0;  
 
 		final int size               = dataService.getModelList().size();
 		final int collector_interval = dataService.getCollectorInterval_ms();
-		final int set_length         = resolution_ms/collector_interval;
 
 		if(isDisabled()) {
 			return;
@@ -1055,21 +1080,14 @@ public class LineChartWidget extends BorderPane implements IChartControl, IColle
 			current_x_pt  = current_x0_pt;
 			current_x1_pt = current_x0_pt + (int)(timeframe * 1000f / dataService.getCollectorInterval_ms());
 			setXAxisBounds(current_x0_pt,current_x1_pt);
+			dataService.prefetch(current_x0_pt, current_x1_pt, type1, type2, type3);
 
-			mode.clear();
+			/* frames requested before are outdated */
+			generation++;
+			worker.cancel();
 
-			if(size==0) {
-				if(series1.getData().size()>0)
-					series1.getData().remove(0,series1.getData().size()-1);
-				if(series2.getData().size()>0)
-					series2.getData().remove(0,series2.getData().size()-1);
-				if(series3.getData().size()>0)
-					series3.getData().remove(0,series3.getData().size()-1);
-			} else {
-				series1.getData().clear();
-				series2.getData().clear();
-				series3.getData().clear();
-			}
+			mode.clear();
+			y_min = Double.NaN; y_max = Double.NaN;
 
 			linechart.getAnnotations().clearAnnotations(Layer.FOREGROUND);
 
@@ -1097,8 +1115,11 @@ public class LineChartWidget extends BorderPane implements IChartControl, IColle
 
 		}
 
-		if(size <=0)
+		if(size <=0) {
+			frame = null;
+			linechart.invalidateTraces();
 			return;
+		}
 
 		if(current_x_pt<size ) {
 
@@ -1113,19 +1134,12 @@ public class LineChartWidget extends BorderPane implements IChartControl, IColle
 				max_x = size;
 			}
 
-			if(dash.isSelected() && size > 0 && ( (System.currentTimeMillis()-dashboard_update_tms) > 1000 )|| refresh ) {
+			final boolean statistics = dash.isSelected() && ((System.currentTimeMillis()-dashboard_update_tms) > 1000 || refresh);
+			if(statistics)
 				dashboard_update_tms = System.currentTimeMillis();
-				setDashboardData(dashboard1,type1, current_x0_pt,current_x1_pt);
-				setDashboardData(dashboard2,type2, current_x0_pt,current_x1_pt);
-				setDashboardData(dashboard3,type3, current_x0_pt,current_x1_pt);
-			}
 
 			slot_tms = System.currentTimeMillis();
 
-			if(type1.hash!=0) ((XYObservableListWrapper<?>)series1.getData()).begin();
-			if(type2.hash!=0) ((XYObservableListWrapper<?>)series2.getData()).begin();
-			if(type3.hash!=0) ((XYObservableListWrapper<?>)series3.getData()).begin();
-
 
 			while(current_x_pt<max_x && size>0 && current_x_pt< dataService.getModelList().size() &&
 					((System.currentTimeMillis()-slot_tms) < REFRESH_SLOT || refreshRequest)) {
@@ -1133,50 +1147,28 @@ public class LineChartWidget extends BorderPane implements IChartControl, IColle
 				if(current_x_pt >= dataService.getModelList().size())
 					continue;
 
-				m = dataService.getModelList().get(current_x_pt);
+				/* Row views are only created for plotted points */
+				msg = dataService.getModelList().getMessage(current_x_pt);
 				dt_sec = current_x_pt *  collector_interval / 1000f;
 
-				if(m.msg!=null && current_x_pt > 0 && m.msg!=null && m.msg.text!=null
+				if(msg!=null && current_x_pt > 0 && msg.text!=null
 						&& ( type1.hash!=0 || type2.hash!=0 || type3.hash!=0)
 						&& display_annotations) {
 
 					if((current_x_pt - last_annotation_pos) > 400 || yoffset > 12)
 						yoffset=0;
 
-					linechart.getAnnotations().add(new LineMessageAnnotation(this,dt_sec,yoffset++, m.msg,
+					linechart.getAnnotations().add(new LineMessageAnnotation(this,dt_sec,yoffset++, msg,
 							(resolution_ms<300) && annotations.isSelected()),
 							Layer.FOREGROUND);
 					last_annotation_pos = current_x_pt;
 				}
 
 				if(((current_x_pt * collector_interval) % resolution_ms) == 0 && current_x_pt > 0) {
-
-
 					if( (type1.hash!=0 || type2.hash!=0 || type3.hash!=0)) {
+						m = dataService.getModelList().get(current_x_pt);
 						mode.updateModeData(dt_sec, m);
 					}
-
-					if(type1.hash!=0)  {						
-						v1 = determineValueFromRange(current_x_pt,set_length,type1,false);
-						if(current_x_pt > current_x1_pt && series1.getData().size()>0 )
-							series1.getData().remove(0);
-						series1.getData().add(pool.checkOut(dt_sec,v1));
-
-					} 
-					if(type2.hash!=0)  {
-
-						v2 = determineValueFromRange(current_x_pt,set_length,type2,false);
-						if(current_x_pt > current_x1_pt && series2.getData().size()>0 )
-							series2.getData().remove(0);
-						series2.getData().add(pool.checkOut(dt_sec,v2));
-
-					}
-					if(type3.hash!=0)  {
-						v3 = determineValueFromRange(current_x_pt,set_length,type3,false);
-						if(current_x_pt > current_x1_pt && series3.getData().size()>0 )
-							series3.getData().remove(0);
-						series3.getData().add(pool.checkOut(dt_sec,v3));
-					}
 				}
 
 
@@ -1190,52 +1182,68 @@ public class LineChartWidget extends BorderPane implements IChartControl, IColle
 				current_x_pt++;
 			}
 
-			if(type1.hash!=0) ((XYObservableListWrapper<?>)series1.getData()).end();
-			if(type2.hash!=0) ((XYObservableListWrapper<?>)series2.getData()).end();
-			if(type3.hash!=0) ((XYObservableListWrapper<?>)series3.getData()).end();
-
 			//			if(count > 2) System.out.println(count+" / "+current_x0_pt+" / "+x_save); count = 0;
 			if(set_bounds) {
 				setXAxisBounds(current_x0_pt,current_x1_pt);
 				set_bounds=false;
 			}
+			requestFrame(statistics, current_x0_pt, current_x1_pt);
 		}
+		linechart.invalidateTraces();
 		refreshRequest = false;
 	}
 
-	private void setDashboardData(DashBoardAnnotation d, KeyFigureMetaData kf, int x0, int x1) {
+	/*
+	 * Prepares the traces of the rows plotted so far, the value range and
+	 * optionally the statistics of rows s0..s1 on the frame worker
+	 */
+	private void requestFrame(boolean statistics, int s0, int s1) {
+		final int gen = generation;
+		final AnalysisDataModelList list = dataService.getModelList();
+		final int interval = dataService.getCollectorInterval_ms();
+		final KeyFigureMetaData[] kf = { type1, type2, type3 };
+		final int x0 = current_x0_pt; final int x1 = current_x1_pt; final int limit = current_x_pt;
+		final double t0 = xAxis.getLowerBound(); final double t1 = xAxis.getUpperBound();
+		final int columns = (int)Math.ceil(xAxis.getWidth());
+		final WindowStatistics[] window = statistics ? stats : null;
 
-		int count=0; double val=0;
-		double _min = Double.NaN; double _max = Double.NaN;
-		double _avg = 0; double mean = 0; double std=0;
+		worker.request(() -> new TraceFrame(gen, list, interval, kf, x0, x1, limit, t0, t1, columns, window, s0, s1));
+	}
 
-		if(kf== null || kf.hash==0)
+	private void swapFrame(TraceFrame f) {
+		if(f.getGeneration() != generation || isDisabled())
 			return;
+		frame = f;
+		setDashboardData(dashboard1, 0, type1);
+		setDashboardData(dashboard2, 1, type2);
+		setDashboardData(dashboard3, 2, type3);
+		updateYAxisRange();
+		linechart.invalidateTraces();
+	}
 
-		d.setKeyFigure(kf);
+	/*
+	 * Adjusts the auto ranged y axis to the values of the visible traces, as
+	 * the series themselves contain no data.
+	 */
+	private void updateYAxisRange() {
+		final double min = frame.getYMin(); final double max = frame.getYMax();
+		if(Double.isNaN(min) || !yAxis.isAutoRanging() || (min == y_min && max == y_max))
+			return;
+		y_min = min; y_max = max;
+		yAxis.invalidateRange(Arrays.<Number>asList(min, max));
+	}
 
-		for(int i =x0; i < x1 && i< dataService.getModelList().size();i++) {
-			val = dataService.getModelList().get(i).getValue(kf);
-			if(!Double.isNaN(val) && !Double.isInfinite(val)) {
-				if(val<_min || Double.isNaN(_min)) _min = val;
-				if(val>_max || Double.isNaN(_max)) _max = val;
-				_avg = _avg + val; count++;
-			}
-		}
+	private void setDashboardData(DashBoardAnnotation d, int trace, KeyFigureMetaData kf) {
 
-		d.setMinMax(_min, _max);
-		if(count>0) {
-			mean = _avg / count; std = 0;
-			for(int i = x0; i < x1 && i< dataService.getModelList().size();i++) {
-				val = dataService.getModelList().get(i).getValue(kf);
-				std = std + (val - mean) * (val - mean);
-			}
-			std = (float)Math.sqrt(std / count);
-			d.setAvg(mean, std);
-		}
+		if(kf== null || kf.hash==0 || !frame.hasStatistics(trace))
+			return;
 
-	}
+		d.setKeyFigure(kf);
+		d.setMinMax(frame.getMin(trace), frame.getMax(trace));
+		if(frame.getCount(trace)>0)
+			d.setAvg(frame.getMean(trace), frame.getStdDev(trace));
 
+	}
 
 	private  void setXAxisBounds(int lower_pt, int upper_pt) {
 		double tick = timeframe/6;
@@ -1342,46 +1350,4 @@ public class LineChartWidget extends BorderPane implements IChartControl, IColle
 
 	}
 
-	/*
-	 * Determines spikes or average, if not all datapoints are reported.
-	 */
-	private double determineValueFromRange(int current_x, int length, KeyFigureMetaData m, boolean average) {
-
-		try {
-
-			final double v_current_x = dataService.getModelList().get(current_x).getValue(m);
-
-
-			if(dataService.getModelList().size() < length || Double.isNaN(v_current_x))
-				return Double.NaN;
-
-			if(length < 3)
-				return v_current_x;
-
-			double a = 0; double v;
-
-			if(average) {
-				a = v_current_x;
-				for(int i=current_x-length+1;i<current_x;i++)
-					a = a + dataService.getModelList().get(i).getValue(m);
-				return a / length;
-
-			} else {
-
-				int peak_index=current_x;
-				double max = Math.abs(v_current_x);
-
-				for(int i=current_x-length+1;i<current_x;i++) {
-					v = Math.abs(dataService.getModelList().get(i).getValue(m));
-					if(v>max && v != Float.NaN)
-						max = v; peak_index = i;
-				}
-				return dataService.getModelList().get(peak_index).getValue(m);
-			}
-
-		} catch(IndexOutOfBoundsException o) {
-			return Double.NaN;
-		}
-	}
-
 }
@@ -0,0 +1,120 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017,2018 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+
+package com.comino.flight.ui.widgets.charts.utils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import javafx.application.Platform;
+import us.ihmc.log.LogTools;
+
+/*
+ * Prepares frames of a chart on a worker thread. A request is a job which
+ * captures everything it needs from the FX thread; it runs on a small pool
+ * shared by all charts, at most one job of a chart at a time. Requests not
+ * started yet are replaced by newer ones. The latest frame is handed over to
+ * the FX thread, which only swaps it in; frames published while a handover
+ * is pending replace the previous one.
+ */
+
+public class FrameWorker<F> {
+
+	private static final ExecutorService pool;
+
+	static {
+		final AtomicInteger count = new AtomicInteger();
+		final int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+		pool = Executors.newFixedThreadPool(threads, r -> {
+			final Thread t = new Thread(r, "ChartWorker-" + count.incrementAndGet());
+			t.setDaemon(true);
+			t.setPriority(Thread.NORM_PRIORITY - 1);
+			return t;
+		});
+	}
+
+	private final AtomicReference<Supplier<F>> pending   = new AtomicReference<Supplier<F>>();
+	private final AtomicReference<F>           published = new AtomicReference<F>();
+	private final AtomicBoolean                running   = new AtomicBoolean();
+	private final Consumer<F>                  swap;
+
+	public FrameWorker(Consumer<F> swap) {
+		this.swap = swap;
+	}
+
+	public void request(Supplier<F> job) {
+		pending.set(job);
+		if(running.compareAndSet(false, true))
+			pool.execute(this::drain);
+	}
+
+	/*
+	 * Drops pending requests and published frames; a running job still publishes
+	 */
+	public void cancel() {
+		pending.set(null);
+		published.set(null);
+	}
+
+	private void drain() {
+		for(;;) {
+			final Supplier<F> job = pending.getAndSet(null);
+			if(job == null) {
+				running.set(false);
+				// a request may have arrived after the check but before the flag was reset
+				if(pending.get() == null || !running.compareAndSet(false, true))
+					return;
+				continue;
+			}
+			try {
+				final F frame = job.get();
+				if(frame != null && published.getAndSet(frame) == null)
+					Platform.runLater(this::handover);
+			} catch(Exception e) {
+				LogTools.error("Chart frame preparation failed: "+e);
+			}
+		}
+	}
+
+	private void handover() {
+		final F frame = published.getAndSet(null);
+		if(frame != null)
+			swap.accept(frame);
+	}
+}
@@ -0,0 +1,199 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017,2018 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+
+package com.comino.flight.ui.widgets.charts.utils;
+
+import com.comino.flight.model.AnalysisDataModelList;
+import com.comino.flight.model.AnalysisDataModelMetaData;
+import com.comino.flight.model.KeyFigureMetaData;
+import com.comino.jfx.extensions.TraceCanvas;
+
+/*
+ * Immutable frame of a line chart, prepared off the FX thread: per trace the
+ * M4 reduction of each pixel column, the value range of all traces and
+ * optionally the dashboard statistics of the window.
+ */
+
+public final class TraceFrame {
+
+	private static final int STAT_MIN   = 0;
+	private static final int STAT_MAX   = 1;
+	private static final int STAT_MEAN  = 2;
+	private static final int STAT_STD   = 3;
+	private static final int STAT_COUNT = 4;
+
+	private final int      generation;
+	private final double   t0;
+	private final double   dt;
+	private final int      columns;
+
+	private final double[][]  m4;
+	private final boolean[][] found;
+	private final double[][]  stats;
+
+	private double y_min = Double.NaN;
+	private double y_max = Double.NaN;
+
+	/*
+	 * Reduces the rows below limit_pt of the key figures to the given number of
+	 * columns between t0 and t1 (seconds), the value range is taken from rows
+	 * x0_pt..x1_pt. Statistics of rows s0_pt..s1_pt are only taken if window
+	 * statistics are passed, one per key figure; they must not be used by any
+	 * other thread.
+	 */
+	public TraceFrame(int generation, AnalysisDataModelList list, int interval_ms, KeyFigureMetaData[] kf,
+			int x0_pt, int x1_pt, int limit_pt, double t0, double t1, int columns,
+			WindowStatistics[] window, int s0_pt, int s1_pt) {
+
+		this.generation = generation;
+		this.columns    = Math.max(columns, 0);
+		this.t0         = t0;
+		this.dt         = columns > 0 ? (t1 - t0) / columns : 0;
+
+		this.m4    = new double[kf.length][];
+		this.found = new boolean[kf.length][];
+		this.stats = window != null ? new double[kf.length][] : null;
+
+		final double[] acc = new double[AnalysisDataModelList.SUMMARY_SIZE];
+		final double rows_per_sec = 1000.0 / interval_ms;
+		final int limit = Math.min(limit_pt, list.size());
+
+		for(int i = 0; i < kf.length; i++) {
+
+			if(kf[i] == null || kf[i].hash == 0)
+				continue;
+
+			final int slot = AnalysisDataModelMetaData.getSlot(kf[i]);
+
+			m4[i]    = new double[this.columns * 4];
+			found[i] = new boolean[this.columns];
+			for(int c = 0; c < this.columns; c++) {
+				final int r0 = Math.max((int)Math.ceil((t0 + c * dt) * rows_per_sec), 1);
+				final int r1 = Math.min((int)Math.ceil((t0 + (c + 1) * dt) * rows_per_sec), limit);
+				found[i][c] = reduce(list, slot, r0, r1, acc, m4[i], c * 4);
+			}
+
+			if(list.summarize(slot, Math.max(x0_pt, 1), Math.min(limit, x1_pt + 1), acc)
+					&& AnalysisDataModelList.getCount(acc) > 0) {
+				y_min = Double.isNaN(y_min) ? AnalysisDataModelList.getMin(acc) : Math.min(y_min, AnalysisDataModelList.getMin(acc));
+				y_max = Double.isNaN(y_max) ? AnalysisDataModelList.getMax(acc) : Math.max(y_max, AnalysisDataModelList.getMax(acc));
+			}
+
+			if(stats != null) {
+				final WindowStatistics w = window[i];
+				w.update(list, kf[i], s0_pt, s1_pt);
+				stats[i] = new double[] { w.getMin(), w.getMax(), w.getMean(), w.getStdDev(), w.getCount() };
+			}
+		}
+	}
+
+	public int getGeneration() {
+		return generation;
+	}
+
+	/*
+	 * Trace source: returns the column of the trace which starts at x0 (seconds)
+	 */
+	public boolean reduce(int trace, double x0, double x1, double[] m4) {
+		if(dt <= 0 || this.m4[trace] == null)
+			return false;
+		final int c = (int)Math.floor((x0 - t0) / dt + 0.5);
+		if(c < 0 || c >= columns || !found[trace][c])
+			return false;
+		System.arraycopy(this.m4[trace], c * 4, m4, 0, 4);
+		return true;
+	}
+
+	public double getYMin() {
+		return y_min;
+	}
+
+	public double getYMax() {
+		return y_max;
+	}
+
+	public boolean hasStatistics(int trace) {
+		return stats != null && stats[trace] != null;
+	}
+
+	public double getMin(int trace) {
+		return stats[trace][STAT_MIN];
+	}
+
+	public double getMax(int trace) {
+		return stats[trace][STAT_MAX];
+	}
+
+	public double getMean(int trace) {
+		return stats[trace][STAT_MEAN];
+	}
+
+	public double getStdDev(int trace) {
+		return stats[trace][STAT_STD];
+	}
+
+	public long getCount(int trace) {
+		return (long)stats[trace][STAT_COUNT];
+	}
+
+	/*
+	 * First, last, minimum and maximum of rows r0 <= row < r1 into m4 at offset
+	 */
+	private static boolean reduce(AnalysisDataModelList list, int slot, int r0, int r1, double[] acc, double[] m4, int offset) {
+
+		if(r0 >= r1)
+			return false;
+
+		final double first = list.getValue(r0, slot);
+
+		if(r1 - r0 == 1) {
+			for(int k = 0; k < 4; k++)
+				m4[offset + k] = first;
+			return true;
+		}
+
+		if(!list.summarize(slot, r0, r1, acc)) {
+			for(int k = 0; k < 4; k++)
+				m4[offset + k] = Double.NaN;
+			return true;
+		}
+
+		final double last = list.getValue(r1-1, slot);
+		m4[offset + TraceCanvas.MIN]   = AnalysisDataModelList.getMin(acc);
+		m4[offset + TraceCanvas.MAX]   = AnalysisDataModelList.getMax(acc);
+		m4[offset + TraceCanvas.FIRST] = Double.isNaN(first) ? m4[offset + TraceCanvas.MIN] : first;
+		m4[offset + TraceCanvas.LAST]  = Double.isNaN(last)  ? m4[offset + TraceCanvas.MAX] : last;
+		return true;
+	}
+}
@@ -0,0 +1,223 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017,2018 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+package com.comino.flight.ui.widgets.charts.utils;
+
+import com.comino.flight.model.AnalysisDataModelList;
+import com.comino.flight.model.AnalysisDataModelMetaData;
+import com.comino.flight.model.KeyFigureMetaData;
+
+/*
+ * Min, max, mean and standard deviation of one key figure over a window of
+ * rows, updated incrementally as the window slides forward: moments by
+ * Welford's method, min and max by monotonic deques of row indices.
+ *
+ * If the window jumps, the moments are taken from the summaries of the model
+ * list. Rows of the window which were not added incrementally since then are
+ * covered by the summaries for min and max as well.
+ */
+
+public class WindowStatistics {
+
+	private final double[] acc = new double[AnalysisDataModelList.SUMMARY_SIZE];
+
+	private AnalysisDataModelList list = null;
+	private int slot = -1;
+
+	private int x0   = 0;
+	private int x1   = 0;
+	private int base = 0;   // rows x0..base are not contained in the deques
+
+	private long   n    = 0;
+	private double mean = 0;
+	private double m2   = 0;
+
+	private double min  = Double.NaN;
+	private double max  = Double.NaN;
+
+	private final Deque min_q = new Deque();
+	private final Deque max_q = new Deque();
+
+	/*
+	 * Moves the window to rows x0..x1 (exclusive) of the key figure.
+	 */
+	public void update(AnalysisDataModelList list, KeyFigureMetaData kf, int x0, int x1) {
+		final int slot = AnalysisDataModelMetaData.getSlot(kf);
+
+		x1 = Math.min(x1, list.size());
+		x0 = Math.max(0, Math.min(x0, x1));
+
+		if(list != this.list || slot != this.slot || x0 < this.x0 || x1 < this.x1 || x0 > this.x1
+				|| this.x1 > list.size() || (x0 - this.x0) + (x1 - this.x1) > x1 - x0) {
+			this.list = list; this.slot = slot;
+			jump(x0, x1);
+		} else {
+			for(int i = this.x1; i < x1; i++)
+				add(i, list.getValue(i, slot));
+			for(int i = this.x0; i < x0; i++)
+				remove(list.getValue(i, slot));
+			this.x0 = x0; this.x1 = x1;
+			this.base = Math.max(base, x0);
+			min_q.removeBefore(x0);
+			max_q.removeBefore(x0);
+		}
+
+		min = min_q.isEmpty() ? Double.POSITIVE_INFINITY : min_q.firstValue();
+		max = max_q.isEmpty() ? Double.NEGATIVE_INFINITY : max_q.firstValue();
+		if(this.x0 < base && list.summarize(slot, this.x0, base, acc) && AnalysisDataModelList.getCount(acc) > 0) {
+			min = Math.min(min, AnalysisDataModelList.getMin(acc));
+			max = Math.max(max, AnalysisDataModelList.getMax(acc));
+		}
+		if(n == 0) {
+			min = Double.NaN; max = Double.NaN;
+		}
+	}
+
+	public void clear() {
+		list = null; slot = -1;
+		x0 = 0; x1 = 0; base = 0;
+		n = 0; mean = 0; m2 = 0;
+		min = Double.NaN; max = Double.NaN;
+		min_q.clear(); max_q.clear();
+	}
+
+	public long getCount() {
+		return n;
+	}
+
+	public double getMin() {
+		return min;
+	}
+
+	public double getMax() {
+		return max;
+	}
+
+	public double getMean() {
+		return n > 0 ? mean : Double.NaN;
+	}
+
+	public double getStdDev() {
+		return n > 0 ? Math.sqrt(m2 / n) : Double.NaN;
+	}
+
+	private void jump(int x0, int x1) {
+		this.x0 = x0; this.x1 = x1; this.base = x1;
+		min_q.clear(); max_q.clear();
+		n = 0; mean = 0; m2 = 0;
+		if(!list.summarize(slot, x0, x1, acc))
+			return;
+		n = AnalysisDataModelList.getCount(acc);
+		if(n > 0) {
+			mean = AnalysisDataModelList.getSum(acc) / n;
+			m2   = Math.max(0, AnalysisDataModelList.getSumOfSquares(acc) - AnalysisDataModelList.getSum(acc) * mean);
+		}
+	}
+
+	private void add(int row, double v) {
+		if(Double.isNaN(v))
+			return;
+		n++;
+		final double delta = v - mean;
+		mean += delta / n;
+		m2   += delta * (v - mean);
+
+		while(!min_q.isEmpty() && min_q.lastValue() >= v)
+			min_q.removeLast();
+		min_q.add(row, v);
+		while(!max_q.isEmpty() && max_q.lastValue() <= v)
+			max_q.removeLast();
+		max_q.add(row, v);
+	}
+
+	private void remove(double v) {
+		if(Double.isNaN(v) || n == 0)
+			return;
+		if(--n == 0) {
+			mean = 0; m2 = 0;
+			return;
+		}
+		final double delta = v - mean;
+		mean -= delta / n;
+		m2    = Math.max(0, m2 - delta * (v - mean));
+	}
+
+	/* Ring buffer of row indices and their values */
+	private static class Deque {
+
+		private int[]    rows   = new int[64];
+		private double[] values = new double[64];
+		private int head = 0;
+		private int size = 0;
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+
+		double firstValue() {
+			return values[head];
+		}
+
+		double lastValue() {
+			return values[(head + size - 1) & (rows.length - 1)];
+		}
+
+		void add(int row, double v) {
+			if(size == rows.length) {
+				final int[] r = new int[size * 2]; final double[] d = new double[size * 2];
+				for(int i = 0; i < size; i++) {
+					r[i] = rows[(head + i) & (rows.length - 1)];
+					d[i] = values[(head + i) & (rows.length - 1)];
+				}
+				rows = r; values = d; head = 0;
+			}
+			final int i = (head + size++) & (rows.length - 1);
+			rows[i] = row; values[i] = v;
+		}
+
+		void removeLast() {
+			size--;
+		}
+
+		void removeBefore(int row) {
+			while(size > 0 && rows[head] < row) {
+				head = (head + 1) & (rows.length - 1);
+				size--;
+			}
+		}
+
+		void clear() {
+			head = 0; size = 0;
+		}
+	}
+}
@@ -0,0 +1,192 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017,2018 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+
+package com.comino.flight.ui.widgets.charts.utils;
+
+import com.comino.flight.model.AnalysisDataModelList;
+import com.comino.flight.model.AnalysisDataModelMetaData;
+import com.comino.flight.model.KeyFigureMetaData;
+
+/*
+ * Immutable frame of a XY chart, prepared off the FX thread: the rotated
+ * points of both series for the plotted rows from..to and optionally the
+ * statistics of the window.
+ */
+
+public final class XYFrame {
+
+	private final int generation;
+	private final int from;
+	private final int to;
+
+	private final int[]    rows;
+	private final double[] p1;   // x,y pairs of series 1, null if not selected
+	private final double[] p2;
+
+	private final double stddev1;
+	private final double stddev2;
+	private final boolean statistics;
+
+	/*
+	 * Takes the rows from..to (exclusive) falling on the resolution. Key figures
+	 * are x and y of series 1 and 2; the offset is subtracted from series 2.
+	 * The statistics are only updated if passed; they must not be updated by
+	 * any other thread.
+	 */
+	public XYFrame(int generation, AnalysisDataModelList list, int interval_ms, int resolution_ms,
+			KeyFigureMetaData[] kf, int from, int to, double offset_x, double offset_y,
+			double rotation_rad, double center_x, double center_y,
+			XYStatistics s1, XYStatistics s2, int x0_pt, int x1_pt) {
+
+		this.generation = generation;
+		this.from       = from;
+		this.to         = Math.max(from, Math.min(to, list.size()));
+
+		int count = 0;
+		for(int r = this.from; r < this.to; r++)
+			if(((r * interval_ms) % resolution_ms) == 0)
+				count++;
+
+		final boolean show1 = kf[0].hash != 0 && kf[1].hash != 0;
+		final boolean show2 = kf[2].hash != 0 && kf[3].hash != 0;
+
+		this.rows = new int[count];
+		this.p1   = show1 ? new double[count * 2] : null;
+		this.p2   = show2 ? new double[count * 2] : null;
+
+		final int sx1 = show1 ? AnalysisDataModelMetaData.getSlot(kf[0]) : -1;
+		final int sy1 = show1 ? AnalysisDataModelMetaData.getSlot(kf[1]) : -1;
+		final int sx2 = show2 ? AnalysisDataModelMetaData.getSlot(kf[2]) : -1;
+		final int sy2 = show2 ? AnalysisDataModelMetaData.getSlot(kf[3]) : -1;
+
+		final double[] p = new double[2];
+		for(int r = this.from, k = 0; r < this.to; r++) {
+			if(((r * interval_ms) % resolution_ms) != 0)
+				continue;
+			rows[k] = r;
+			if(show1) {
+				rotate(p, list.getValue(r, sx1), list.getValue(r, sy1), rotation_rad, center_x, center_y);
+				p1[2*k] = p[0]; p1[2*k+1] = p[1];
+			}
+			if(show2) {
+				rotate(p, list.getValue(r, sx2) - offset_x, list.getValue(r, sy2) - offset_y, rotation_rad, center_x, center_y);
+				p2[2*k] = p[0]; p2[2*k+1] = p[1];
+			}
+			k++;
+		}
+
+		this.statistics = s1 != null && s2 != null;
+		if(statistics) {
+			s1.getStatistics(x0_pt, x1_pt, list);
+			s2.getStatistics(x0_pt, x1_pt, list);
+			stddev1 = s1.stddev_xy;
+			stddev2 = s2.stddev_xy;
+		} else {
+			stddev1 = Double.NaN;
+			stddev2 = Double.NaN;
+		}
+	}
+
+	/*
+	 * Rotates a position by the heading around the center; x of the chart is
+	 * the y of the position.
+	 */
+	public static void rotate(double[] rotated, double posx, double posy, double heading_rad, double center_x, double center_y) {
+		if (heading_rad != 0) {
+			rotated[1] = (posx - center_x) * Math.cos(heading_rad) + (posy - center_y) * Math.sin(heading_rad)
+					+ center_x;
+			rotated[0] = -(posx - center_x) * Math.sin(heading_rad) + (posy - center_y) * Math.cos(heading_rad)
+					+ center_y;
+		} else {
+			rotated[1] = posx;
+			rotated[0] = posy;
+		}
+	}
+
+	public int getGeneration() {
+		return generation;
+	}
+
+	public int getFrom() {
+		return from;
+	}
+
+	public int getTo() {
+		return to;
+	}
+
+	public int size() {
+		return rows.length;
+	}
+
+	public int getRow(int k) {
+		return rows[k];
+	}
+
+	public boolean hasFirst() {
+		return p1 != null;
+	}
+
+	public boolean hasSecond() {
+		return p2 != null;
+	}
+
+	public double getX1(int k) {
+		return p1[2*k];
+	}
+
+	public double getY1(int k) {
+		return p1[2*k+1];
+	}
+
+	public double getX2(int k) {
+		return p2[2*k];
+	}
+
+	public double getY2(int k) {
+		return p2[2*k+1];
+	}
+
+	public boolean hasStatistics() {
+		return statistics;
+	}
+
+	public double getStdDev1() {
+		return stddev1;
+	}
+
+	public double getStdDev2() {
+		return stddev2;
+	}
+}
@@ -0,0 +1,217 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017,2018 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+
+package com.comino.flight.ui.widgets.charts.utils;
+
+import java.util.ArrayList;
+
+import javafx.collections.ObservableListBase;
+import javafx.scene.chart.XYChart;
+
+/*
+ * Fixed capacity ring of (x,y) pairs as data of a chart series. Values are
+ * kept in primitive arrays, the Data items shown by the chart are allocated
+ * once per slot and recycled with the slot, so neither rolling nor a refresh
+ * allocates new items.
+ *
+ * Changes between begin() and end() are reported as a single change: items
+ * dropped at the front and items appended at the end. Outside of a batch
+ * every modification is reported on its own.
+ */
+
+public class XYRingList extends ObservableListBase<XYChart.Data<Number,Number>> {
+
+	private final ArrayList<XYChart.Data<Number,Number>> removed = new ArrayList<XYChart.Data<Number,Number>>();
+
+	private XYChart.Data<Number,Number>[] nodes;
+	private double[] xs;
+	private double[] ys;
+
+	private int capacity = 0;
+	private int head     = 0;
+	private int size     = 0;
+
+	private int batch    = 0;
+	private int head0    = 0;
+	private int size0    = 0;
+	private int dropped  = 0;   // items of the batch start removed from the front
+	private int added    = 0;   // items appended during the batch still in the list
+
+	public XYRingList(int capacity) {
+		allocate(capacity);
+	}
+
+	/*
+	 * Clears the list if the capacity changes. Data items of the slots are kept.
+	 * Must not be called within a batch.
+	 */
+	public void setCapacity(int capacity) {
+		if(capacity == this.capacity)
+			return;
+		clear();
+		final XYChart.Data<Number,Number>[] old = nodes;
+		allocate(capacity);
+		System.arraycopy(old, 0, nodes, 0, Math.min(old.length, nodes.length));
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public void begin() {
+		if(batch++ > 0)
+			return;
+		head0 = head; size0 = size; dropped = 0; added = 0;
+	}
+
+	public void end() {
+		if(batch == 0 || --batch > 0)
+			return;
+		if(dropped == 0 && added == 0)
+			return;
+
+		removed.clear();
+		for(int k = 0; k < dropped; k++)
+			removed.add(nodes[(head0 + k) % capacity]);
+
+		beginChange();
+		if(dropped > 0)
+			nextRemove(0, removed);
+		if(added > 0)
+			nextAdd(size - added, size);
+		endChange();
+		removed.clear();
+	}
+
+	/*
+	 * Appends a pair, dropping the oldest one if the ring is full.
+	 */
+	public void add(double x, double y) {
+		begin();
+		if(size == capacity)
+			drop();
+		final int slot = (head + size++) % capacity;
+		xs[slot] = x; ys[slot] = y;
+		if(nodes[slot] == null)
+			nodes[slot] = new XYChart.Data<Number,Number>(x, Double.isNaN(y) ? 0 : y);
+		else
+			assign(nodes[slot], x, y);
+		added++;
+		end();
+	}
+
+	/*
+	 * Replaces the values of an existing pair in place. The chart is notified
+	 * by the item, the list itself does not change.
+	 */
+	public void set(int index, double x, double y) {
+		final int slot = slot(index);
+		xs[slot] = x; ys[slot] = y;
+		assign(nodes[slot], x, y);
+	}
+
+	public void removeFirst() {
+		if(size == 0)
+			return;
+		begin();
+		drop();
+		end();
+	}
+
+	@Override
+	public void clear() {
+		if(size == 0)
+			return;
+		begin();
+		final int from_batch = Math.min(added, size);
+		dropped += size - from_batch;
+		added   -= from_batch;
+		head = (head + size) % capacity;
+		size = 0;
+		end();
+	}
+
+	public double getX(int index) {
+		return xs[slot(index)];
+	}
+
+	public double getY(int index) {
+		return ys[slot(index)];
+	}
+
+	@Override
+	public XYChart.Data<Number,Number> get(int index) {
+		return nodes[slot(index)];
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	private void drop() {
+		head = (head + 1) % capacity;
+		size--;
+		if(dropped < size0)
+			dropped++;
+		else
+			added--;
+	}
+
+	private int slot(int index) {
+		if(index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size);
+		return (head + index) % capacity;
+	}
+
+	private void assign(XYChart.Data<Number,Number> node, double x, double y) {
+		if(Double.isNaN(y))
+			y = 0;
+		/* avoid boxing if a value does not change, e.g. fixed x of a spectrum */
+		if(node.getXValue().doubleValue() != x)
+			node.setXValue(x);
+		if(node.getYValue().doubleValue() != y)
+			node.setYValue(y);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void allocate(int capacity) {
+		this.capacity = Math.max(1, capacity);
+		this.nodes = new XYChart.Data[this.capacity];
+		this.xs    = new double[this.capacity];
+		this.ys    = new double[this.capacity];
+		this.head  = 0;
+	}
+
+}
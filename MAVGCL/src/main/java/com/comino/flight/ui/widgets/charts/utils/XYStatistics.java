@@ -33,9 +33,7 @@
 
 package com.comino.flight.ui.widgets.charts.utils;
 
-import java.util.List;
-
-import com.comino.flight.model.AnalysisDataModel;
+import com.comino.flight.model.AnalysisDataModelList;
 import com.comino.flight.model.KeyFigureMetaData;
 
 public class XYStatistics {
@@ -54,12 +52,14 @@ public class XYStatistics {
 	private KeyFigureMetaData fy;
 	private KeyFigureMetaData fx;
 
+	private final WindowStatistics wx = new WindowStatistics();
+	private final WindowStatistics wy = new WindowStatistics();
 
 	public void setKeyFigures(KeyFigureMetaData fx, KeyFigureMetaData fy) {
 		this.fx = fx; this.fy=fy;
 	}
 
-	public void getStatistics(int x0, int x1, List<AnalysisDataModel> list) {
+	public void getStatistics(int x0, int x1, AnalysisDataModelList list) {
 		float vx=0; float vy=0; int i=0; double rad=0;
 
 		x1 =  list.size() < x1 ? list.size()-1 : x1-1;
@@ -67,18 +67,18 @@ public class XYStatistics {
 		if(list.size() < 20 || fx == null || fy == null || fx.hash==0 || fy.hash==0)
 			return;
 
-		for(i = x0; i<= x1;i++) {
-			vx += list.get(i).getValue(fx);
-			vy += list.get(i).getValue(fy);
-		}
-		if(Float.isNaN(vx) || Float.isNaN(vy)) {
+		/* Center is updated incrementally while the window moves */
+		wx.update(list, fx, x0, x1+1);
+		wy.update(list, fy, x0, x1+1);
+
+		if(wx.getCount() <= x1 - x0 || wy.getCount() <= x1 - x0) {
 			radius = Float.NaN; distance = Float.NaN; stddev_xy = Float.NaN;
 			center_x = list.get(x1).getValue(fx);
 			center_y = list.get(x1).getValue(fy);
 			return;
 		} else {
-			center_x = vx / (i - x0);
-			center_y = vy / (i - x0);
+			center_x = wx.getMean();
+			center_y = wy.getMean();
 		}
 
 		vx = 0; vy = 0;
@@ -49,6 +49,7 @@ import org.mavlink.messages.lquac.msg_msp_command;
 import com.comino.flight.FXMLLoadHelper;
 import com.comino.flight.file.KeyFigurePreset;
 import com.comino.flight.model.AnalysisDataModel;
+import com.comino.flight.model.AnalysisDataModelList;
 import com.comino.flight.model.AnalysisDataModelMetaData;
 import com.comino.flight.model.KeyFigureMetaData;
 import com.comino.flight.model.service.AnalysisModelService;
@@ -63,9 +64,9 @@ import com.comino.flight.ui.widgets.charts.annotations.XYGridAnnotation;
 import com.comino.flight.ui.widgets.charts.annotations.XYSigmaAnnotation;
 import com.comino.flight.ui.widgets.charts.annotations.XYSlamAnnotation;
 import com.comino.flight.ui.widgets.charts.annotations.XYTrajectoryAnnonation;
-import com.comino.flight.ui.widgets.charts.utils.XYCollections;
-import com.comino.flight.ui.widgets.charts.utils.XYDataPool;
-import com.comino.flight.ui.widgets.charts.utils.XYObservableListWrapper;
+import com.comino.flight.ui.widgets.charts.utils.FrameWorker;
+import com.comino.flight.ui.widgets.charts.utils.XYFrame;
+import com.comino.flight.ui.widgets.charts.utils.XYRingList;
 import com.comino.flight.ui.widgets.charts.utils.XYStatistics;
 import com.comino.jfx.extensions.SectionLineChart;
 import com.comino.jfx.extensions.XYAnnotations.Layer;
@@ -92,7 +93,6 @@ import javafx.scene.Group;
 import javafx.scene.SnapshotParameters;
 import javafx.scene.chart.NumberAxis;
 import javafx.scene.chart.XYChart;
-import javafx.scene.chart.XYChart.Data;
 import javafx.scene.control.Button;
 import javafx.scene.control.CheckBox;
 import javafx.scene.control.ChoiceBox;
@@ -116,8 +116,6 @@ import us.ihmc.log.LogTools;
 
 public class XYChartWidget extends BorderPane implements IChartControl, ICollectorRecordingListener {
 
-	private static final int REFRESH_SLOT = 20;
-
 	private static String[][] PRESETS = { { null, null }, { "LPOSX", "LPOSY" }, { "VISIONX", "VISIONY" },
 			{ "SLAMPX", "SLAMPY" }, { "SPLPOSX", "SPLPOSY" }, { "GNDTRUTHX", "GNDTRUTHY" },
 			{ "PRECLOCKX", "PRECLOCKY" }, { "GPSLX", "GPSLY" }, { "LPOSRX", "LPOSRY" },
@@ -240,7 +238,13 @@ public class XYChartWidget extends BorderPane implements IChartControl, ICollect
 
 	private XYTrajectoryAnnonation traj = null;
 
-	private XYDataPool pool = null;
+	private final XYRingList data1 = new XYRingList(1);
+	private final XYRingList data2 = new XYRingList(1);
+
+	private final FrameWorker<XYFrame> worker = new FrameWorker<XYFrame>(this::swapFrame);
+	private int generation = 0;
+	private double stddev1 = Double.NaN;
+	private double stddev2 = Double.NaN;
 
 	private boolean refreshRequest = false;
 
@@ -267,7 +271,6 @@ public class XYChartWidget extends BorderPane implements IChartControl, ICollect
 	public XYChartWidget() {
 
 		this.state = StateProperties.getInstance();
-		this.pool = new XYDataPool();
 
 		FXMLLoadHelper.load(this, "XYChartWidget.fxml");
 
@@ -535,6 +538,7 @@ public class XYChartWidget extends BorderPane implements IChartControl, ICollect
 					x_desc = x_desc + type2_x.desc1 + " [" + type2_x.uom + "] ";
 				xAxis.setLabel(x_desc);
 
+				dataService.setDemand(this, type1_x, type1_y, type2_x, type2_y);
 				updateRequest();
 			}
 		});
@@ -550,6 +554,7 @@ public class XYChartWidget extends BorderPane implements IChartControl, ICollect
 					y_desc = y_desc + type2_y.desc1 + " [" + type2_y.uom + "] ";
 				yAxis.setLabel(y_desc);
 
+				dataService.setDemand(this, type1_x, type1_y, type2_x, type2_y);
 				updateRequest();
 			}
 		});
@@ -566,6 +571,7 @@ public class XYChartWidget extends BorderPane implements IChartControl, ICollect
 
 				corr_zero.setDisable(!(type1_y.hash != 0 && (type2_y.hash != 0)));
 
+				dataService.setDemand(this, type1_x, type1_y, type2_x, type2_y);
 				updateRequest();
 			}
 		});
@@ -582,6 +588,7 @@ public class XYChartWidget extends BorderPane implements IChartControl, ICollect
 
 				corr_zero.setDisable(!(type1_y.hash != 0 && (type2_y.hash != 0)));
 
+				dataService.setDemand(this, type1_x, type1_y, type2_x, type2_y);
 				updateRequest();
 			}
 		});
@@ -851,7 +858,7 @@ public class XYChartWidget extends BorderPane implements IChartControl, ICollect
 
 		AnalysisDataModel m = null, m0 = null;
 		int max_x = 0;
-		long slot_tms;
+		boolean statistics = false;
 
 		if (isDisabled() || series1 == null || series2 == null) {
 			refreshRequest = false;
@@ -862,7 +869,7 @@ public class XYChartWidget extends BorderPane implements IChartControl, ICollect
 			rotation_rad = -control.getCurrentModel().attitude.y;
 		}
 
-		List<AnalysisDataModel> mList = dataService.getModelList();
+		AnalysisDataModelList mList = dataService.getModelList();
 		if (mList == null) {
 			return;
 		}
@@ -877,16 +884,15 @@ public class XYChartWidget extends BorderPane implements IChartControl, ICollect
 				return;
 			}
 
-			if (dataService.getModelList().size() == 0) {
-				if (series1.getData().size() > 0)
-					series1.getData().remove(0, series1.getData().size() - 1);
-				if (series2.getData().size() > 0)
-					series2.getData().remove(0, series2.getData().size() - 1);
-			} else {
-				series1.getData().clear();
-				series2.getData().clear();
-			}
-			pool.invalidateAll();
+			data1.setCapacity(timeFrame.get() * 1000 / resolution_ms + 1);
+			data2.setCapacity(timeFrame.get() * 1000 / resolution_ms + 1);
+			data1.clear();
+			data2.clear();
+
+			/* frames requested before are outdated */
+			generation++;
+			worker.cancel();
+
 			synchronized (this) {
 				xychart.getData().clear();
 				xychart.getData().add(series1);
@@ -981,11 +987,8 @@ public class XYChartWidget extends BorderPane implements IChartControl, ICollect
 
 		if ((force_zero.isSelected() || annotation.isSelected())
 				&& (System.currentTimeMillis() - dashboard_update_tms) > 200) {
-			wq.addSingleTask("LP", () -> {
-				dashboard_update_tms = System.currentTimeMillis();
-				s1.getStatistics(current_x0_pt, current_x1_pt, mList);
-				s2.getStatistics(current_x0_pt, current_x1_pt, mList);
-			});
+			dashboard_update_tms = System.currentTimeMillis();
+			statistics = true;
 
 			if (show_edf.isSelected())
 				edf.update();
@@ -1018,9 +1021,11 @@ public class XYChartWidget extends BorderPane implements IChartControl, ICollect
 			}
 		}
 
-		if (current_x_pt < mList.size() && mList.size() > 0) {
+		if (current_x_pt < mList.size() || statistics) {
 
-			if (state.getRecordingProperty().get() == AnalysisModelService.STOPPED) {
+			if (current_x_pt >= mList.size())
+				max_x = current_x_pt;
+			else if (state.getRecordingProperty().get() == AnalysisModelService.STOPPED) {
 				if (max_x0 > 0)
 					max_x = max_x0 < mList.size() ? max_x0 : mList.size();
 				else
@@ -1028,75 +1033,112 @@ public class XYChartWidget extends BorderPane implements IChartControl, ICollect
 			} else
 				max_x = mList.size();
 
-			slot_tms = System.currentTimeMillis();
+			if (max_x > current_x_pt || statistics)
+				requestFrame(max_x, m0, statistics);
+		}
+		refreshRequest = false;
+	}
 
-			((XYObservableListWrapper<?>) series1.getData()).begin();
-			((XYObservableListWrapper<?>) series2.getData()).begin();
+	/*
+	 * Prepares the points of rows current_x_pt..max_x and optionally the
+	 * statistics of the window on the frame worker
+	 */
+	private void requestFrame(int max_x, AnalysisDataModel m0, boolean statistics) {
+		final int gen = generation;
+		final AnalysisDataModelList list = dataService.getModelList();
+		final int interval = dataService.getCollectorInterval_ms();
+		final int resolution = resolution_ms;
+		final KeyFigureMetaData[] kf = { type1_x, type1_y, type2_x, type2_y };
+		final int from = current_x_pt;
+		final int x0 = current_x0_pt;
+		final int x1 = current_x1_pt;
+		final double rotation = rotation_rad;
+		final double cx = center_x;
+		final double cy = center_y;
+		final XYStatistics st1 = statistics ? s1 : null;
+		final XYStatistics st2 = statistics ? s2 : null;
+
+		double ox = 0, oy = 0;
+		if (corr_zero.isSelected() && type1_x.hash != 0 && type1_y.hash != 0 && m0 != null) {
+			ox = m0.getValue(type2_x) - m0.getValue(type1_x);
+			oy = m0.getValue(type2_y) - m0.getValue(type1_y);
+		}
+		final double dx = ox;
+		final double dy = oy;
 
-			while (current_x_pt < max_x && ((System.currentTimeMillis() - slot_tms) < REFRESH_SLOT || refreshRequest)) {
-				// System.out.println(current_x_pt+"<"+max_x+":"+resolution_ms+" -->
-				// "+dataService.getCollectorInterval_ms());
-				if (((current_x_pt * dataService.getCollectorInterval_ms()) % resolution_ms) == 0) {
+		worker.request(() -> new XYFrame(gen, list, interval, resolution, kf, from, max_x, dx, dy, rotation, cx, cy,
+				st1, st2, x0, x1));
+	}
 
-					m = mList.get(current_x_pt);
+	/*
+	 * Appends the points of a frame continuing the plotted rows, rolling the
+	 * window forward
+	 */
+	private void swapFrame(XYFrame f) {
+		if (f.getGeneration() != generation || isDisabled())
+			return;
 
-					if (series1.getData().size() > 0 || series2.getData().size() > 0) {
-						slam.setModel(m);
-						traj.setModel(m);
-					}
+		if (f.hasStatistics()) {
+			stddev1 = f.getStdDev1();
+			stddev2 = f.getStdDev2();
+		}
 
-					if (current_x_pt > current_x1_pt) {
+		if (f.getFrom() == current_x_pt && f.getTo() > current_x_pt) {
 
-						current_x0_pt += resolution_ms / dataService.getCollectorInterval_ms();
-						current_x1_pt += resolution_ms / dataService.getCollectorInterval_ms();
+			final int step = resolution_ms / dataService.getCollectorInterval_ms();
 
-						if (series1.getData().size() > 0) {
-							pool.invalidate(series1.getData().get(0));
-							series1.getData().remove(0);
-						}
-						if (series2.getData().size() > 0) {
-							pool.invalidate(series2.getData().get(0));
-							series2.getData().remove(0);
-						}
-					}
+			data1.begin();
+			data2.begin();
 
-					if (type1_x.hash != 0 && type1_y.hash != 0) {
-						rotateRad(p1, m.getValue(type1_x), m.getValue(type1_y), rotation_rad);
-						series1.getData().add(pool.checkOut(p1[0], p1[1]));
-						endPosition1.setPosition(p1[0], p1[1]);
-					}
+			for (int k = 0; k < f.size(); k++) {
 
-					if (type2_x.hash != 0 && type2_y.hash != 0) {
-						if (corr_zero.isSelected() && type1_x.hash != 0 && type1_y.hash != 0 && m0 != null) {
+				if (f.getRow(k) > current_x1_pt) {
+					current_x0_pt += step;
+					current_x1_pt += step;
 
-							rotateRad(p2, m.getValue(type2_x) - (m0.getValue(type2_x) - m0.getValue(type1_x)),
-									m.getValue(type2_y) - (m0.getValue(type2_y) - m0.getValue(type1_y)), rotation_rad);
+					data1.removeFirst();
+					data2.removeFirst();
+				}
 
-						} else
-							rotateRad(p2, m.getValue(type2_x), m.getValue(type2_y), rotation_rad);
-						series2.getData().add(pool.checkOut(p2[0], p2[1]));
-						endPosition2.setPosition(p2[0], p2[1]);
-					}
+				if (f.hasFirst()) {
+					p1[0] = f.getX1(k);
+					p1[1] = f.getY1(k);
+					data1.add(p1[0], p1[1]);
 				}
 
-				current_x_pt++;
+				if (f.hasSecond()) {
+					p2[0] = f.getX2(k);
+					p2[1] = f.getY2(k);
+					data2.add(p2[0], p2[1]);
+				}
 			}
 
-			((XYObservableListWrapper<?>) series1.getData()).end();
-			((XYObservableListWrapper<?>) series2.getData()).end();
-
-			sigma1.setPosition(p1[0], p1[1], s1.stddev_xy);
-			sigma2.setPosition(p2[0], p2[1], s2.stddev_xy);
-
+			data1.end();
+			data2.end();
+
+			if (f.size() > 0) {
+				if (f.hasFirst())
+					endPosition1.setPosition(p1[0], p1[1]);
+				if (f.hasSecond())
+					endPosition2.setPosition(p2[0], p2[1]);
+				if (data1.size() > 0 || data2.size() > 0) {
+					final AnalysisDataModel m = dataService.getModelList().get(f.getRow(f.size() - 1));
+					slam.setModel(m);
+					traj.setModel(m);
+				}
+			}
+			current_x_pt = f.getTo();
 		}
-		refreshRequest = false;
+
+		sigma1.setPosition(p1[0], p1[1], stddev1);
+		sigma2.setPosition(p2[0], p2[1], stddev2);
 	}
 
 	public XYChartWidget setup(IMAVController control) {
-		series1 = new XYChart.Series<Number, Number>(XYCollections.<Data<Number, Number>>observableArrayList());
+		series1 = new XYChart.Series<Number, Number>(data1);
 
 		xychart.getData().add(series1);
-		series2 = new XYChart.Series<Number, Number>(XYCollections.<Data<Number, Number>>observableArrayList());
+		series2 = new XYChart.Series<Number, Number>(data2);
 		xychart.getData().add(series2);
 
 		this.control = control;
@@ -1250,15 +1292,7 @@ public class XYChartWidget extends BorderPane implements IChartControl, ICollect
 	}
 
 	private void rotateRad(double[] rotated, double posx, double posy, double heading_rad) {
-		if (heading_rad != 0) {
-			rotated[1] = (posx - center_x) * Math.cos(heading_rad) + (posy - center_y) * Math.sin(heading_rad)
-					+ center_x;
-			rotated[0] = -(posx - center_x) * Math.sin(heading_rad) + (posy - center_y) * Math.cos(heading_rad)
-					+ center_y;
-		} else {
-			rotated[1] = posx;
-			rotated[0] = posy;
-		}
+		XYFrame.rotate(rotated, posx, posy, heading_rad, center_x, center_y);
 	}
 
 	private void setKeyFigure(ChoiceBox<KeyFigureMetaData> series, int keyFigureHash) {
@@ -43,7 +43,7 @@ import com.comino.flight.model.service.AnalysisModelService;
 import com.comino.flight.model.service.ICollectorRecordingListener;
 import com.comino.flight.observables.StateProperties;
 import com.comino.flight.ui.widgets.charts.IChartControl;
-import com.comino.flight.ui.widgets.charts.utils.XYDataPool;
+import com.comino.flight.ui.widgets.charts.utils.XYRingList;
 import com.comino.jfx.extensions.ChartControlPane;
 import com.comino.mavcom.control.IMAVController;
 import com.comino.mavcom.model.DataModel;
@@ -60,7 +60,6 @@ import javafx.fxml.FXML;
 import javafx.scene.chart.LineChart;
 import javafx.scene.chart.NumberAxis;
 import javafx.scene.chart.XYChart;
-import javafx.scene.chart.XYChart.Data;
 import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.ProgressBar;
@@ -118,7 +117,9 @@ public class Vibration extends VBox implements IChartControl  {
 	private FFT fft2 = null;
 	private FFT fft3 = null;
 
-	private XYDataPool pool = null;
+	private final XYRingList data_fft1 = new XYRingList(POINTS / 2 + 1);
+	private final XYRingList data_fft2 = new XYRingList(POINTS / 2 + 1);
+	private final XYRingList data_fft3 = new XYRingList(POINTS / 2 + 1);
 
 	private AnalysisModelService      dataService = AnalysisModelService.getInstance();
 
@@ -146,9 +147,6 @@ public class Vibration extends VBox implements IChartControl  {
 				}
 			}		
 		};
-	
-
-		pool = new XYDataPool();
 
 	}
 
@@ -161,9 +159,9 @@ public class Vibration extends VBox implements IChartControl  {
 
 		vz.setProgress(0);
 
-		series1 = new XYChart.Series<Number,Number>();
-		series2 = new XYChart.Series<Number,Number>();
-		series3 = new XYChart.Series<Number,Number>();
+		series1 = new XYChart.Series<Number,Number>(data_fft1);
+		series2 = new XYChart.Series<Number,Number>(data_fft2);
+		series3 = new XYChart.Series<Number,Number>(data_fft3);
 
 		sample_rate = 1000 / dataService.getCollectorInterval_ms();
 
@@ -267,11 +265,8 @@ public class Vibration extends VBox implements IChartControl  {
 
 		max_pt = max_pt >= dataService.getModelList().size() ? dataService.getModelList().size() -1 : max_pt;
 
-		series1.getData().clear();
-		series2.getData().clear();
-		series3.getData().clear();
-
 		if(dataService.getModelList().size()==0) {
+			clearSpectrum();
 			vz.setProgress(0);
 			return;
 		}
@@ -290,6 +285,7 @@ public class Vibration extends VBox implements IChartControl  {
 
 
 		if(max_pt <= POINTS) {
+			clearSpectrum();
 			return;
 		}
 
@@ -330,31 +326,22 @@ public class Vibration extends VBox implements IChartControl  {
 		case 3:
 
 			fft1.forward(data1); 
-			series1.getData().add(new Data<Number, Number>(0.0,0.0));
-			for(int i = 1; i < fft1.specSize(); i++ ) {
-				series1.getData().add(pool.checkOut(i * fft1.getBandWidth(),fft1.getSpectrum()[i]));
-			}
+			updateSpectrum(data_fft1, fft1);
 
 			fft2.forward(data2); 
-			series2.getData().add(new Data<Number, Number>(0.0,0.0));
-			for(int i = 1; i < fft2.specSize(); i++ ) {
-				series2.getData().add(pool.checkOut(i * fft2.getBandWidth(),fft2.getSpectrum()[i]));
-			}
+			updateSpectrum(data_fft2, fft2);
 			
-			series3.getData().clear();
+			data_fft3.clear();
 
 			break;
 
 		case 1:
 
 			fft3.forward(data3);
-			series3.getData().add(new Data<Number, Number>(0.0,0.0));
-			for(int i = 1; i < fft3.specSize(); i++ ) {
-				series3.getData().add(pool.checkOut(i * fft3.getBandWidth(),fft3.getSpectrum()[i]));
-			}
+			updateSpectrum(data_fft3, fft3);
 			
-			series2.getData().clear();
-			series1.getData().clear();
+			data_fft2.clear();
+			data_fft1.clear();
 			
 			break;
 			
@@ -362,23 +349,13 @@ public class Vibration extends VBox implements IChartControl  {
 		case 4:
 			
 			fft1.forward(data1); 
-			series1.getData().add(new Data<Number, Number>(0.0,0.0));
-			for(int i = 1; i < fft1.specSize(); i++ ) {
-				series1.getData().add(pool.checkOut(i * fft1.getBandWidth(),fft1.getSpectrum()[i]));
-			}
+			updateSpectrum(data_fft1, fft1);
 
 			fft2.forward(data2); 
-			series2.getData().add(new Data<Number, Number>(0.0,0.0));
-			for(int i = 1; i < fft2.specSize(); i++ ) {
-				series2.getData().add(pool.checkOut(i * fft2.getBandWidth(),fft2.getSpectrum()[i]));
-			}
+			updateSpectrum(data_fft2, fft2);
 			
 			fft3.forward(data3);
-			series3.getData().add(new Data<Number, Number>(0.0,0.0));
-			for(int i = 1; i < fft3.specSize(); i++ ) {
-				series3.getData().add(pool.checkOut(i * fft3.getBandWidth(),fft3.getSpectrum()[i]));
-			}
-
+			updateSpectrum(data_fft3, fft3);
 
 			break;
 
@@ -386,6 +363,29 @@ public class Vibration extends VBox implements IChartControl  {
 
 	}
 
+	/*
+	 * Bins of an unchanged spectrum size are updated in place, so the series
+	 * keeps its data items and the chart sees value changes only.
+	 */
+	private void updateSpectrum(XYRingList data, FFT fft) {
+		final float[] spectrum = fft.getSpectrum();
+		data.begin();
+		for(int i = 0; i < fft.specSize(); i++ ) {
+			final double y = i == 0 ? 0 : spectrum[i];
+			if(i < data.size())
+				data.set(i, i * fft.getBandWidth(), y);
+			else
+				data.add(i * fft.getBandWidth(), y);
+		}
+		data.end();
+	}
+
+	private void clearSpectrum() {
+		data_fft1.clear();
+		data_fft2.clear();
+		data_fft3.clear();
+	}
+
 	private void refresh(int max) {
 		Platform.runLater(() -> {
 			max_pt = max;
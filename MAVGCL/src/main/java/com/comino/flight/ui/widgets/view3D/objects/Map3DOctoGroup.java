@@ -1,121 +1,174 @@
 package com.comino.flight.ui.widgets.view3D.objects;
 
-import java.util.ArrayList;
-import java.util.ConcurrentModificationException;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
+import com.comino.flight.model.map.IOctoMapListener;
 import com.comino.flight.model.map.MAVGCLOctoMap;
-import com.comino.flight.ui.widgets.view3D.octomesh.OctoMesh;
+import com.comino.flight.ui.widgets.view3D.octomesh.VoxelMesh;
 import com.comino.mavcom.control.IMAVController;
 import com.comino.mavcom.model.DataModel;
 
 import georegression.struct.point.Point4D_F32;
 import javafx.animation.AnimationTimer;
 import javafx.application.Platform;
-import javafx.scene.DepthTest;
 import javafx.scene.Group;
 import javafx.scene.paint.Color;
-import javafx.scene.paint.PhongMaterial;
-import javafx.scene.shape.Box;
-import javafx.scene.shape.CullFace;
-import us.ihmc.jOctoMap.key.OcTreeKeyReadOnly;
 
 public class Map3DOctoGroup  {
 
+	public static final int COLOR_HEIGHT    = 0;
+	public static final int COLOR_OCCUPANCY = 1;
 
+	private final static float   MAX_HEIGHT   = 5.0f;            // height of the last palette color in m
+	private final static long    FLUSH_BUDGET = 4_000_000L;      // ns per pulse to rebuild chunks
 
-	private final static long    KEYMASK      = 0x0FFFFFFFFFFFFFFFL;
-
-	private final Group root;
+	private final static Point4D_F32[] CLEARED = new Point4D_F32[0];
 
 	private AnimationTimer              task    = null;
 
 	private final MAVGCLOctoMap         map;
-	private Point4D_F32                 tmp;
-	private final int                   size;
-	private final DataModel model;
+	private final Queue<Point4D_F32[]>  changes;
+	private final Map<Long,Point4D_F32> backlog;
+	private final DataModel             model;
+	private final VoxelMesh             voxels;
 
-	private final static Map<Long,OctoMesh>          meshIndex = new HashMap<>();
-	private final static List<OctoMesh>              meshes    = new LinkedList<>();
+	private float                       resolution;
+	private int                         colorMode = COLOR_HEIGHT;
+	private boolean                     enabled   = false;
 
 
 	public Map3DOctoGroup(Group root, IMAVController control) {
 
-		this.root  = root;
-		this.model = control.getCurrentModel();
-		this.map   = MAVGCLOctoMap.getInstance(control);
-		this.tmp   = new Point4D_F32();
-		this.size = (int)(map.getResolution() * 100f);
-
-
-//		task = new AnimationTimer() {
-//			
-//			@Override
-//			public void handle(long now) {
-//
-//				if(model.grid.count == -1) {
-//					clear();
-//					return;
-//				}
-//				
-//				map.getChanged().stream().forEach((id) -> {
-//					handleBlock(tmp,map.convertTo(id, tmp) & KEYMASK);
-//				});
-//
-//				map.resetChangeDetection();
-//
-//			}
-//		};
-//		
-//		task.start();
-	}
+		this.model      = control.getCurrentModel();
+		this.map        = MAVGCLOctoMap.getInstance(control);
+		this.changes    = new ConcurrentLinkedQueue<Point4D_F32[]>();
+		this.backlog    = new HashMap<Long,Point4D_F32>();
+		this.resolution = map.getResolution();
+		this.voxels     = new VoxelMesh(resolution * 100f, Color.CORNSILK.darker(), Color.FIREBRICK);
+
+		setVoxelOffset();
+
+		root.getChildren().add(voxels);
+
+		/* while disabled change-sets are folded per voxel, so the queue does not grow with the flight */
+		map.addListener(new IOctoMapListener() {
+
+			@Override
+			public void changed(Point4D_F32[] c) {
+				synchronized(backlog) {
+					if(enabled) {
+						changes.offer(c);
+						return;
+					}
+					for(Point4D_F32 p : c)
+						backlog.put(key(p), p);
+				}
+			}
 
-	public void handleBlock(Point4D_F32 p, long id) {
+			@Override
+			public void cleared() {
+				synchronized(backlog) {
+					backlog.clear();
+					changes.offer(CLEARED);
+				}
+			}
+		});
 
-		if(meshes.isEmpty())
-			meshes.add(new OctoMesh(root,size));
+		task = new AnimationTimer() {
 
-		OctoMesh mesh =	meshes.get(meshes.size()-1);
-		if(tmp.w > 0.5) {
-			if(meshIndex.containsKey(id) || tmp.z < 0)
-				return;
-			if(!mesh.hasSpace()) {
-				mesh = new OctoMesh(root,size);
-				meshes.add(mesh);
-			}
-			mesh.add(id, -tmp.y*100, tmp.z*100, tmp.x*100);
-			meshIndex.put(id, mesh);
-		} else {
-			mesh = meshIndex.remove(id);
-			if(mesh!=null) {
-				if(mesh.remove(id)) {
-					meshes.remove(mesh);
+			@Override
+			public void handle(long now) {
+
+				if(model.grid.count == -1) {
+					changes.clear();
+					if(voxels.getChunkCount() > 0)
+						voxels.clear(resolution * 100f);
+					return;
+				}
+
+				if(map.getResolution() != resolution) {
+					resolution = map.getResolution();
+					voxels.clear(resolution * 100f);
+					setVoxelOffset();
 				}
+
+				/* change-sets only mark chunks dirty, meshes are rebuilt once per pulse */
+				Point4D_F32[] c;
+				while((c = changes.poll()) != null) {
+					if(c == CLEARED) {
+						voxels.clear(resolution * 100f);
+						continue;
+					}
+					for(Point4D_F32 p : c)
+						handleBlock(p);
+				}
+
+				if(voxels.isDirty())
+					voxels.flush(FLUSH_BUDGET);
 			}
-		}
+		};
+	}
+
+	public void handleBlock(Point4D_F32 p) {
+
+		final int ix = index(-p.y, resolution);
+		final int iy = index( p.z, resolution);
+		final int iz = index( p.x, resolution);
+
+		if(p.w > 0.5 && p.z >= 0) {
+			if(colorMode == COLOR_OCCUPANCY)
+				voxels.set(ix, iy, iz, (p.w - 0.5) * 2);
+			else
+				voxels.set(ix, iy, iz, p.z / MAX_HEIGHT);
+		} else
+			voxels.set(ix, iy, iz, Double.NaN);
+	}
+
+	/* p is a voxel centre, floor avoids the .5 ties of rounding */
+	private static int index(float c, float resolution) {
+		return (int)Math.floor(c / resolution);
+	}
+
+	/* chunks place index * size at the voxel centre, the octree cell starts there */
+	private void setVoxelOffset() {
+		voxels.setTranslateX(resolution * 50f);
+		voxels.setTranslateY(resolution * 50f);
+		voxels.setTranslateZ(resolution * 50f);
+	}
+
+	private long key(Point4D_F32 p) {
+		final float res = map.getResolution();
+		return  ((long)index(p.x, res) & 0x1FFFFFL) << 42 |
+				((long)index(p.y, res) & 0x1FFFFFL) << 21 |
+				((long)index(p.z, res) & 0x1FFFFFL);
+	}
+
+	public void setColorMode(int mode) {
+		this.colorMode = mode;
 	}
 
 	public void enable(boolean enable) {
-//		if(enable)
-//			task.start();
-//		else
-//			task.stop();
+		synchronized(backlog) {
+			if(enable && !backlog.isEmpty()) {
+				changes.offer(backlog.values().toArray(new Point4D_F32[backlog.size()]));
+				backlog.clear();
+			}
+			this.enabled = enable;
+		}
+		if(enable)
+			task.start();
+		else
+			task.stop();
 	}
 
 
 	public void clear() {
-        Platform.runLater(() -> {
-        	meshIndex.forEach((id,mesh) -> { 
-    			if(mesh.remove(id)) { 
-    				meshes.remove(mesh); 
-    			}
-    		});
-    		meshIndex.clear();
-        });
+		Platform.runLater(() -> {
+			voxels.clear(resolution * 100f);
+		});
 	}
 
 }
@@ -0,0 +1,186 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017,2018 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+
+package com.comino.flight.ui.widgets.view3D.octomesh;
+
+/*
+ * Voxels of a cubic chunk of the map with SIZE voxels per edge. Each voxel
+ * holds its palette color, 0 if empty. The geometry contains only faces
+ * between an occupied and an empty voxel, also across chunk borders.
+ */
+
+public class VoxelChunk {
+
+	public static final int BITS = 4;
+	public static final int SIZE = 1 << BITS;
+	public static final int MASK = SIZE - 1;
+
+	public interface Lookup {
+		/*
+		 * Returns true if the voxel at the global index is occupied
+		 */
+		boolean isOccupied(int ix, int iy, int iz);
+	}
+
+	/*
+	 * Reused vertex and face arrays of a chunk being built
+	 */
+	public static class Buffer {
+		public float[] points = new float[1024 * 12];
+		public int[]   faces  = new int[1024 * 12];
+		public int     point_count = 0;
+		public int     face_count  = 0;
+
+		private void ensure(int quads) {
+			if(points.length < (point_count / 3 + quads * 4) * 3) {
+				final float[] p = new float[points.length * 2];
+				System.arraycopy(points, 0, p, 0, point_count);
+				points = p;
+			}
+			if(faces.length < face_count + quads * 12) {
+				final int[] f = new int[faces.length * 2];
+				System.arraycopy(faces, 0, f, 0, face_count);
+				faces = f;
+			}
+		}
+	}
+
+	/*
+	 * Corners of the faces in +X,-X,+Y,-Y,+Z,-Z direction, ordered such that
+	 * (b-a)x(c-a) points outwards, which is the front face for JavaFX.
+	 */
+	private static final int[][] DIR = {
+			{ 1, 0, 0 }, { -1, 0, 0 }, { 0, 1, 0 }, { 0, -1, 0 }, { 0, 0, 1 }, { 0, 0, -1 } };
+	private static final int[][] CORNERS = {
+			{  1,-1,-1,   1, 1,-1,   1, 1, 1,   1,-1, 1 },
+			{ -1,-1,-1,  -1,-1, 1,  -1, 1, 1,  -1, 1,-1 },
+			{ -1, 1,-1,  -1, 1, 1,   1, 1, 1,   1, 1,-1 },
+			{ -1,-1,-1,   1,-1,-1,   1,-1, 1,  -1,-1, 1 },
+			{ -1,-1, 1,   1,-1, 1,   1, 1, 1,  -1, 1, 1 },
+			{ -1,-1,-1,  -1, 1,-1,   1, 1,-1,   1,-1,-1 } };
+
+	private final int cx, cy, cz;
+	private final byte[] voxels = new byte[SIZE * SIZE * SIZE];
+	private int count = 0;
+
+	public VoxelChunk(int cx, int cy, int cz) {
+		this.cx = cx; this.cy = cy; this.cz = cz;
+	}
+
+	public static long key(int cx, int cy, int cz) {
+		return ((long)(cx & 0x1FFFFF) << 42) | ((long)(cy & 0x1FFFFF) << 21) | (cz & 0x1FFFFF);
+	}
+
+	public long getKey() {
+		return key(cx, cy, cz);
+	}
+
+	/*
+	 * Sets the color of the voxel at the global index, 0 clears it. Returns
+	 * true if the voxel changed.
+	 */
+	public boolean set(int ix, int iy, int iz, int color) {
+		final int i = index(ix & MASK, iy & MASK, iz & MASK);
+		if(voxels[i] == (byte)color)
+			return false;
+		if(voxels[i] == 0)
+			count++;
+		else if(color == 0)
+			count--;
+		voxels[i] = (byte)color;
+		return true;
+	}
+
+	public boolean isOccupied(int lx, int ly, int lz) {
+		return voxels[index(lx, ly, lz)] != 0;
+	}
+
+	public boolean isEmpty() {
+		return count == 0;
+	}
+
+	/*
+	 * Builds the faces of the chunk into the buffer. Vertices are placed at
+	 * index * size, texture coordinate indices are the voxel colors - 1.
+	 */
+	public void build(Lookup lookup, float size, Buffer buf) {
+		final float h = size / 2f;
+		buf.point_count = 0;
+		buf.face_count  = 0;
+
+		for(int lx = 0; lx < SIZE; lx++) {
+			for(int ly = 0; ly < SIZE; ly++) {
+				for(int lz = 0; lz < SIZE; lz++) {
+
+					final int color = voxels[index(lx, ly, lz)] & 0xFF;
+					if(color == 0)
+						continue;
+
+					final int ix = (cx << BITS) + lx;
+					final int iy = (cy << BITS) + ly;
+					final int iz = (cz << BITS) + lz;
+
+					for(int d = 0; d < 6; d++) {
+						final int nx = lx + DIR[d][0], ny = ly + DIR[d][1], nz = lz + DIR[d][2];
+						final boolean hidden = (nx | ny | nz) >= 0 && nx < SIZE && ny < SIZE && nz < SIZE
+								? isOccupied(nx, ny, nz)
+								: lookup.isOccupied(ix + DIR[d][0], iy + DIR[d][1], iz + DIR[d][2]);
+						if(!hidden)
+							addFace(buf, d, ix * size, iy * size, iz * size, h, color - 1);
+					}
+				}
+			}
+		}
+	}
+
+	private static void addFace(Buffer buf, int d, float x, float y, float z, float h, int tex) {
+		buf.ensure(1);
+		final int p0 = buf.point_count / 3;
+		final int[] c = CORNERS[d];
+		for(int k = 0; k < 12; k += 3) {
+			buf.points[buf.point_count++] = x + c[k]   * h;
+			buf.points[buf.point_count++] = y + c[k+1] * h;
+			buf.points[buf.point_count++] = z + c[k+2] * h;
+		}
+		final int[] f = buf.faces;
+		int n = buf.face_count;
+		f[n++] = p0;     f[n++] = tex; f[n++] = p0 + 1; f[n++] = tex; f[n++] = p0 + 2; f[n++] = tex;
+		f[n++] = p0;     f[n++] = tex; f[n++] = p0 + 2; f[n++] = tex; f[n++] = p0 + 3; f[n++] = tex;
+		buf.face_count = n;
+	}
+
+	private static int index(int lx, int ly, int lz) {
+		return (lx << (2 * BITS)) | (ly << BITS) | lz;
+	}
+}
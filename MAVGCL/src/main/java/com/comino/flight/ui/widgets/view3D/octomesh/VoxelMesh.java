@@ -0,0 +1,195 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017,2018 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+
+package com.comino.flight.ui.widgets.view3D.octomesh;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import javafx.scene.Group;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.PhongMaterial;
+import javafx.scene.shape.CullFace;
+import javafx.scene.shape.MeshView;
+import javafx.scene.shape.TriangleMesh;
+
+/*
+ * Voxel map rendered as one mesh per chunk of VoxelChunk.SIZE^3 voxels.
+ * Changes only mark chunks dirty; flush() rebuilds dirty chunks within a
+ * time budget, so a burst of changes is spread over several pulses. All
+ * chunks share one material whose diffuse map is a color palette, a voxel
+ * selects its palette entry by the texture coordinates of its faces.
+ */
+
+public class VoxelMesh extends Group {
+
+	public static final int PALETTE_SIZE = 32;
+
+	private final Map<Long,VoxelChunk> chunks = new HashMap<Long,VoxelChunk>();
+	private final Map<Long,MeshView>   views  = new HashMap<Long,MeshView>();
+	private final LinkedHashSet<Long>  dirty  = new LinkedHashSet<Long>();
+
+	private final VoxelChunk.Buffer    buffer = new VoxelChunk.Buffer();
+	private final VoxelChunk.Lookup    lookup = this::isOccupied;
+	private final PhongMaterial        material = new PhongMaterial();
+	private final float[]              tex_coords = new float[PALETTE_SIZE * 2];
+
+	private float size;
+
+	public VoxelMesh(float size, Color low, Color high) {
+		this.size = size;
+
+		final WritableImage palette = new WritableImage(PALETTE_SIZE, 1);
+		for(int i = 0; i < PALETTE_SIZE; i++) {
+			palette.getPixelWriter().setColor(i, 0, low.interpolate(high, i / (double)(PALETTE_SIZE - 1)));
+			tex_coords[2*i]   = (i + 0.5f) / PALETTE_SIZE;
+			tex_coords[2*i+1] = 0.5f;
+		}
+		material.setDiffuseMap(palette);
+		material.setSpecularColor(Color.BLACK);
+	}
+
+	/*
+	 * Sets a voxel with a palette color 0..1, or clears it if the value is NaN
+	 */
+	public void set(int ix, int iy, int iz, double value) {
+		final int color = Double.isNaN(value) ? 0
+				: 1 + (int)Math.round(Math.max(0, Math.min(1, value)) * (PALETTE_SIZE - 1));
+
+		final int cx = ix >> VoxelChunk.BITS, cy = iy >> VoxelChunk.BITS, cz = iz >> VoxelChunk.BITS;
+		final long key = VoxelChunk.key(cx, cy, cz);
+
+		VoxelChunk chunk = chunks.get(key);
+		if(chunk == null) {
+			if(color == 0)
+				return;
+			chunk = new VoxelChunk(cx, cy, cz);
+			chunks.put(key, chunk);
+		}
+
+		final boolean occupied = chunk.isOccupied(ix & VoxelChunk.MASK, iy & VoxelChunk.MASK, iz & VoxelChunk.MASK);
+		if(!chunk.set(ix, iy, iz, color))
+			return;
+		dirty.add(key);
+
+		// faces of neighbouring chunks depend on voxels at the border
+		if(occupied != (color != 0)) {
+			final int lx = ix & VoxelChunk.MASK, ly = iy & VoxelChunk.MASK, lz = iz & VoxelChunk.MASK;
+			if(lx == 0)               markDirty(cx - 1, cy, cz);
+			if(lx == VoxelChunk.MASK) markDirty(cx + 1, cy, cz);
+			if(ly == 0)               markDirty(cx, cy - 1, cz);
+			if(ly == VoxelChunk.MASK) markDirty(cx, cy + 1, cz);
+			if(lz == 0)               markDirty(cx, cy, cz - 1);
+			if(lz == VoxelChunk.MASK) markDirty(cx, cy, cz + 1);
+		}
+	}
+
+	public boolean isOccupied(int ix, int iy, int iz) {
+		final VoxelChunk chunk = chunks.get(VoxelChunk.key(ix >> VoxelChunk.BITS, iy >> VoxelChunk.BITS, iz >> VoxelChunk.BITS));
+		return chunk != null && chunk.isOccupied(ix & VoxelChunk.MASK, iy & VoxelChunk.MASK, iz & VoxelChunk.MASK);
+	}
+
+	public boolean isDirty() {
+		return !dirty.isEmpty();
+	}
+
+	/*
+	 * Rebuilds dirty chunks until the budget is used up. Returns true if all
+	 * chunks are up to date.
+	 */
+	public boolean flush(long budget_ns) {
+		final long start = System.nanoTime();
+		final Iterator<Long> i = dirty.iterator();
+		while(i.hasNext() && (System.nanoTime() - start) < budget_ns) {
+			final Long key = i.next();
+			i.remove();
+			rebuild(key);
+		}
+		return dirty.isEmpty();
+	}
+
+	/*
+	 * Removes all voxels; the voxel size may change with it
+	 */
+	public void clear(float size) {
+		this.size = size;
+		chunks.clear();
+		views.clear();
+		dirty.clear();
+		getChildren().clear();
+	}
+
+	public int getChunkCount() {
+		return chunks.size();
+	}
+
+	private void markDirty(int cx, int cy, int cz) {
+		final long key = VoxelChunk.key(cx, cy, cz);
+		if(chunks.containsKey(key))
+			dirty.add(key);
+	}
+
+	private void rebuild(Long key) {
+		final VoxelChunk chunk = chunks.get(key);
+		MeshView view = views.get(key);
+
+		if(chunk == null || chunk.isEmpty()) {
+			chunks.remove(key);
+			if(view != null) {
+				views.remove(key);
+				getChildren().remove(view);
+			}
+			return;
+		}
+
+		chunk.build(lookup, size, buffer);
+
+		if(view == null) {
+			final TriangleMesh mesh = new TriangleMesh();
+			mesh.getTexCoords().setAll(tex_coords);
+			view = new MeshView(mesh);
+			view.setMaterial(material);
+			view.setCullFace(CullFace.BACK);
+			views.put(key, view);
+			getChildren().add(view);
+		}
+
+		final TriangleMesh mesh = (TriangleMesh)view.getMesh();
+		mesh.getPoints().setAll(buffer.points, 0, buffer.point_count);
+		mesh.getFaces().setAll(buffer.faces, 0, buffer.face_count);
+	}
+}
@@ -43,6 +43,7 @@ import javafx.scene.chart.LineChart;
 public class SectionLineChart<X,Y> extends LineChart<X, Y> {
 
 	private XYAnnotations annotations;
+	private TraceCanvas   traces = null;
 
 	public SectionLineChart(@NamedArg("xAxis")Axis<X> xAxis, @NamedArg("yAxis")Axis<Y> yAxis) {
 		super(xAxis, yAxis);
@@ -53,6 +54,10 @@ public class SectionLineChart<X,Y> extends LineChart<X, Y> {
 	@Override
     protected void layoutPlotChildren() {
         super.layoutPlotChildren();
+        if(traces!=null) {
+        	traces.setSize(getXAxis().getWidth(), getYAxis().getHeight());
+        	traces.draw();
+        }
         if(annotations!=null)
           this.annotations.layoutAnnotations();
     }
@@ -61,6 +66,26 @@ public class SectionLineChart<X,Y> extends LineChart<X, Y> {
         return this.annotations;
     }
 
+	/*
+	 * Canvas for traces drawn from primitive data instead of data nodes, below
+	 * the series lines. Requires number axes.
+	 */
+	@SuppressWarnings("unchecked")
+	public TraceCanvas getTraces() {
+		if(traces == null) {
+			traces = new TraceCanvas((Axis<Number>)getXAxis(), (Axis<Number>)getYAxis());
+			getPlotChildren().add(0, traces);
+		}
+		return traces;
+	}
+
+	/*
+	 * Redraws the traces with the next layout pass, when the axes are up to date
+	 */
+	public void invalidateTraces() {
+		requestLayout();
+	}
+
 	public Node getAnnotationArea() {
 		Group plotArea = (Group) getChartChildren().get(1);
         int plotContentIndex = plotArea.getChildren().size() - 1;
@@ -0,0 +1,157 @@
+/****************************************************************************
+ *
+ *   Copyright (c) 2017 Eike Mansfeld ecm@gmx.de. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+ * AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ ****************************************************************************/
+
+package com.comino.jfx.extensions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javafx.scene.Node;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.chart.Axis;
+import javafx.scene.chart.XYChart;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Shape;
+
+/*
+ * Draws line traces into the plot area of a chart without any data nodes. The
+ * samples of each pixel column are reduced by the source to first, last,
+ * minimum and maximum (M4), so that the cost depends on the width of the plot
+ * only and no spike is lost. Stroke and width are taken from the node styling
+ * of the series the trace belongs to, which itself has no data.
+ */
+
+public class TraceCanvas extends Canvas {
+
+	public static final int FIRST = 0;
+	public static final int LAST  = 1;
+	public static final int MIN   = 2;
+	public static final int MAX   = 3;
+
+	public interface Source {
+		/*
+		 * Reduces the samples with x0 <= x < x1 into m4. Returns false if there is
+		 * no sample in the range; the values are NaN if all samples are invalid.
+		 */
+		boolean reduce(double x0, double x1, double[] m4);
+	}
+
+	private final Axis<Number> xAxis;
+	private final Axis<Number> yAxis;
+
+	private final List<Source> sources = new ArrayList<Source>();
+	private final List<XYChart.Series<?,?>> series = new ArrayList<XYChart.Series<?,?>>();
+
+	private final double[] m4 = new double[4];
+
+	public TraceCanvas(Axis<Number> xAxis, Axis<Number> yAxis) {
+		this.xAxis = xAxis;
+		this.yAxis = yAxis;
+		setMouseTransparent(true);
+		setManaged(false);
+	}
+
+	/*
+	 * Adds a trace styled like the line of the series, drawn in the order added
+	 */
+	public void add(Source source, XYChart.Series<?,?> s) {
+		sources.add(source);
+		series.add(s);
+	}
+
+	public void setSize(double width, double height) {
+		if(getWidth() != width)
+			setWidth(width);
+		if(getHeight() != height)
+			setHeight(height);
+	}
+
+	public void draw() {
+		final GraphicsContext gc = getGraphicsContext2D();
+		final int columns = (int)Math.ceil(getWidth());
+
+		gc.clearRect(0, 0, getWidth(), getHeight());
+		if(columns < 1 || getHeight() < 1)
+			return;
+
+		for(int i = 0; i < sources.size(); i++) {
+			// the series node is replaced if the series is added again
+			final Node style = series.get(i).getNode();
+			if(style != null && !style.isVisible())
+				continue;
+
+			if(style instanceof Shape) {
+				gc.setStroke(((Shape)style).getStroke());
+				gc.setLineWidth(((Shape)style).getStrokeWidth());
+			} else {
+				gc.setStroke(Color.GRAY);
+				gc.setLineWidth(1);
+			}
+
+			final Source source = sources.get(i);
+			boolean pen = false;
+			double x0 = xAxis.getValueForDisplay(0).doubleValue();
+
+			gc.beginPath();
+			for(int px = 0; px < columns; px++) {
+				final double x1 = xAxis.getValueForDisplay(px + 1).doubleValue();
+				final boolean found = source.reduce(x0, x1, m4);
+				x0 = x1;
+				// columns without samples are bridged, invalid samples break the line
+				if(!found)
+					continue;
+				if(Double.isNaN(m4[MIN]) || Double.isNaN(m4[MAX])) {
+					pen = false;
+					continue;
+				}
+				final double c = px + 0.5;
+				if(pen)
+					gc.lineTo(c, y(m4[FIRST]));
+				else
+					gc.moveTo(c, y(m4[FIRST]));
+				if(m4[MIN] < m4[MAX]) {
+					gc.lineTo(c, y(m4[MIN]));
+					gc.lineTo(c, y(m4[MAX]));
+				}
+				gc.lineTo(c, y(m4[LAST]));
+				pen = true;
+			}
+			gc.stroke();
+		}
+	}
+
+	private double y(double value) {
+		return yAxis.getDisplayPosition(value);
+	}
+}
@@ -36,6 +36,7 @@ package com.comino.jmavlib.extensions;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -50,7 +51,7 @@ import com.comino.mavcom.log.MSPLogger;
 import me.drton.jmavlib.log.FormatErrorException;
 import me.drton.jmavlib.log.ulog.FieldFormat;
 import me.drton.jmavlib.log.ulog.MessageAddLogged;
-import me.drton.jmavlib.log.ulog.MessageData;
+import me.drton.jmavlib.log.ulog.MessageDecoder;
 import me.drton.jmavlib.log.ulog.MessageDropout;
 import me.drton.jmavlib.log.ulog.MessageFlagBits;
 import me.drton.jmavlib.log.ulog.MessageFormat;
@@ -58,9 +59,16 @@ import me.drton.jmavlib.log.ulog.MessageInfo;
 import me.drton.jmavlib.log.ulog.MessageInfoMultiple;
 import me.drton.jmavlib.log.ulog.MessageLog;
 import me.drton.jmavlib.log.ulog.MessageParameter;
+import me.drton.jmavlib.log.ulog.ULogFieldBinder;
 import us.ihmc.log.LogTools;
 
-public class UlogMAVLinkParser  {
+/*
+ * Parses the ULog stream received via MAVLink. DATA records are decoded by
+ * compiled MessageDecoders directly into the bound slots of a primitive value
+ * array; fields are bound by an extraction plan after buildSubscriptions().
+ */
+
+public class UlogMAVLinkParser implements ULogFieldBinder {
 
 	private static final byte MESSAGE_TYPE_FORMAT = (byte) 'F';
 	private static final byte MESSAGE_TYPE_DATA = (byte) 'D';
@@ -86,9 +94,15 @@ public class UlogMAVLinkParser  {
 	private List<Subscription> messageSubscriptions = new ArrayList<Subscription>();
 	private Map<String, String> fieldsList = new HashMap<String, String>();
 
-	// Data map
+	// Typed decoding: field name to slot index and compiled decoders, index is the message id
+
+	private final Map<String, Integer> bindings = new HashMap<String, Integer>();
+	private MessageDecoder[] decoders = new MessageDecoder[0];
+	private double[] values = new double[0];
 
-	private Map<String, Object> data = new HashMap<String, Object>();
+	// Marker returned by readMessage() if a DATA record was decoded
+	private static final Object DECODED = new Object();
+	private long decodedTimestamp = 0;
 
 	// System info
 	private String systemName;
@@ -105,6 +119,7 @@ public class UlogMAVLinkParser  {
 	int currentAppendingOffsetIndex = 0; // current index to appendedOffsets for the next appended offset
 
 	private long timeStart=-1;
+	private long timeLast=-1;
 
 	public UlogMAVLinkParser() {
 		buffer = ByteBuffer.allocate(300000);
@@ -132,25 +147,64 @@ public class UlogMAVLinkParser  {
 			buffer.put((byte)(msg.data[i] & 0x00FF));
 	}
 
+	@Override
 	public Map<String, String> getFieldList() {
 		return fieldsList;
 	}
 
-	public Map<String, Object> getDataBuffer() {
-		return data;
+	/*
+	 * Latest values of all bound fields, NaN if not yet received
+	 */
+	public double[] getValues() {
+		return values;
+	}
+
+	@Override
+	public int bind(String field) {
+		Integer slot = bindings.get(field);
+		if(slot != null)
+			return slot;
+		final String type = fieldsList.get(field);
+		if(type == null || !FieldFormat.isNumericType(type))
+			return -1;
+		slot = bindings.size();
+		bindings.put(field, slot);
+		Arrays.fill(decoders, null);
+		values = Arrays.copyOf(values, bindings.size());
+		values[slot] = Double.NaN;
+		return slot;
+	}
+
+	@Override
+	public int getBindingCount() {
+		return bindings.size();
+	}
+
+	public void clearBindings() {
+		bindings.clear();
+		Arrays.fill(decoders, null);
+		values = new double[0];
 	}
 
 	public void clearBuffer() {
 		buffer.clear();
 	}
 
+	/*
+	 * Vehicle timestamp (us) of the last data message parsed, -1 if none
+	 */
+	public long getLastTimestamp() {
+		return timeLast;
+	}
+
 	public void reset() {
 		messageFormats.clear();
 		parameters.clear();
 		parameterUpdates.clear();
 		messageSubscriptions.clear();
 		fieldsList.clear();
-	//	data.clear();
+		clearBindings();
+		timeLast = -1;
 		nestedParsingDone = false;
 		buffer.clear();
 	}
@@ -177,11 +231,11 @@ public class UlogMAVLinkParser  {
 		buffer.flip();
 		while ((msg = readMessage()) != null) {
 			if(debug)
-				System.out.println(msg);
-			if(msg instanceof MessageData) {
+				System.out.println(msg == DECODED ? "DATA: t="+decodedTimestamp : msg);
+			if(msg == DECODED) {
 				if (timeStart < 0)
-					timeStart = ((MessageData)msg).timestamp;
-				applyMsg(data, (MessageData) msg);
+					timeStart = decodedTimestamp;
+				timeLast = decodedTimestamp;
 			}
 		}
 		buffer.compact();
@@ -373,7 +427,15 @@ public class UlogMAVLinkParser  {
 					return null;
 				}
 				try {
-					return new MessageData(subscription.format, buffer, subscription.multiID);
+					final MessageDecoder decoder = getDecoder(msgID, subscription);
+					final int start = buffer.position();
+					if (decoder.getSize() > msgSize - 2) {
+						buffer.position(start+msgSize-2);
+						return null;
+					}
+					decodedTimestamp = decoder.decode(buffer, start, values);
+					buffer.position(start+msgSize-2);
+					return DECODED;
 				} catch (FormatErrorException e) {
 				//	System.err.println(e.getMessage()+": " + msgID);
 					buffer.position(buffer.position()+msgSize-5);
@@ -438,22 +500,15 @@ public class UlogMAVLinkParser  {
 		return error;
 	}
 
-	private void applyMsg(Map<String, Object> update, MessageData msg) {
-		applyMsgAsName(update, msg, msg.format.name + "_" + msg.multiID);
-	}
-
-	private void applyMsgAsName(Map<String, Object> update, MessageData msg, String msg_name) {
-		final ArrayList<FieldFormat> fields = msg.format.fields;
-		for (int i = 0; i < fields.size(); i++)  {
-			FieldFormat field = fields.get(i);
-			if (field.isArray()) {
-				for (int j = 0; j < field.size; j++) {
-					update.put(msg_name + "." + field.name + "[" + j + "]", ((Object[]) msg.get(i))[j]);
-				}
-			} else {
-				update.put(msg_name + "." + field.name, msg.get(i));
-			}
+	private MessageDecoder getDecoder(int msgID, Subscription subscription) throws FormatErrorException {
+		if (msgID >= decoders.length)
+			decoders = Arrays.copyOf(decoders, Math.max(msgID + 1, messageSubscriptions.size()));
+		MessageDecoder decoder = decoders[msgID];
+		if (decoder == null) {
+			decoder = new MessageDecoder(subscription.format, subscription.multiID, bindings);
+			decoders[msgID] = decoder;
 		}
+		return decoder;
 	}
 
 	final protected static char[] hexArray = "0123456789ABCDEF".toCharArray();
@@ -3,6 +3,8 @@ package me.drton.jmavlib.log;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
@@ -11,24 +13,86 @@ import java.nio.channels.FileChannel;
  * User: ton Date: 03.06.13 Time: 14:51
  */
 public abstract class BinaryLogReader implements LogReader {
+    /** Maximum size of a single mapped segment */
+    protected static final int MAP_SEGMENT_SIZE = 1 << 30;
+
+    /** sun.misc.Unsafe and its invokeCleaner method, null if not available */
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method cleaner = null;
+        try {
+            Class<?> c = Class.forName("sun.misc.Unsafe");
+            Field f = c.getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            cleaner = c.getMethod("invokeCleaner", ByteBuffer.class);
+            unsafe = f.get(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            cleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = cleaner;
+    }
+
     protected ByteBuffer buffer;
     protected FileChannel channel = null;
     protected long channelPosition = 0;
 
+    private final boolean mapped;
+    private long fileSize = 0;
+    private long segmentStart = 0;
+
     public BinaryLogReader(String fileName) throws IOException {
-        buffer = ByteBuffer.allocate(65536);
-        buffer.order(ByteOrder.LITTLE_ENDIAN);
-        buffer.flip();
+        this(fileName, false);
+    }
+
+    /**
+     * @param mapped if true, the file is accessed through memory mapped segments instead of
+     *               reading into a heap buffer. Segments are remapped at the current position
+     *               when a message crosses the segment end, so files beyond 2 GB are supported.
+     *               Segments are unmapped when replaced and on {@link #close()}, as a mapping
+     *               keeps the file locked on Windows until it is released. This needs
+     *               sun.misc.Unsafe.invokeCleaner (Java 9+); without it the segments are only
+     *               released by the garbage collector.
+     */
+    public BinaryLogReader(String fileName, boolean mapped) throws IOException {
+        this.mapped = mapped;
         channel = new RandomAccessFile(fileName, "r").getChannel();
+        if (mapped) {
+            fileSize = channel.size();
+            map(0);
+        } else {
+            buffer = ByteBuffer.allocate(65536);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.flip();
+        }
+    }
+
+    public boolean isMapped() {
+        return mapped;
     }
 
     @Override
     public void close() throws IOException {
+        if (mapped) {
+            unmap(buffer);
+            buffer = ByteBuffer.allocate(0);
+        }
         channel.close();
         channel = null;
     }
 
     public int fillBuffer() throws IOException {
+        if (mapped) {
+            if (channelPosition >= fileSize) {
+                throw new EOFException();
+            }
+            long end = channelPosition;
+            map(position());
+            return (int) (channelPosition - end);
+        }
         buffer.compact();
         int n = channel.read(buffer);
         buffer.flip();
@@ -41,6 +105,16 @@ public abstract class BinaryLogReader implements LogReader {
 
     public void fillBuffer(int required) throws IOException {
         if (buffer.remaining() < required) {
+            if (mapped) {
+                if (channelPosition >= fileSize) {
+                    throw new EOFException();
+                }
+                map(position());
+                if (buffer.remaining() < required) {
+                    throw new EOFException();
+                }
+                return;
+            }
             buffer.compact();
             int n = channel.read(buffer);
             buffer.flip();
@@ -56,6 +130,17 @@ public abstract class BinaryLogReader implements LogReader {
     }
 
     protected int position(long pos) throws IOException {
+        if (mapped) {
+            if (pos >= fileSize) {
+                throw new EOFException();
+            }
+            if (pos >= segmentStart && pos < channelPosition) {
+                buffer.position((int) (pos - segmentStart));
+            } else {
+                map(pos);
+            }
+            return buffer.remaining();
+        }
         buffer.clear();
         channel.position(pos);
         channelPosition = pos;
@@ -67,4 +152,28 @@ public abstract class BinaryLogReader implements LogReader {
         channelPosition += n;
         return n;
     }
+
+    private void map(long pos) throws IOException {
+        long len = Math.min(MAP_SEGMENT_SIZE, fileSize - pos);
+        ByteBuffer previous = buffer;
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, pos, len);
+        unmap(previous);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        segmentStart = pos;
+        channelPosition = pos + len;
+    }
+
+    /**
+     * Releases a mapped segment immediately. The buffer must not be accessed afterwards.
+     */
+    private static void unmap(ByteBuffer segment) {
+        if (INVOKE_CLEANER == null || segment == null || !segment.isDirect()) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, segment);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Left to the garbage collector
+        }
+    }
 }
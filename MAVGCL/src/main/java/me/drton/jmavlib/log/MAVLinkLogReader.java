@@ -6,6 +6,7 @@ import java.io.RandomAccessFile;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -30,6 +31,12 @@ public class MAVLinkLogReader implements LogReader {
     private long sizeMicroseconds = -1;
     private long startMicroseconds = -1;
     private Set<Integer> skipMsgs = new HashSet<Integer>();
+    private final TimeIndex index = new TimeIndex();
+    // Field keys and bound slots per message definition, indexed by system ID
+    private final Map<MAVLinkMessageDefinition, String[][]> fieldNames = new IdentityHashMap<MAVLinkMessageDefinition, String[][]>();
+    private final Map<MAVLinkMessageDefinition, int[][]> fieldSlots = new IdentityHashMap<MAVLinkMessageDefinition, int[][]>();
+    private final Map<String, Integer> bindings = new HashMap<String, Integer>();
+    private final Set<String> scalarFields = new HashSet<String>();
 
     public MAVLinkLogReader(String fileName, MAVLinkSchema schema) throws IOException, FormatErrorException {
         String[] skipMsgNames = new String[]{
@@ -58,29 +65,60 @@ public class MAVLinkLogReader implements LogReader {
         if (seekTime == 0) {
             return true;
         }
-        while (true) {
-            long pos = stream.position();
-            MAVLinkMessage msg = stream.read();
-            if (msg == null) {
-                break;
-            }
-            long t = getTime(msg);
-            if (t >= 0) {
-                if (t > seekTime) {
-                    stream.position(pos);
-                    return true;
-                } else if (t > time) {
-                    time = t;
-                }
-            }
+        int i = index.find(seekTime, false);
+        if (i < 0) {
+            time = index.size() > 0 ? index.getTime(index.size() - 1) : 0;
+            stream.position(file.length());
+            return false;
+        }
+        if (i > 0) {
+            time = index.getTime(i - 1);
         }
-        return false;
+        stream.position(index.getPosition(i));
+        return true;
     }
 
     private String fieldName(MAVLinkMessage msg, MAVLinkField field) {
         return "M" + msg.systemID + ":" + msg.getMsgName() + "." + field.name;
     }
 
+    private String[] getFieldNames(MAVLinkMessage msg) {
+        String[][] bySystem = fieldNames.get(msg.definition);
+        if (bySystem == null) {
+            bySystem = new String[256][];
+            fieldNames.put(msg.definition, bySystem);
+        }
+        String[] names = bySystem[msg.systemID];
+        if (names == null) {
+            MAVLinkField[] fields = msg.definition.fields;
+            names = new String[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                names[i] = fieldName(msg, fields[i]);
+            }
+            bySystem[msg.systemID] = names;
+        }
+        return names;
+    }
+
+    private int[] getFieldSlots(MAVLinkMessage msg) {
+        int[][] bySystem = fieldSlots.get(msg.definition);
+        if (bySystem == null) {
+            bySystem = new int[256][];
+            fieldSlots.put(msg.definition, bySystem);
+        }
+        int[] slots = bySystem[msg.systemID];
+        if (slots == null) {
+            String[] names = getFieldNames(msg);
+            slots = new int[names.length];
+            for (int i = 0; i < names.length; i++) {
+                Integer slot = bindings.get(names[i]);
+                slots[i] = slot != null ? slot : -1;
+            }
+            bySystem[msg.systemID] = slots;
+        }
+        return slots;
+    }
+
     private void addMessageFormat(MAVLinkMessage msg) {
         for (MAVLinkField field : msg.definition.fields) {
             String type;
@@ -122,7 +160,11 @@ public class MAVLinkLogReader implements LogReader {
                     type = "<unknown>";
                     break;
             }
-            fieldsFormats.put(fieldName(msg, field), type);
+            String name = fieldName(msg, field);
+            fieldsFormats.put(name, type);
+            if (!field.isArray()) {
+                scalarFields.add(name);
+            }
         }
     }
 
@@ -144,15 +186,18 @@ public class MAVLinkLogReader implements LogReader {
         long packetsNum = 0;
         long timeStart = -1;
         long timeEnd = -1;
+        index.clear();
         while (true) {
+            long pos = stream.position();
             MAVLinkMessage msg;
-            msg = stream.read();
+            msg = stream.readView();
             if (msg == null) {
                 break;
             }
 
             long t = getTime(msg);
             if (t >= 0) {
+                index.add(t, pos);
                 if (timeStart < 0) {
                     timeStart = t;
                 }
@@ -182,28 +227,85 @@ public class MAVLinkLogReader implements LogReader {
         MAVLinkField field;
         field = msg.definition.fieldsByName.get("time_usec");
         if (field != null) {
-            return ((Number) msg.get(field)).longValue();
+            return msg.getLong(field);
         }
         field = msg.definition.fieldsByName.get("time_boot_ms");
         if (field != null) {
-            return ((Number) msg.get(field)).longValue() * 1000;
+            return msg.getLong(field) * 1000;
         }
         return -1;
     }
 
+    /**
+     * Values are boxed into the update map as required by the LogReader interface, readUpdate(double[])
+     * decodes bound fields without allocation.
+     */
     @Override
     public long readUpdate(Map<String, Object> update) throws IOException, FormatErrorException {
-        MAVLinkMessage msg = stream.read();
+        MAVLinkMessage msg = stream.readView();
         if (msg == null) {
             throw new EOFException();
         }
-        for (MAVLinkField field : msg.definition.fields) {
-            update.put(fieldName(msg, field), msg.get(field));
-            long t = getTime(msg);
-            if (t >= 0 && t > time) {
-                time = t;
+        final MAVLinkField[] fields = msg.definition.fields;
+        final String[] names = getFieldNames(msg);
+        for (int i = 0; i < fields.length; i++) {
+            update.put(names[i], msg.get(fields[i]));
+        }
+        return updateTime(msg);
+    }
+
+    /**
+     * Typed variant of readUpdate(Map): decode the next message directly into the bound slots of values.
+     * Slots of fields not contained in the message keep their previous value.
+     *
+     * @return time of update in us
+     */
+    public long readUpdate(double[] values) throws IOException, FormatErrorException {
+        MAVLinkMessage msg = stream.readView();
+        if (msg == null) {
+            throw new EOFException();
+        }
+        final MAVLinkField[] fields = msg.definition.fields;
+        final int[] slots = getFieldSlots(msg);
+        for (int i = 0; i < fields.length; i++) {
+            if (slots[i] >= 0) {
+                values[slots[i]] = msg.getDouble(fields[i]);
             }
         }
+        return updateTime(msg);
+    }
+
+    /**
+     * Bind a single value field ("M<sysID>:<message>.<field>") to a slot of the value array.
+     *
+     * @return slot index or -1 if the field is not available as numeric value
+     */
+    public int bind(String field) {
+        Integer slot = bindings.get(field);
+        if (slot != null) {
+            return slot;
+        }
+        if (!scalarFields.contains(field) || "char".equals(fieldsFormats.get(field))) {
+            return -1;
+        }
+        slot = bindings.size();
+        bindings.put(field, slot);
+        fieldSlots.clear();
+        return slot;
+    }
+
+    /**
+     * @return number of bound fields, i.e. the minimum size of the value array
+     */
+    public int getBindingCount() {
+        return bindings.size();
+    }
+
+    private long updateTime(MAVLinkMessage msg) {
+        long t = getTime(msg);
+        if (t >= 0 && t > time) {
+            time = t;
+        }
         return time;
     }
 
@@ -0,0 +1,72 @@
+package me.drton.jmavlib.log;
+
+import java.util.Arrays;
+
+/**
+ * Sparse timestamp to file position table for seeking.
+ *
+ * Only positions where the running maximum of the timestamps increases are stored, so the table is
+ * sorted and can be binary searched. The first entry with time >= t (or > t) is exactly the first
+ * message of the log with such a timestamp, as a linear scan would find it.
+ */
+public class TimeIndex {
+    private long[] times = new long[1024];
+    private long[] positions = new long[1024];
+    private int size = 0;
+
+    /**
+     * Add message timestamp and position, must be called in file order.
+     */
+    public void add(long time, long position) {
+        if (size > 0 && time <= times[size - 1]) {
+            return;
+        }
+        if (size == times.length) {
+            times = Arrays.copyOf(times, size * 2);
+            positions = Arrays.copyOf(positions, size * 2);
+        }
+        times[size] = time;
+        positions[size] = position;
+        size++;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Find first entry with timestamp after the given time.
+     *
+     * @param time      time to search
+     * @param inclusive if true also accept an entry with exactly this timestamp
+     * @return entry index or -1 if all timestamps are before the given time
+     */
+    public int find(long time, boolean inclusive) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (inclusive ? times[mid] < time : times[mid] <= time) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo < size ? lo : -1;
+    }
+
+    /**
+     * @return maximum timestamp up to and including the entry
+     */
+    public long getTime(int index) {
+        return times[index];
+    }
+
+    public long getPosition(int index) {
+        return positions[index];
+    }
+}
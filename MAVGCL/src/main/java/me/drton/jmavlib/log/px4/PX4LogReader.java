@@ -11,6 +11,7 @@ import java.util.Set;
 
 import me.drton.jmavlib.log.BinaryLogReader;
 import me.drton.jmavlib.log.FormatErrorException;
+import me.drton.jmavlib.log.TimeIndex;
 
 /**
  * User: ton Date: 03.06.13 Time: 14:18
@@ -36,6 +37,7 @@ public class PX4LogReader extends BinaryLogReader {
 	private List<Exception> errors = new ArrayList<Exception>();
 	private String tsName = null;
 	private boolean tsMicros;
+	private final TimeIndex index = new TimeIndex();
 
 	private static Set<String> hideMsgs = new HashSet<String>();
 	private static Map<String, String> formatNames = new HashMap<String, String>();
@@ -117,8 +119,10 @@ public class PX4LogReader extends BinaryLogReader {
 		long timeEnd = -1;
 		boolean parseVersion = true;
 		StringBuilder versionStr = new StringBuilder();
+		index.clear();
 		while (true) {
 			PX4LogMessage msg;
+			long pos = position();
 			try {
 				msg = readMessage();
 			} catch (EOFException e) {
@@ -129,6 +133,7 @@ public class PX4LogReader extends BinaryLogReader {
 				if ("TIME".equals(msg.description.name)) {
 					long t = msg.getLong(0);
 					time = t;
+					index.add(t, pos);
 					if (timeStart < 0) {
 						timeStart = t;
 					}
@@ -137,6 +142,7 @@ public class PX4LogReader extends BinaryLogReader {
 			} else {
 				long t = getAPMTimestamp(msg);
 				if (t > 0) {
+					index.add(t, pos);
 					if (timeStart < 0) {
 						timeStart = t;
 					}
@@ -220,60 +226,19 @@ public class PX4LogReader extends BinaryLogReader {
 			time = 0;
 			return true;
 		}
-		// Seek to specified timestamp without parsing all messages
-		try {
-			while (true) {
-				long pos = position();
-				int msgType = readHeader();
-				PX4LogMessageDescription messageDescription = messageDescriptions.get(msgType);
-				if (messageDescription == null) {
-					errors.add(new FormatErrorException(pos, "Unknown message type: " + msgType));
-					continue;
-				}
-				int bodyLen = messageDescription.length - HEADER_LEN;
-				try {
-					fillBuffer(bodyLen);
-				} catch (EOFException e) {
-					errors.add(new FormatErrorException(pos, "Unexpected end of file"));
-					return false;
-				}
-				if (formatPX4) {
-					if ("TIME".equals(messageDescription.name)) {
-						PX4LogMessage msg = messageDescription.parseMessage(buffer);
-						long t = msg.getLong(0);
-						if (t > seekTime) {
-							// Time found
-							time = t;
-							position(pos);
-							return true;
-						}
-					} else {
-						// Skip the message
-						buffer.position(buffer.position() + bodyLen);
-					}
-				} else {
-					Integer idx = messageDescription.fieldsMap.get(tsName);
-					if (idx != null && idx == 0) {
-						PX4LogMessage msg = messageDescription.parseMessage(buffer);
-						long t = msg.getLong(idx);
-						if (!tsMicros) {
-							t *= 1000;
-						}
-						if (t > seekTime) {
-							// Time found
-							time = t;
-							position(pos);
-							return true;
-						}
-					} else {
-						// Skip the message
-						buffer.position(buffer.position() + bodyLen);
-					}
-				}
+		// Binary search the time index built by updateStatistics()
+		int i = index.find(seekTime, false);
+		if (i < 0) {
+			try {
+				position(channel.size());
+			} catch (EOFException e) {
+				// Positioned at end of log
 			}
-		} catch (EOFException e) {
 			return false;
 		}
+		time = index.getTime(i);
+		position(index.getPosition(i));
+		return true;
 	}
 
 	// return ts in micros
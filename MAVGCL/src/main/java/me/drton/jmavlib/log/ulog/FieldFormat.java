@@ -6,9 +6,23 @@ import java.nio.ByteBuffer;
  * Created by ton on 26.10.15.
  */
 public class FieldFormat {
+    static final int TYPE_UNKNOWN = 0;
+    static final int TYPE_FLOAT = 1;
+    static final int TYPE_DOUBLE = 2;
+    static final int TYPE_INT8 = 3;
+    static final int TYPE_UINT8 = 4;
+    static final int TYPE_INT16 = 5;
+    static final int TYPE_UINT16 = 6;
+    static final int TYPE_INT32 = 7;
+    static final int TYPE_UINT32 = 8;
+    static final int TYPE_INT64 = 9;
+    static final int TYPE_UINT64 = 10;
+    static final int TYPE_CHAR = 11;
+
     public final String name;
     public final String type;
     public final int size; //array length (-1 if not an array)
+    final int typeId;
 
     public FieldFormat(String formatStr) {
         String[] p = formatStr.split(" ");
@@ -25,12 +39,115 @@ public class FieldFormat {
             type = p[0];
             size = -1;
         }
+        typeId = getTypeId(type);
     }
 
     public FieldFormat(String name, String type, int size) {
         this.name = name;
         this.type = type;
         this.size = size;
+        this.typeId = getTypeId(type);
+    }
+
+    static int getTypeId(String type) {
+        switch (type) {
+            case "float":    return TYPE_FLOAT;
+            case "double":   return TYPE_DOUBLE;
+            case "int8_t":
+            case "bool":     return TYPE_INT8;
+            case "uint8_t":  return TYPE_UINT8;
+            case "int16_t":  return TYPE_INT16;
+            case "uint16_t": return TYPE_UINT16;
+            case "int32_t":  return TYPE_INT32;
+            case "uint32_t": return TYPE_UINT32;
+            case "int64_t":  return TYPE_INT64;
+            case "uint64_t": return TYPE_UINT64;
+            case "char":     return TYPE_CHAR;
+            default:         return TYPE_UNKNOWN;
+        }
+    }
+
+    /**
+     * Size of a single element in bytes, 0 for unknown types (which are not consumed from the buffer).
+     */
+    static int getTypeSize(int typeId) {
+        switch (typeId) {
+            case TYPE_INT8:
+            case TYPE_UINT8:
+            case TYPE_CHAR:
+                return 1;
+            case TYPE_INT16:
+            case TYPE_UINT16:
+                return 2;
+            case TYPE_FLOAT:
+            case TYPE_INT32:
+            case TYPE_UINT32:
+                return 4;
+            case TYPE_DOUBLE:
+            case TYPE_INT64:
+            case TYPE_UINT64:
+                return 8;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Total size of this field in bytes.
+     */
+    int getByteSize() {
+        return getTypeSize(typeId) * (size >= 0 ? size : 1);
+    }
+
+    /**
+     * Returns true if the boxed value of this type is a Long.
+     */
+    public static boolean isLongType(String type) {
+        switch (getTypeId(type)) {
+            case TYPE_UINT32:
+            case TYPE_INT64:
+            case TYPE_UINT64:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns true if elements of this type can be decoded as numeric value.
+     */
+    public static boolean isNumericType(String type) {
+        int typeId = getTypeId(type);
+        return typeId != TYPE_CHAR && typeId != TYPE_UNKNOWN;
+    }
+
+    /**
+     * Read a single numeric element at an absolute buffer position without boxing.
+     * Values are converted the same way as the boxed values returned by getValue().
+     */
+    static double getDouble(ByteBuffer buffer, int pos, int typeId) {
+        switch (typeId) {
+            case TYPE_FLOAT:  return buffer.getFloat(pos);
+            case TYPE_DOUBLE: return buffer.getDouble(pos);
+            case TYPE_INT8:   return buffer.get(pos);
+            case TYPE_UINT8:  return buffer.get(pos) & 0xFF;
+            case TYPE_INT16:  return buffer.getShort(pos);
+            case TYPE_UINT16: return buffer.getShort(pos) & 0xFFFF;
+            case TYPE_INT32:  return buffer.getInt(pos);
+            case TYPE_UINT32: return buffer.getInt(pos) & 0xFFFFFFFFl;
+            case TYPE_INT64:
+            case TYPE_UINT64: return buffer.getLong(pos);
+            default:          return 0;
+        }
+    }
+
+    static long getLong(ByteBuffer buffer, int pos, int typeId) {
+        switch (typeId) {
+            case TYPE_INT64:
+            case TYPE_UINT64: return buffer.getLong(pos);
+            case TYPE_UINT32: return buffer.getInt(pos) & 0xFFFFFFFFl;
+            default:          return (long) getDouble(buffer, pos, typeId);
+        }
     }
 
     public String getFullTypeString() {
@@ -46,7 +163,7 @@ public class FieldFormat {
     public Object getValue(ByteBuffer buffer) {
         Object v;
         if (size >= 0) {
-            if (type.equals("char")) {
+            if (typeId == TYPE_CHAR) {
                 byte[] stringBytes = new byte[size];
                 buffer.get(stringBytes);
                 String s = new String(stringBytes);
@@ -71,31 +188,41 @@ public class FieldFormat {
 
     private Object getSingleValue(ByteBuffer buffer) {
         Object v;
-        if (type.equals("float")) {
-            v = buffer.getFloat();
-        } else if (type.equals("double")) {
-            v = buffer.getDouble();
-        } else if (type.equals("int8_t") || type.equals("bool")) {
-            v = (int) buffer.get();
-        } else if (type.equals("uint8_t")) {
-            v = buffer.get() & 0xFF;
-        } else if (type.equals("int16_t")) {
-            v = (int) buffer.getShort();
-        } else if (type.equals("uint16_t")) {
-            v = buffer.getShort() & 0xFFFF;
-        } else if (type.equals("int32_t")) {
-            v = buffer.getInt();
-        } else if (type.equals("uint32_t")) {
-            v = buffer.getInt() & 0xFFFFFFFFl;
-        } else if (type.equals("int64_t")) {
-            v = buffer.getLong();
-        } else if (type.equals("uint64_t")) {
-            v = buffer.getLong();
-        } else if (type.equals("char")) {
-            v = buffer.get();
-        } else {
-        	v=0;
-         //   throw new RuntimeException("Unsupported type: " + type);
+        switch (typeId) {
+            case TYPE_FLOAT:
+                v = buffer.getFloat();
+                break;
+            case TYPE_DOUBLE:
+                v = buffer.getDouble();
+                break;
+            case TYPE_INT8:
+                v = (int) buffer.get();
+                break;
+            case TYPE_UINT8:
+                v = buffer.get() & 0xFF;
+                break;
+            case TYPE_INT16:
+                v = (int) buffer.getShort();
+                break;
+            case TYPE_UINT16:
+                v = buffer.getShort() & 0xFFFF;
+                break;
+            case TYPE_INT32:
+                v = buffer.getInt();
+                break;
+            case TYPE_UINT32:
+                v = buffer.getInt() & 0xFFFFFFFFl;
+                break;
+            case TYPE_INT64:
+            case TYPE_UINT64:
+                v = buffer.getLong();
+                break;
+            case TYPE_CHAR:
+                v = buffer.get();
+                break;
+            default:
+                v = 0;
+             //   throw new RuntimeException("Unsupported type: " + type);
         }
         return v;
     }
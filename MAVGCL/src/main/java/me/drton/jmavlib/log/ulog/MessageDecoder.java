@@ -0,0 +1,110 @@
+package me.drton.jmavlib.log.ulog;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+
+import me.drton.jmavlib.log.FormatErrorException;
+
+/**
+ * Typed decoder for the DATA records of one subscription. The message format is
+ * compiled once into field offsets and type ids, records are then decoded directly
+ * from the buffer into the bound primitive slots without boxing.
+ */
+public class MessageDecoder {
+    private final int timestampOffset;
+    private final int timestampType;
+    private final int[] offsets;
+    private final int[] types;
+    private final int[] targets;
+    private final int count;
+
+    /** Size of the record body as parsed by MessageFormat.parseBody() */
+    final int size;
+
+    /**
+     * Compile a decoder for the given format and instance.
+     *
+     * @param format  flattened message format
+     * @param multiID multi instance of the subscription
+     * @param bindings map of full field names ("topic_N.field[j]") to slot indices
+     */
+    public MessageDecoder(MessageFormat format, int multiID, Map<String, Integer> bindings)
+            throws FormatErrorException {
+        final String prefix = format.name + "_" + multiID + ".";
+        final int n = format.fields.size();
+
+        int[] o = new int[16];
+        int[] t = new int[16];
+        int[] s = new int[16];
+        int c = 0;
+        int tsOffset = -1;
+        int tsType = FieldFormat.TYPE_UNKNOWN;
+
+        int offset = 0;
+        for (int i = 0; i < n; i++) {
+            FieldFormat field = format.fields.get(i);
+            int typeSize = FieldFormat.getTypeSize(field.typeId);
+            if ("timestamp".equals(field.name) && field.size < 0) {
+                tsOffset = offset;
+                tsType = field.typeId;
+            }
+            if (field.typeId != FieldFormat.TYPE_CHAR && field.typeId != FieldFormat.TYPE_UNKNOWN
+                    && !bindings.isEmpty()) {
+                int elements = field.size >= 0 ? field.size : 1;
+                for (int j = 0; j < elements; j++) {
+                    Integer slot = bindings.get(field.isArray()
+                                                ? prefix + field.name + "[" + j + "]"
+                                                : prefix + field.name);
+                    if (slot == null) {
+                        continue;
+                    }
+                    if (c == o.length) {
+                        o = Arrays.copyOf(o, c * 2);
+                        t = Arrays.copyOf(t, c * 2);
+                        s = Arrays.copyOf(s, c * 2);
+                    }
+                    o[c] = offset + j * typeSize;
+                    t[c] = field.typeId;
+                    s[c] = slot;
+                    c++;
+                }
+            }
+            offset += field.getByteSize();
+        }
+        if (tsOffset < 0) {
+            throw new FormatErrorException("Message " + format.name + " has no timestamp field");
+        }
+        this.timestampOffset = tsOffset;
+        this.timestampType = tsType;
+        this.offsets = Arrays.copyOf(o, c);
+        this.types = Arrays.copyOf(t, c);
+        this.targets = Arrays.copyOf(s, c);
+        this.count = c;
+        this.size = offset;
+    }
+
+    /**
+     * Decode a record body starting at the given absolute buffer position. The buffer
+     * position itself is not modified.
+     *
+     * @return timestamp of the record
+     */
+    public long decode(ByteBuffer buffer, int start, double[] values) {
+        for (int i = 0; i < count; i++) {
+            values[targets[i]] = FieldFormat.getDouble(buffer, start + offsets[i], types[i]);
+        }
+        return FieldFormat.getLong(buffer, start + timestampOffset, timestampType);
+    }
+
+    /**
+     * @return size of the record body in bytes
+     */
+    public int getSize() {
+        return size;
+    }
+
+    public int getBoundFieldCount() {
+        return count;
+    }
+}
@@ -0,0 +1,27 @@
+package me.drton.jmavlib.log.ulog;
+
+import java.util.Map;
+
+/**
+ * Source of typed ULog records which decodes bound fields directly into slots of a
+ * primitive value array.
+ */
+public interface ULogFieldBinder {
+
+    /**
+     * @return map of all field names to their type names
+     */
+    Map<String, String> getFieldList();
+
+    /**
+     * Bind a field ("topic_N.field" or "topic_N.field[j]") to a slot of the value array.
+     *
+     * @return slot index or -1 if the field is not available as numeric value
+     */
+    int bind(String field);
+
+    /**
+     * @return number of bound fields, i.e. the minimum size of the value array
+     */
+    int getBindingCount();
+}
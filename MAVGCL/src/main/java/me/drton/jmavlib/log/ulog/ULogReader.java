@@ -11,11 +11,12 @@ import javax.swing.JFileChooser;
 
 import me.drton.jmavlib.log.BinaryLogReader;
 import me.drton.jmavlib.log.FormatErrorException;
+import me.drton.jmavlib.log.TimeIndex;
 
 /**
  * User: ton Date: 03.06.13 Time: 14:18
  */
-public class ULogReader extends BinaryLogReader {
+public class ULogReader extends BinaryLogReader implements ULogFieldBinder {
     static final byte MESSAGE_TYPE_FORMAT = (byte) 'F';
     static final byte MESSAGE_TYPE_DATA = (byte) 'D';
     static final byte MESSAGE_TYPE_INFO = (byte) 'I';
@@ -49,6 +50,17 @@ public class ULogReader extends BinaryLogReader {
     /** all subscriptions. Index is the message id */
     private ArrayList<Subscription> messageSubscriptions = new ArrayList<Subscription>();
 
+    /** Typed decoding: field name to slot index and compiled decoders, index is the message id */
+    private final Map<String, Integer> bindings = new HashMap<String, Integer>();
+    private MessageDecoder[] decoders = new MessageDecoder[0];
+    private long decodedTimestamp = 0;
+    private long decodedPosition = 0;
+    private int decodedMsgID = -1;
+
+    /** Marker returned by readMessage() if a DATA record was decoded by the typed path */
+    private static final Object DECODED = new Object();
+    private static final double[] NO_VALUES = new double[0];
+
     private Map<String, String> fieldsList = null;
     private long sizeUpdates = -1;
     private long sizeMicroseconds = -1;
@@ -94,21 +106,18 @@ public class ULogReader extends BinaryLogReader {
     private int logVersion = 0;
     private int headerSize = 2;
 
-    /** Index for fast(er) seeking */
-    private ArrayList<SeekTime> seekTimes = null;
+    /** Index for fast seeking */
+    private final TimeIndex seekTimes = new TimeIndex();
 
-    private class SeekTime {
-        public SeekTime(long t, long pos) {
-            timestamp = t;
-            position = pos;
-        }
-
-        public long timestamp;
-        public long position;
+    public ULogReader(String fileName) throws IOException, FormatErrorException {
+        this(fileName, false);
     }
 
-    public ULogReader(String fileName) throws IOException, FormatErrorException {
-        super(fileName);
+    /**
+     * @param mapped access the file through memory mapped segments, see BinaryLogReader
+     */
+    public ULogReader(String fileName, boolean mapped) throws IOException, FormatErrorException {
+        super(fileName, mapped);
         parameterUpdates = new HashMap<String, List<ParamUpdate>>();
         updateStatistics();
     }
@@ -152,6 +161,7 @@ public class ULogReader extends BinaryLogReader {
         return parameters;
     }
     
+    @Override
     public Map<String, String> getFieldList() {
 		return fieldsList;
 	}
@@ -212,12 +222,12 @@ public class ULogReader extends BinaryLogReader {
         long timeEnd = -1;
         long lastTime = -1;
         fieldsList = new HashMap<String, String>();
-        seekTimes = new ArrayList<SeekTime>();
+        seekTimes.clear();
         while (true) {
             Object msg;
             long pos = position();
             try {
-                msg = readMessage();
+                msg = readMessage(NO_VALUES);
             } catch (EOFException e) {
                 break;
             }
@@ -272,6 +282,9 @@ public class ULogReader extends BinaryLogReader {
                     throw new FormatErrorException("Format of subscribed message not found: " + msgAddLogged.name);
                 }
                 Subscription subscription = new Subscription(msgFormat, msgAddLogged.multiID);
+                if (msgAddLogged.msgID < decoders.length) {
+                    decoders[msgAddLogged.msgID] = null;
+                }
                 if (msgAddLogged.msgID < messageSubscriptions.size()) {
                     messageSubscriptions.set(msgAddLogged.msgID, subscription);
                 } else {
@@ -325,18 +338,17 @@ public class ULogReader extends BinaryLogReader {
                     hardfaultPlainText += (String)msgInfo.value;
                 }
 
-            } else if (msg instanceof MessageData) {
+            } else if (msg == DECODED) {
                 if (dataStart == 0) {
                     dataStart = pos;
                 }
-                MessageData msgData = (MessageData) msg;
-                seekTimes.add(new SeekTime(msgData.timestamp, pos));
+                seekTimes.add(decodedTimestamp, pos);
 
                 if (timeStart < 0) {
-                    timeStart = msgData.timestamp;
+                    timeStart = decodedTimestamp;
                 }
-                if (timeEnd < msgData.timestamp) { timeEnd = msgData.timestamp; }
-                lastTime = msgData.timestamp;
+                if (timeEnd < decodedTimestamp) { timeEnd = decodedTimestamp; }
+                lastTime = decodedTimestamp;
             } else if (msg instanceof MessageLog) {
                 MessageLog msgLog = (MessageLog) msg;
                 loggedMessages.add(msgLog);
@@ -396,19 +408,17 @@ public class ULogReader extends BinaryLogReader {
             return true;
         }
 
-        //find the position in seekTime. We could speed this up further by
-        //using a binary search
-        for (SeekTime sk : seekTimes) {
-            if (sk.timestamp >= seekTime) {
-                position(sk.position);
-                while (currentAppendingOffsetIndex < appendedOffsets.size() &&
-                        appendedOffsets.get(currentAppendingOffsetIndex) < sk.position) {
-                    ++currentAppendingOffsetIndex;
-                }
-                return true;
-            }
+        int i = seekTimes.find(seekTime, true);
+        if (i < 0) {
+            return false;
         }
-        return false;
+        long pos = seekTimes.getPosition(i);
+        position(pos);
+        while (currentAppendingOffsetIndex < appendedOffsets.size() &&
+                appendedOffsets.get(currentAppendingOffsetIndex) < pos) {
+            ++currentAppendingOffsetIndex;
+        }
+        return true;
     }
 
     private void applyMsg(Map<String, Object> update, MessageData msg) {
@@ -440,6 +450,105 @@ public class ULogReader extends BinaryLogReader {
         }
     }
 
+    /**
+     * Bind a field ("topic_N.field" or "topic_N.field[j]") to a slot of the value
+     * array passed to readUpdate(double[]).
+     *
+     * @return slot index or -1 if the field is not available as numeric value in this log
+     */
+    @Override
+    public int bind(String field) {
+        Integer slot = bindings.get(field);
+        if (slot != null) {
+            return slot;
+        }
+        String type = fieldsList.get(field);
+        if (type == null || FieldFormat.getTypeId(type) == FieldFormat.TYPE_CHAR) {
+            return -1;
+        }
+        slot = bindings.size();
+        bindings.put(field, slot);
+        Arrays.fill(decoders, null);
+        return slot;
+    }
+
+    /**
+     * @return number of bound fields, i.e. the minimum size of the value array
+     */
+    @Override
+    public int getBindingCount() {
+        return bindings.size();
+    }
+
+    /**
+     * Remove all field bindings, slots are assigned from 0 again by bind().
+     */
+    public void clearBindings() {
+        bindings.clear();
+        Arrays.fill(decoders, null);
+    }
+
+    /**
+     * @return file position of the last DATA record decoded by readUpdate(double[])
+     */
+    public long getDecodedPosition() {
+        return decodedPosition;
+    }
+
+    /**
+     * @return message id of the last DATA record decoded by readUpdate(double[])
+     */
+    public int getDecodedMessageID() {
+        return decodedMsgID;
+    }
+
+    /**
+     * @return current file position, i.e. the position of the next message
+     */
+    public long getPosition() throws IOException {
+        return position();
+    }
+
+    /**
+     * Continue reading at a message position previously obtained by getPosition() or
+     * getDecodedPosition().
+     */
+    public void seekPosition(long pos) throws IOException {
+        position(pos);
+        currentAppendingOffsetIndex = 0;
+        while (currentAppendingOffsetIndex < appendedOffsets.size() &&
+                appendedOffsets.get(currentAppendingOffsetIndex) < pos) {
+            ++currentAppendingOffsetIndex;
+        }
+    }
+
+    /**
+     * Typed variant of readUpdate(Map): decode the next DATA record directly into
+     * the bound slots of values. Slots of fields not contained in the record keep
+     * their previous value.
+     *
+     * @return timestamp of the record
+     */
+    public long readUpdate(double[] values) throws IOException, FormatErrorException {
+        while (true) {
+            if (readMessage(values) == DECODED) {
+                return decodedTimestamp;
+            }
+        }
+    }
+
+    private MessageDecoder getDecoder(int msgID, Subscription subscription) throws FormatErrorException {
+        if (msgID >= decoders.length) {
+            decoders = Arrays.copyOf(decoders, Math.max(msgID + 1, messageSubscriptions.size()));
+        }
+        MessageDecoder decoder = decoders[msgID];
+        if (decoder == null) {
+            decoder = new MessageDecoder(subscription.format, subscription.multiID, bindings);
+            decoders[msgID] = decoder;
+        }
+        return decoder;
+    }
+
     @Override
     public Map<String, String> getFields() {
         return fieldsList;
@@ -453,6 +562,14 @@ public class ULogReader extends BinaryLogReader {
      * @throws EOFException on end of stream
      */
     public Object readMessage() throws IOException, FormatErrorException {
+        return readMessage(null);
+    }
+
+    /**
+     * Read next message from log. If values is not null, DATA records are decoded
+     * by the typed path into values and DECODED is returned instead of a MessageData.
+     */
+    private Object readMessage(double[] values) throws IOException, FormatErrorException {
         while (true) {
             fillBuffer(HDRLEN);
             long pos = position();
@@ -493,7 +610,23 @@ public class ULogReader extends BinaryLogReader {
                         buffer.position(buffer.position() + msgSize - 1);
                         continue;
                     }
-                    msg = new MessageData(subscription.format, buffer, subscription.multiID);
+                    if (values == null) {
+                        msg = new MessageData(subscription.format, buffer, subscription.multiID);
+                        break;
+                    }
+                    MessageDecoder decoder = getDecoder(msgID, subscription);
+                    int start = buffer.position();
+                    if (decoder.size > msgSize - 2) {
+                        errors.add(new FormatErrorException(pos, "Message too short for format "
+                                                            + subscription.format.name));
+                        buffer.position(start + msgSize - 2);
+                        continue;
+                    }
+                    decodedTimestamp = decoder.decode(buffer, start, values);
+                    decodedPosition = pos;
+                    decodedMsgID = msgID;
+                    buffer.position(start + decoder.size);
+                    msg = DECODED;
                     break;
                 case MESSAGE_TYPE_FLAG_BITS:
                     msg = new MessageFlagBits(buffer, msgSize);
@@ -3,6 +3,7 @@ package me.drton.jmavlib.mavlink;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.Arrays;
 
 /**
  * User: ton Date: 03.06.14 Time: 12:31
@@ -16,6 +17,7 @@ public class MAVLinkMessage {
     public final static int MAVLINK2_MSGID_EXTENSION = 2;
     public final static int MAVLINK2_compatFlags_EXTENSION = 2;
     public final static byte MAVLINK_IFLAG_SIGNED = 0x01;
+    public final static int MAX_PAYLOAD_LENGTH = 255;
     private final MAVLinkSchema schema;
     public final MAVLinkMessageDefinition definition;
     public final int msgID;
@@ -69,6 +71,41 @@ public class MAVLinkMessage {
         this.protocolVersion = protocolVersion;
     }
 
+    /**
+     * Create reusable message view of one message type and sender, bound to its frames by wrap()
+     * (for allocation free parsing)
+     */
+    MAVLinkMessage(MAVLinkSchema schema, MAVLinkMessageDefinition definition, int systemID, int componentID) {
+        this.schema = schema;
+        this.definition = definition;
+        this.msgID = definition.id;
+        this.systemID = systemID;
+        this.componentID = componentID;
+        this.payload = new byte[definition.payloadLength];
+        this.payloadBB = ByteBuffer.wrap(payload);
+        payloadBB.order(schema.getByteOrder());
+    }
+
+    /**
+     * Create independent copy of a message, e.g. of a reused view
+     */
+    public MAVLinkMessage(MAVLinkMessage msg) {
+        this.schema = msg.schema;
+        this.definition = msg.definition;
+        this.msgID = msg.msgID;
+        this.systemID = msg.systemID;
+        this.componentID = msg.componentID;
+        this.sequence = msg.sequence;
+        this.compatFlags = msg.compatFlags;
+        this.incompatFlags = msg.incompatFlags;
+        this.signingEnabled = msg.signingEnabled;
+        this.protocolVersion = msg.protocolVersion;
+        this.crc = msg.crc;
+        this.payload = Arrays.copyOf(msg.payload, definition.payloadLength);
+        this.payloadBB = ByteBuffer.wrap(payload);
+        payloadBB.order(schema.getByteOrder());
+    }
+
     /**
      * Create message from buffer (for parsing)
      */
@@ -163,16 +200,49 @@ public class MAVLinkMessage {
         }
     }
 
+    /**
+     * Bind this view to a frame already validated by the caller (start sign, length and CRC). The
+     * frame must carry the message type, system and component ID of the view. The payload is copied,
+     * truncated mavlink 2 payloads are zero extended.
+     *
+     * @param frame      array holding the frame
+     * @param start      offset of the start sign
+     */
+    void wrap(byte[] frame, int start) {
+        int p = start;
+        protocolVersion = frame[p++] == START_OF_FRAME_MAVLINK2 ? 2 : 1;
+        int payloadLen = frame[p++] & 0xff;
+        if (protocolVersion == 2) {
+            incompatFlags = frame[p++];
+            compatFlags = frame[p++];
+            signingEnabled = (incompatFlags & MAVLINK_IFLAG_SIGNED) > 0;
+        } else {
+            incompatFlags = 0;
+            compatFlags = 0;
+            signingEnabled = false;
+        }
+        sequence = frame[p++];
+        p += 2;     // system and component ID
+        p += protocolVersion == 2 ? 3 : 1;
+        System.arraycopy(frame, p, payload, 0, payloadLen);
+        if (payloadLen < definition.payloadLength) {
+            Arrays.fill(payload, payloadLen, definition.payloadLength, (byte) 0);
+        }
+        p += payloadLen;
+        crc = (frame[p] & 0xff) | ((frame[p + 1] & 0xff) << 8);
+    }
+
     public ByteBuffer encode(byte sequence) {
         this.sequence = sequence;
-        ByteBuffer buf = ByteBuffer.allocate(payload.length + getNonPayloadLength());
+        final int payloadLength = definition.payloadLength;
+        ByteBuffer buf = ByteBuffer.allocate(payloadLength + getNonPayloadLength());
         buf.order(schema.getByteOrder());
         if (protocolVersion == 2) {
             buf.put(START_OF_FRAME_MAVLINK2);
         } else {
             buf.put(START_OF_FRAME_MAVLINK1);
         }
-        buf.put((byte) payload.length);
+        buf.put((byte) payloadLength);
         if (protocolVersion == 2) {
             buf.put((byte) 0); // incompatFlags
             buf.put((byte) 0); // compatFlags
@@ -187,9 +257,9 @@ public class MAVLinkMessage {
         } else {
             buf.put((byte) msgID);
         }
-        buf.put(payload);
+        buf.put(payload, 0, payloadLength);
         buf.flip();
-        crc = calculateCRC(buf, payload.length);
+        crc = calculateCRC(buf, payloadLength);
         buf.limit(buf.capacity());
         buf.put((byte) crc);
         buf.put((byte)(crc >> 8));
@@ -303,6 +373,50 @@ public class MAVLinkMessage {
         }
     }
 
+    /**
+     * Get single value field without boxing.
+     */
+    public long getLong(MAVLinkField field) {
+        switch (field.type) {
+            case CHAR:
+            case INT8:
+                return payloadBB.get(field.offset);
+            case UINT8:
+                return payloadBB.get(field.offset) & 0xFF;
+            case UINT16:
+                return payloadBB.getShort(field.offset) & 0xFFFF;
+            case INT16:
+                return payloadBB.getShort(field.offset);
+            case UINT32:
+                return payloadBB.getInt(field.offset) & 0xFFFFFFFFl;
+            case INT32:
+                return payloadBB.getInt(field.offset);
+            case UINT64:
+            case INT64:
+                return payloadBB.getLong(field.offset);
+            case FLOAT:
+                return (long) payloadBB.getFloat(field.offset);
+            case DOUBLE:
+                return (long) payloadBB.getDouble(field.offset);
+            default:
+                throw new RuntimeException("Unknown type: " + field.type);
+        }
+    }
+
+    /**
+     * Get single value field without boxing.
+     */
+    public double getDouble(MAVLinkField field) {
+        switch (field.type) {
+            case FLOAT:
+                return payloadBB.getFloat(field.offset);
+            case DOUBLE:
+                return payloadBB.getDouble(field.offset);
+            default:
+                return getLong(field);
+        }
+    }
+
     public void set(MAVLinkField field, Object value) {
         if (field.isArray()) {
             Object[] valueArray;
@@ -1,10 +1,10 @@
 package me.drton.jmavlib.mavlink;
 
 import java.io.IOException;
-import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ByteChannel;
 import java.nio.channels.FileChannel;
+import java.util.Arrays;
 
 /**
  * User: ton Date: 03.06.14 Time: 12:31
@@ -16,9 +16,34 @@ public class MAVLinkStream {
     private ByteBuffer buffer = ByteBuffer.allocate(8192);
     private boolean debug = false;
 
+    private static final int HEADER_LENGTH_V2 = MAVLinkMessage.MAVLINK1_HEADER_LENGTH
+            + MAVLinkMessage.MAVLINK2_MSGID_EXTENSION + MAVLinkMessage.MAVLINK2_compatFlags_EXTENSION;
+
+    // parse() results
+    private static final int FRAME = 0;
+    private static final int UNDERFLOW = 1;
+    private static final int SKIPPED = 2;
+
+    private final MAVLinkMessageDefinition[] definitions;
+    // Reused views indexed by message ID, one per system and component ID sending the message
+    private final MAVLinkMessage[][] views;
+    private MAVLinkMessage current;
+
     public MAVLinkStream(MAVLinkSchema schema, ByteChannel channel) {
         this.schema = schema;
         this.channel = channel;
+        // Definitions indexed by message ID, avoids boxing the ID on every frame
+        int maxID = -1;
+        for (MAVLinkMessageDefinition definition : schema.getMessageDefinitions().values()) {
+            maxID = Math.max(maxID, definition.id);
+        }
+        this.definitions = new MAVLinkMessageDefinition[Math.min(maxID + 1, 1 << 16)];
+        for (MAVLinkMessageDefinition definition : schema.getMessageDefinitions().values()) {
+            if (definition.id < definitions.length) {
+                definitions[definition.id] = definition;
+            }
+        }
+        this.views = new MAVLinkMessage[definitions.length][];
         buffer.flip();
     }
 
@@ -43,39 +68,162 @@ public class MAVLinkStream {
      * @throws java.io.IOException on IO error
      */
     public MAVLinkMessage read() throws IOException {
+        MAVLinkMessage msg = readView();
+        return msg != null ? new MAVLinkMessage(msg) : null;
+    }
+
+    /**
+     * Read message without allocation. The returned message is a view reused for every frame of the
+     * same message type, system and component ID and is only valid until the next read.
+     *
+     * @return MAVLink message view or null if no more messages available at the moment
+     * @throws java.io.IOException on IO error
+     */
+    public MAVLinkMessage readView() throws IOException {
         while (true) {
-            try {
-                return new MAVLinkMessage(schema, buffer);
-            } catch (MAVLinkProtocolException e) {
-                // Message is corrupted, try to sync on the next byte
-                if (debug) {
-                    System.err.println(String.format("%s: %s", channel, e));
-                }
-            } catch (MAVLinkUnknownMessage e) {
-                // Message looks ok but with another protocol, skip it
-                if (debug) {
-                    System.err.println(String.format("%s: %s", channel, e));
-                }
-            } catch (BufferUnderflowException e) {
-                // Try to refill buffer
-                buffer.compact();
-                int n = 0;
-                try {
-                    n = channel.read(buffer);
-                } catch (IOException ioe) {
-                    // In case of exception don't forget to flip the buffer
-                    buffer.flip();
-                    throw ioe;
-                }
-                buffer.flip();
-                if (n == 0) {
-                    return null;
-                }
-                if (n == -1) { // -1 means End of Stream (i.e. the other side closed the socket)
-                    throw new IOException("End of Stream");
+            switch (parse()) {
+                case FRAME:
+                    return current;
+                case UNDERFLOW:
+                    if (!fill()) {
+                        return null;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Scan the buffer for the next valid frame, bind it to the view and advance past it.
+     * Corrupted frames are resynchronized on the next byte, unknown messages are skipped.
+     */
+    private int parse() {
+        final byte[] buf = buffer.array();
+        final int end = buffer.arrayOffset() + buffer.limit();
+        int p = buffer.arrayOffset() + buffer.position();
+
+        // Sync on start sign
+        while (p < end && buf[p] != MAVLinkMessage.START_OF_FRAME_MAVLINK1
+                && buf[p] != MAVLinkMessage.START_OF_FRAME_MAVLINK2) {
+            p++;
+        }
+        buffer.position(p - buffer.arrayOffset());
+
+        final boolean v2 = p < end && buf[p] == MAVLinkMessage.START_OF_FRAME_MAVLINK2;
+        final int headerLen = v2 ? HEADER_LENGTH_V2 : MAVLinkMessage.MAVLINK1_HEADER_LENGTH;
+        if (end - p < headerLen + MAVLinkMessage.CRC_LENGTH) {
+            return UNDERFLOW;
+        }
+        final int payloadLen = buf[p + 1] & 0xff;
+        int frameLen = headerLen + payloadLen + MAVLinkMessage.CRC_LENGTH;
+        if (v2 && (buf[p + 2] & MAVLinkMessage.MAVLINK_IFLAG_SIGNED) != 0) {
+            frameLen += MAVLinkMessage.SIGNATURE_LENGTH;
+        }
+        if (end - p < frameLen) {
+            return UNDERFLOW;
+        }
+
+        final int msgID = v2
+                          ? (buf[p + 7] & 0xff) | ((buf[p + 8] & 0xff) << 8) | ((buf[p + 9] & 0xff) << 16)
+                          : buf[p + 5] & 0xff;
+        final MAVLinkMessageDefinition definition = getDefinition(msgID);
+        if (definition == null) {
+            // Unknown message, the CRC can't be checked without its definition. Resync on the next byte
+            // instead of skipping the whole frame, which would drop valid frames behind a false start sign.
+            if (debug) {
+                System.err.println(String.format("%s: Unknown message: %s", channel, msgID));
+            }
+            buffer.position(p + 1 - buffer.arrayOffset());
+            return SKIPPED;
+        }
+
+        final boolean lengthValid = v2
+                                    ? payloadLen <= definition.payloadLength
+                                    : payloadLen == definition.payloadLength
+                                    || payloadLen == definition.payloadMinimumLength;
+        if (!lengthValid
+                || crc(buf, p, headerLen + payloadLen, definition.extraCRC) != crcAt(buf, p + headerLen + payloadLen)) {
+            // Message is corrupted, try to sync on the next byte
+            if (debug) {
+                System.err.println(String.format("%s: Invalid frame for msg %s (%s)", channel, definition.name, msgID));
+            }
+            buffer.position(p + 1 - buffer.arrayOffset());
+            return SKIPPED;
+        }
+
+        current = getView(definition, buf[p + (v2 ? 5 : 3)] & 0xff, buf[p + (v2 ? 6 : 4)] & 0xff);
+        current.wrap(buf, p);
+        buffer.position(p + frameLen - buffer.arrayOffset());
+        return FRAME;
+    }
+
+    private MAVLinkMessage getView(MAVLinkMessageDefinition definition, int systemID, int componentID) {
+        if (definition.id >= views.length) {
+            return new MAVLinkMessage(schema, definition, systemID, componentID);
+        }
+        MAVLinkMessage[] senders = views[definition.id];
+        if (senders != null) {
+            for (MAVLinkMessage view : senders) {
+                if (view.systemID == systemID && view.componentID == componentID) {
+                    return view;
                 }
             }
+            senders = Arrays.copyOf(senders, senders.length + 1);
+        } else {
+            senders = new MAVLinkMessage[1];
+        }
+        senders[senders.length - 1] = new MAVLinkMessage(schema, definition, systemID, componentID);
+        views[definition.id] = senders;
+        return senders[senders.length - 1];
+    }
+
+    private MAVLinkMessageDefinition getDefinition(int msgID) {
+        if (msgID < definitions.length && definitions[msgID] != null) {
+            return definitions[msgID];
+        }
+        return schema.getMessageDefinition(msgID);
+    }
+
+    private static int crc(byte[] buf, int start, int len, byte extraCRC) {
+        int c = MAVLinkCRC.X25_INIT_CRC;
+        for (int i = start + 1; i < start + len; i++) {  // Skip start sign
+            c = MAVLinkCRC.accumulateCRC(buf[i], c);
+        }
+        return MAVLinkCRC.accumulateCRC(extraCRC, c);
+    }
+
+    private static int crcAt(byte[] buf, int pos) {
+        return (buf[pos] & 0xff) | ((buf[pos + 1] & 0xff) << 8);
+    }
+
+    /**
+     * Refill the buffer, keeping the unparsed bytes.
+     *
+     * @return false if no more data available at the moment
+     */
+    private boolean fill() throws IOException {
+        buffer.compact();
+        int n = 0;
+        try {
+            n = channel.read(buffer);
+        } catch (IOException ioe) {
+            // In case of exception don't forget to flip the buffer
+            buffer.flip();
+            throw ioe;
+        }
+        buffer.flip();
+        if (n == 0) {
+            return false;
+        }
+        if (n == -1) { // -1 means End of Stream (i.e. the other side closed the socket)
+            if (channel instanceof FileChannel) {
+                return false;   // End of file, no more messages
+            }
+            throw new IOException("End of Stream");
         }
+        return true;
     }
 
     public long position() throws IOException {